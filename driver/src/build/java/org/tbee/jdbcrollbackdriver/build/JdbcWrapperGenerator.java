@@ -0,0 +1,342 @@
+package org.tbee.jdbcrollbackdriver.build;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.NClob;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLXML;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generates the non reflective wrappers for the JDBC object graph below the connection (statements, result sets and meta data).
+ * Each wrapper delegates directly to the actual object, returns the RollbackDelegatingConnection from getConnection, and wraps any statement, result set or meta data it hands out.
+ * This way nothing can reach the actual connection and bypass the driver.
+ * Each delegated call passes the connection's gate (see RollbackGate), except cancel, which must be able to reach a call in flight.
+ * The result sets and LOBs handed out are registered with the connection's tracker (see RollbackTracker).
+ *
+ * This file is run during generate-sources as a single file source program (so the build JDK must be 11 or higher):
+ * java JdbcWrapperGenerator.java [output directory]
+ */
+public class JdbcWrapperGenerator {
+
+	final static String PACKAGE = "org.tbee.jdbcrollbackdriver";
+	final static String PREFIX = "Rollback";
+	final static String CONNECTION = "RollbackDelegatingConnection";
+
+	/** The interfaces that are wrapped, from most to least specific (the order matters for the instanceof checks) */
+	final static List<Class<?>> INTERFACES = Arrays.asList(CallableStatement.class, PreparedStatement.class, Statement.class, ResultSet.class, DatabaseMetaData.class);
+	final static List<Class<?>> STATEMENTS = Arrays.asList(CallableStatement.class, PreparedStatement.class, Statement.class);
+
+	/** Handed out unwrapped, but tracked so they can be freed on a rollback (see RollbackTracker) */
+	final static List<Class<?>> LOBS = Arrays.asList(Blob.class, Clob.class, NClob.class, SQLXML.class, Array.class);
+
+	/** The default methods added in JDBC 4.3, these do not exist on Java 8 */
+	final static List<String> JDBC43_DEFAULTS = Arrays.asList("enquoteLiteral", "enquoteIdentifier", "isSimpleIdentifier", "enquoteNCharLiteral", "beginRequest", "endRequest", "setShardingKey", "setShardingKeyIfValid", "supportsSharding");
+
+	/** The methods that do not pass the gate */
+	final static List<String> UNGATED = Arrays.asList("unwrap", "isWrapperFor", "cancel");
+
+	public static void main(String[] args) throws IOException {
+		Path directory = Paths.get(args.length > 0 ? args[0] : "target/generated-sources/jdbc-wrappers").resolve(PACKAGE.replace('.', '/'));
+		Files.createDirectories(directory);
+		for (Class<?> iface : INTERFACES) {
+			Path file = directory.resolve(wrapperName(iface) + ".java");
+			try (
+				PrintWriter out = new PrintWriter(Files.newBufferedWriter(file));
+			){
+				new JdbcWrapperGenerator(iface, out).generate();
+			}
+			System.out.println(JdbcWrapperGenerator.class.getSimpleName() + ": generated " + file);
+		}
+	}
+
+	// ================================================================================================
+	// Constructor
+
+	JdbcWrapperGenerator(Class<?> iface, PrintWriter out) {
+		this.iface = iface;
+		this.out = out;
+	}
+	final private Class<?> iface;
+	final private PrintWriter out;
+
+	// ================================================================================================
+	// Generate
+
+	void generate() {
+		String name = wrapperName(iface);
+		String type = iface.getSimpleName();
+		boolean isStatement = STATEMENTS.contains(iface);
+		boolean isResultSet = iface == ResultSet.class;
+
+		out.println("package " + PACKAGE + ";");
+		out.println();
+		out.println("// Generated by " + JdbcWrapperGenerator.class.getSimpleName() + " from " + iface.getName() + ", do not edit.");
+		out.println();
+		out.println("/**");
+		out.println(" * Delegates directly to the actual " + type + ", and makes sure everything it hands out is wrapped as well.");
+		out.println(" */");
+		out.println("@SuppressWarnings(\"deprecation\")");
+		out.println("public class " + name + " implements " + iface.getName() + " {");
+		out.println();
+
+		// wrap
+		out.println("\t/**");
+		out.println("\t * @return null if " + uncapitalize(type) + " is null");
+		out.println("\t */");
+		if (isResultSet) {
+			out.println("\tstatic " + iface.getName() + " wrap(" + CONNECTION + " connection, " + iface.getName() + " " + uncapitalize(type) + ", java.sql.Statement statement) {");
+		}
+		else {
+			out.println("\tstatic " + iface.getName() + " wrap(" + CONNECTION + " connection, " + iface.getName() + " " + uncapitalize(type) + ") {");
+		}
+		out.println("\t\tif (" + uncapitalize(type) + " == null) {");
+		out.println("\t\t\treturn null;");
+		out.println("\t\t}");
+		if (isStatement) {
+			// make sure the most specific wrapper is used
+			for (Class<?> statement : STATEMENTS.subList(0, STATEMENTS.indexOf(iface))) {
+				out.println("\t\tif (" + uncapitalize(type) + " instanceof " + statement.getName() + ") {");
+				out.println("\t\t\treturn new " + wrapperName(statement) + "(connection, (" + statement.getName() + ")" + uncapitalize(type) + ");");
+				out.println("\t\t}");
+			}
+		}
+		out.println("\t\tif (" + uncapitalize(type) + " instanceof " + name + ") {");
+		out.println("\t\t\treturn " + uncapitalize(type) + ";");
+		out.println("\t\t}");
+		out.println("\t\treturn new " + name + "(connection, " + uncapitalize(type) + (isResultSet ? ", statement" : "") + ");");
+		out.println("\t}");
+		out.println();
+
+		// constructor
+		out.println("\t// ================================================================================================");
+		out.println("\t// Constructor");
+		out.println();
+		if (isResultSet) {
+			out.println("\t" + name + "(" + CONNECTION + " connection, " + iface.getName() + " delegate, java.sql.Statement statement) {");
+		}
+		else {
+			out.println("\t" + name + "(" + CONNECTION + " connection, " + iface.getName() + " delegate) {");
+		}
+		out.println("\t\tthis.connection = connection;");
+		out.println("\t\tthis.delegate = delegate;");
+		if (isResultSet) {
+			out.println("\t\tthis.statement = statement;");
+		}
+		out.println("\t}");
+		out.println("\tfinal protected " + CONNECTION + " connection;");
+		out.println("\tfinal protected " + iface.getName() + " delegate;");
+		if (isResultSet) {
+			out.println("\tfinal protected java.sql.Statement statement;");
+		}
+		out.println();
+		out.println("\t/**");
+		out.println("\t * The actual " + type);
+		out.println("\t */");
+		out.println("\tpublic " + iface.getName() + " getDelegate() {");
+		out.println("\t\treturn delegate;");
+		out.println("\t}");
+		out.println();
+
+		// delegation
+		out.println("\t// ================================================================================================");
+		out.println("\t// " + type);
+		for (Method method : methods()) {
+			out.println();
+			generate(method, isStatement);
+		}
+		out.println("}");
+	}
+
+	/**
+	 *
+	 */
+	private void generate(Method method, boolean isStatement) {
+		String typeParameters = typeParameters(method.getTypeParameters());
+		String returnType = typeName(method.getGenericReturnType());
+
+		// signature
+		List<String> parameters = new ArrayList<>();
+		List<String> arguments = new ArrayList<>();
+		Type[] parameterTypes = method.getGenericParameterTypes();
+		for (int i = 0; i < parameterTypes.length; i++) {
+			String parameterType = typeName(parameterTypes[i]);
+			if (method.isVarArgs() && i == parameterTypes.length - 1) {
+				parameterType = parameterType.substring(0, parameterType.length() - 2) + "...";
+			}
+			parameters.add(parameterType + " p" + i);
+			arguments.add("p" + i);
+		}
+		List<String> exceptions = new ArrayList<>();
+		for (Class<?> exception : method.getExceptionTypes()) {
+			exceptions.add(exception.getName());
+		}
+		out.println("\t@Override");
+		out.println("\tpublic " + (typeParameters.isEmpty() ? "" : typeParameters + " ") + returnType + " " + method.getName() + "(" + String.join(", ", parameters) + ")" + (exceptions.isEmpty() ? "" : " throws " + String.join(", ", exceptions)) + " {");
+
+		// body
+		String call = "delegate." + method.getName() + "(" + String.join(", ", arguments) + ")";
+		Class<?> returnClass = method.getReturnType();
+		boolean gated = !UNGATED.contains(method.getName()) && returnClass != Connection.class;
+		String indent = "\t\t";
+		if (gated) {
+			out.println("\t\tconnection.enter(" + (isStatement ? "delegate" : iface == ResultSet.class ? "statement" : "null") + ");");
+			out.println("\t\ttry {");
+			indent = "\t\t\t";
+		}
+		if ("unwrap".equals(method.getName())) {
+			out.println(indent + "if (p0.isInstance(this)) {");
+			out.println(indent + "\treturn p0.cast(this);");
+			out.println(indent + "}");
+			out.println(indent + "return " + call + ";");
+		}
+		else if ("isWrapperFor".equals(method.getName())) {
+			out.println(indent + "return p0.isInstance(this) || " + call + ";");
+		}
+		else if (returnClass == Connection.class) {
+			out.println(indent + "return connection;");
+		}
+		else if (returnClass == ResultSet.class) {
+			out.println(indent + "return " + wrapperName(ResultSet.class) + ".wrap(connection, connection.track(" + call + "), " + (isStatement ? "this" : "null") + ");");
+		}
+		else if (STATEMENTS.contains(returnClass) && iface == ResultSet.class) {
+			out.println(indent + "if (statement != null) {");
+			out.println(indent + "\treturn statement;");
+			out.println(indent + "}");
+			out.println(indent + "return " + wrapperName(returnClass) + ".wrap(connection, " + call + ");");
+		}
+		else if (INTERFACES.contains(returnClass)) {
+			out.println(indent + "return " + wrapperName(returnClass) + ".wrap(connection, " + call + ");");
+		}
+		else if (LOBS.contains(returnClass)) {
+			out.println(indent + "return connection.track(" + call + ");");
+		}
+		else if (returnClass == void.class) {
+			out.println(indent + call + ";");
+		}
+		else {
+			out.println(indent + "return " + call + ";");
+		}
+		if (gated) {
+			out.println("\t\t}");
+			out.println("\t\tfinally {");
+			out.println("\t\t\tconnection.exit();");
+			out.println("\t\t}");
+		}
+		out.println("\t}");
+	}
+
+	// ================================================================================================
+	// Support
+
+	/**
+	 * All methods of the interface, including the inherited ones and the default methods, but only the most specific declaration of each.
+	 * The default methods of JDBC 4.2 (like executeLargeUpdate) must be delegated, otherwise the interface's default implementation is used instead of the actual driver's.
+	 * The default methods added in JDBC 4.3 (Java 9) are not generated, so the result also compiles and runs on Java 8.
+	 */
+	private List<Method> methods() {
+		Map<String, Method> methods = new LinkedHashMap<>();
+		for (Method method : iface.getMethods()) {
+			if (Modifier.isStatic(method.getModifiers()) || (method.isDefault() && JDBC43_DEFAULTS.contains(method.getName()))) {
+				continue;
+			}
+			String key = method.getName() + Arrays.toString(method.getParameterTypes());
+			Method existing = methods.get(key);
+			if (existing == null || existing.getDeclaringClass().isAssignableFrom(method.getDeclaringClass())) {
+				methods.put(key, method);
+			}
+		}
+		List<Method> sorted = new ArrayList<>(methods.values());
+		sorted.sort(Comparator.comparing(Method::getName).thenComparing(m -> Arrays.toString(m.getParameterTypes())));
+		return sorted;
+	}
+
+	/**
+	 *
+	 */
+	private static String typeParameters(TypeVariable<?>[] typeVariables) {
+		if (typeVariables.length == 0) {
+			return "";
+		}
+		List<String> names = new ArrayList<>();
+		for (TypeVariable<?> typeVariable : typeVariables) {
+			names.add(typeVariable.getName());
+		}
+		return "<" + String.join(", ", names) + ">";
+	}
+
+	/**
+	 *
+	 */
+	private static String typeName(Type type) {
+		if (type instanceof Class) {
+			Class<?> clazz = (Class<?>)type;
+			if (clazz.isArray()) {
+				return typeName(clazz.getComponentType()) + "[]";
+			}
+			return clazz.getName().replace('$', '.');
+		}
+		if (type instanceof ParameterizedType) {
+			ParameterizedType parameterizedType = (ParameterizedType)type;
+			List<String> arguments = new ArrayList<>();
+			for (Type argument : parameterizedType.getActualTypeArguments()) {
+				arguments.add(typeName(argument));
+			}
+			return typeName(parameterizedType.getRawType()) + "<" + String.join(", ", arguments) + ">";
+		}
+		if (type instanceof GenericArrayType) {
+			return typeName(((GenericArrayType)type).getGenericComponentType()) + "[]";
+		}
+		if (type instanceof WildcardType) {
+			WildcardType wildcardType = (WildcardType)type;
+			if (wildcardType.getLowerBounds().length > 0) {
+				return "? super " + typeName(wildcardType.getLowerBounds()[0]);
+			}
+			if (wildcardType.getUpperBounds().length > 0 && wildcardType.getUpperBounds()[0] != Object.class) {
+				return "? extends " + typeName(wildcardType.getUpperBounds()[0]);
+			}
+			return "?";
+		}
+		if (type instanceof TypeVariable) {
+			return ((TypeVariable<?>)type).getName();
+		}
+		throw new IllegalArgumentException("Unsupported type " + type);
+	}
+
+	/**
+	 *
+	 */
+	static String wrapperName(Class<?> iface) {
+		return PREFIX + iface.getSimpleName();
+	}
+
+	/**
+	 *
+	 */
+	private static String uncapitalize(String s) {
+		return Character.toLowerCase(s.charAt(0)) + s.substring(1);
+	}
+}
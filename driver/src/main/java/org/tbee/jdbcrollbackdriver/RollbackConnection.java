@@ -1,88 +1,57 @@
-package org.tbee.jdbcrollbackdriver;
-
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
-import java.sql.Connection;
-import java.sql.SQLException;
-
-public class RollbackConnection implements InvocationHandler {
-	final static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RollbackDriver.class);
-
-	static public java.sql.Connection wrap(RollbackDriver rollbackDriver, java.sql.Connection connection, String label) throws SQLException
-	{
-		// we are the handler
-		RollbackConnection lThis = new RollbackConnection(rollbackDriver, connection, label);
-		java.sql.Connection lConnection = (java.sql.Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class[] { java.sql.Connection.class }, lThis);
-		return lConnection;
-	}
-
-	// ================================================================================================
-	// Constructor
-	
-	public RollbackConnection(RollbackDriver rollbackDriver, Connection connection, String label) throws SQLException {
-		this.rollbackDriver = rollbackDriver;
-		this.connection = connection;
-		this.label = label;
-		
-		// initialize
-		connection.setAutoCommit(false);
-		
-		// read through locks
-//		connection.createStatement().execute("SET TRANSACTION ISOLATION LEVEL READ UNCOMMITTED"); // SQLServer specific TBEERNOT
-	}
-	final private RollbackDriver rollbackDriver;
-	final private Connection connection;
-	final private String label;
-	
-	// ================================================================================================
-	// InvocationHandler
-	// http://www.practicalsqldba.com/2012/05/ms-sql-server-nested-transaction-and.html
-	
-	@Override
-	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-		if ("setAutoCommit".equals(method.getName())) {
-			if (rollbackDriver.getTransactionsEnabled()) {
-				if (logger.isTraceEnabled()) logger.trace(label + " allowing " + method.getName() + "(" + args[0] + ")");		
-			}
-			else {
-				if (logger.isTraceEnabled()) logger.trace(label + " blocking " + method.getName() + "(" + args[0] + ")");
-				return null;
-			}
-		}
-		if ("commit".equals(method.getName())) {
-			if (rollbackDriver.getTransactionsEnabled()) {
-				if (logger.isDebugEnabled()) logger.debug(label + " allowing " + method.getName());		
-			}
-			else {
-				if (logger.isDebugEnabled()) logger.debug(label + " blocking " + method.getName());
-				return null;
-			}
-		}
-		if ("rollback".equals(method.getName())) {
-			if (rollbackDriver.getTransactionsEnabled()) {
-				if (logger.isDebugEnabled()) logger.debug(label + " allowing " + method.getName());
-			}
-			else {
-				if (logger.isDebugEnabled()) logger.debug(label + " blocking " + method.getName());
-				return null;
-			}
-		}
-		if ("close".equals(method.getName())) {
-			if (logger.isDebugEnabled()) logger.debug(label + " blocking " + method.getName());
-			return null;
-		}
-
-		Object result = method.invoke(connection, args);
-		
-		if ("commit".equals(method.getName())) {
-			if (logger.isDebugEnabled()) logger.debug(label + " SET ISOLATION READ UNCOMMITTED");
-			connection.createStatement().execute("SET TRANSACTION ISOLATION LEVEL READ UNCOMMITTED"); // SQLServer specific TBEERNOT
-		}
-		if ("rollback".equals(method.getName())) {
-			if (logger.isDebugEnabled()) logger.debug(label + " SET ISOLATION READ UNCOMMITTED");
-			connection.createStatement().execute("SET TRANSACTION ISOLATION LEVEL READ UNCOMMITTED"); // SQLServer specific TBEERNOT
-		}
-		return result;
-	}
-}
+package org.tbee.jdbcrollbackdriver;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+public class RollbackConnection implements InvocationHandler {
+	final static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RollbackDriver.class);
+
+	/**
+	 * Wrap the connection in a RollbackDelegatingConnection.
+	 * Use -DRollbackConnection.proxy=true to fall back to the reflective proxy (which forwards to a RollbackDelegatingConnection).
+	 */
+	static public java.sql.Connection wrap(RollbackDatabase rollbackDatabase, java.sql.Connection connection, String label) throws SQLException
+	{
+		if (!useProxy()) {
+			return new RollbackDelegatingConnection(rollbackDatabase, connection, label);
+		}
+		
+		// we are the handler
+		RollbackConnection lThis = new RollbackConnection(rollbackDatabase, connection, label);
+		java.sql.Connection lConnection = (java.sql.Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class[] { java.sql.Connection.class }, lThis);
+		return lConnection;
+	}
+
+	/**
+	 * 
+	 */
+	static boolean useProxy() {
+		return Boolean.parseBoolean(System.getProperty(RollbackConnection.class.getSimpleName() + ".proxy"));
+	}
+
+	// ================================================================================================
+	// Constructor
+	
+	public RollbackConnection(RollbackDatabase rollbackDatabase, Connection connection, String label) throws SQLException {
+		// the delegating connection holds all the logic, the proxy only forwards to it
+		this.connection = new RollbackDelegatingConnection(rollbackDatabase, connection, label);
+	}
+	final private RollbackDelegatingConnection connection;
+	
+	// ================================================================================================
+	// InvocationHandler
+	
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(connection, args);
+		}
+		catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+}
@@ -1,202 +1,1146 @@
-/**
- * 
- */
-package org.tbee.jdbcrollbackdriver;
-
-import java.io.IOException;
-import java.lang.management.ManagementFactory;
-import java.util.HashMap;
-import java.util.Map;
-
-import javax.management.InstanceAlreadyExistsException;
-import javax.management.InstanceNotFoundException;
-import javax.management.MBeanException;
-import javax.management.MBeanServer;
-import javax.management.MBeanServerConnection;
-import javax.management.MBeanServerInvocationHandler;
-import javax.management.MalformedObjectNameException;
-import javax.management.NotCompliantMBeanException;
-import javax.management.Notification;
-import javax.management.NotificationBroadcasterSupport;
-import javax.management.NotificationListener;
-import javax.management.ObjectName;
-import javax.management.remote.JMXConnector;
-import javax.management.remote.JMXConnectorFactory;
-import javax.management.remote.JMXServiceURL;
-
-/**
- * This class uses MBeans to communicate state changes between RollbackDrivers.
- * By using MBean it syncs multiple instances (e.g. because of different classloaders like in webapps).
- * Usage is simple:
- * - The RollbackDriver must register the MBean (registerMBean).
- * - It then must register itself to the notifications the MBean receives, in order to change it state (startControllingDriver).
- * - The tests can connect to this MBean and issue its methods (connect).
- */
-public class RollbackController extends NotificationBroadcasterSupport
-implements RollbackControllerMBean {
-
-	final static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RollbackController.class);
-	
-	static final String MBEAN_NAME = RollbackControllerMBean.class.getPackage().getName() + ":type=" + RollbackControllerMBean.class.getSimpleName();
-	
-	private static final String ROLLBACKAll_ACTION = "rollbackAll";
-	private static final String ALLOWTRANSACTIONS_ACTION = "allowTransactions";
-	private static final String DISABLETRANSACTIONS_ACTION = "disableTransactions";
-	
-	// ========================================================================================================================================================
-	// MBean implementation
-	
-	/** 
-	 * Invoke this MBean method to cause all RollbackDrivers to rollback
-	 */
-	@Override
-	public void rollbackAll() {
-		if (logger.isDebugEnabled()) logger.debug("rollbackAll");
-        sendNotification(new Notification(ROLLBACKAll_ACTION, this, sequenceNumber++));
-	}
-
-	/** 
-	 * Invoke this MBean method to cause all RollbackDrivers to allow commits
-	 */
-	@Override
-	public void allowTransactions() {
-		if (logger.isDebugEnabled()) logger.debug("allowTransactions");
-        sendNotification(new Notification(ALLOWTRANSACTIONS_ACTION, this, sequenceNumber++));
-	}
-
-	/** 
-	 * Invoke this MBean method to cause all RollbackDrivers to ignore commits
-	 */
-	@Override
-	public void disableTransactions() {
-		if (logger.isDebugEnabled()) logger.debug("disableTransactions");
-        sendNotification(new Notification(DISABLETRANSACTIONS_ACTION, this, sequenceNumber++));
-	}
-	
-	private long sequenceNumber = 1;
-
-	// ========================================================================================================================================================
-	// Supporting methods wrapping the MBean implementation away from the Driver and test runner
-	
-	/**
-	 * 
-	 */
-	private static void registerMBean() {
-		if (logger.isDebugEnabled()) logger.debug("Check to see if the MBean needs to be registed");
-		try {
-			// Register the MBean if it is not registered yet
-			MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
-	        ObjectName objectName = new ObjectName(MBEAN_NAME);
-			if (!mbeanServer.isRegistered(objectName)) {
-				RollbackController mbean = new RollbackController();
-				if (logger.isInfoEnabled()) logger.info("Registering the MBean " + MBEAN_NAME);
-				//Logger.getLogger("javax.management.mbeanserver").setLevel(Level.FINEST);
-				mbeanServer.registerMBean(mbean, objectName);
-				
-				// start listening for the socket as well
-				RollbackControllerSocket.startListening();
-				
-				// start listening for multicast as well
-				RollbackControllerMulticast.startListening();
-			}
-		} 
-		catch (MalformedObjectNameException | InstanceAlreadyExistsException | NotCompliantMBeanException | MBeanException e) {
-			throw new RuntimeException(e);
-		}		
-	}
-	
-	/**
-	 * Make the driver change its state when the controller is told to do so 
-	 */
-	public static void startControllingDriver(final RollbackDriver rollbackDriver, final String label) {
-		registerMBean();
-
-		if (logger.isInfoEnabled()) logger.info(label + "Taking control over the JDBC driver");
-		try {
-			MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
-			ObjectName objectName = new ObjectName(MBEAN_NAME);
-			mbeanServer.addNotificationListener(objectName, new NotificationListener() {
-				@Override
-				public void handleNotification(Notification notification, Object handback) {
-					
-					// depending on the type of the notification, make the drive change state
-					String type = notification.getType();
-					if (logger.isDebugEnabled()) logger.debug((label == null ? "" : label) + "Notification for coming in: " + type);
-					if (ROLLBACKAll_ACTION.equals(type)) {
-						rollbackDriver.rollback();
-					}
-					if (ALLOWTRANSACTIONS_ACTION.equals(type)) {
-						rollbackDriver.setTransactionsEnabled(true);
-					}
-					if (DISABLETRANSACTIONS_ACTION.equals(type)) {
-						rollbackDriver.setTransactionsEnabled(false);
-					}
-				}
-			}, null, null);
-		} 
-		catch (InstanceNotFoundException | MalformedObjectNameException e) {
-			throw new RuntimeException(e);
-		}		
-	}
-	
-	/**
-	 * Connect to the MBean from another JVM (e.g. the JVM running the Cucumber or integration tests)
-	 * Use -DRollbackControllerMBean.host=localhost to specify the host 
-	 * Use -DRollbackControllerMBean.port=7676 to specify the port 
-	 */
-	public static RollbackControllerMBean connect() {
-		String host = (System.getProperty("RollbackControllerMBean.host") == null ? "localhost" : System.getProperty("RollbackControllerMBean.host"));
-		if (host.contains(":")) {
-			host = "[" + host + "]"; // IPv6 requires brackets around the URL
-		}
-		int port = (System.getProperty("RollbackControllerMBean.port") == null ? 7676 : Integer.parseInt(System.getProperty("RollbackControllerMBean.port"))); 
-		String url = "service:jmx:rmi:///jndi/rmi://" + host + ":" + port + "/jmxrmi";
-		System.out.println("Connecting to RollbackControllerMBean running on " + url);
-		try {
-			JMXServiceURL serviceUrl = new JMXServiceURL(url);
-			JMXConnector jmxConnector = JMXConnectorFactory.connect(serviceUrl, getCredentials());
-			MBeanServerConnection mbeanConn = jmxConnector.getMBeanServerConnection();
-			ObjectName name = new ObjectName(MBEAN_NAME);
-			RollbackControllerMBean mbean = MBeanServerInvocationHandler.newProxyInstance(mbeanConn, name, RollbackControllerMBean.class, false);
-			return mbean;
-		} 
-		catch (IOException | MalformedObjectNameException e) {
-			throw new RuntimeException("Error connecting to " + url, e);
-		}
-	}
-
-	/**
-	 * Get the credentials from the system properties
-	 */
-	private static Map<String, String[]> getCredentials() {
-		
-		// see if credentials are configured
-		String username = System.getProperty(RollbackControllerMBean.class.getSimpleName() + ".user");
-		String password = System.getProperty(RollbackControllerMBean.class.getSimpleName() + ".password");
-		if (username == null || password == null) {
-			return null;
-		}
-
-		// return the credentials
-		Map<String, String[]> env = new HashMap<>();
-		String[] creds = { username, password };
-		env.put(JMXConnector.CREDENTIALS, creds);
-		return env;
-	}
-
-	/**
-	 * Connect to the MBean from inside this JVM 
-	 */
-	public static RollbackControllerMBean connectLocally() {
-		System.out.println("Connecting to RollbackControllerMBean on this JVM");
-		try {
-			MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer(); 
-			ObjectName name = new ObjectName(MBEAN_NAME);
-			RollbackControllerMBean mbean = MBeanServerInvocationHandler.newProxyInstance(mbeanServer, name, RollbackControllerMBean.class, false);
-			return mbean;
-		} 
-		catch (MalformedObjectNameException e) {
-			throw new RuntimeException("Error connecting local mbean", e);
-		}
-	}
-}
+/**
+ * 
+ */
+package org.tbee.jdbcrollbackdriver;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.ListenerNotFoundException;
+import javax.management.MBeanException;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerInvocationHandler;
+import javax.management.MalformedObjectNameException;
+import javax.management.NotCompliantMBeanException;
+import javax.management.Notification;
+import javax.management.NotificationBroadcasterSupport;
+import javax.management.NotificationFilter;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import javax.management.remote.JMXConnector;
+
+/**
+ * This class uses MBeans to communicate state changes between RollbackDrivers.
+ * By using MBean it syncs multiple instances (e.g. because of different classloaders like in webapps).
+ * Usage is simple:
+ * - The RollbackDriver must register the MBean (registerMBean).
+ * - It then must register itself to the notifications the MBean receives, in order to change it state (startControllingDriver).
+ * - The tests can connect to this MBean and issue its methods (connect).
+ */
+public class RollbackController extends NotificationBroadcasterSupport
+implements RollbackControllerMBean {
+
+	final static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RollbackController.class);
+	
+	static final String MBEAN_NAME = RollbackControllerMBean.class.getPackage().getName() + ":type=" + RollbackControllerMBean.class.getSimpleName();
+	
+	static final String ROLLBACKAll_ACTION = "rollbackAll";
+	static final String ALLOWTRANSACTIONS_ACTION = "allowTransactions";
+	static final String DISABLETRANSACTIONS_ACTION = "disableTransactions";
+	static final String PUSHSCOPE_ACTION = "pushScope";
+	static final String ROLLBACKTOSCOPE_ACTION = "rollbackToScope";
+	static final String POPSCOPE_ACTION = "popScope";
+	private static final List<String> COMMANDS = Arrays.asList(ROLLBACKAll_ACTION, ALLOWTRANSACTIONS_ACTION, DISABLETRANSACTIONS_ACTION, PUSHSCOPE_ACTION, ROLLBACKTOSCOPE_ACTION, POPSCOPE_ACTION);
+	private static final List<String> SCOPE_COMMANDS = Arrays.asList(PUSHSCOPE_ACTION, ROLLBACKTOSCOPE_ACTION, POPSCOPE_ACTION);
+	
+	// ========================================================================================================================================================
+	// Constructor
+	
+	/**
+	 * Use -DRollbackController.parallelism=4 to notify the drivers in parallel, so the rollback takes as long as the slowest driver instead of the sum of all. 
+	 */
+	public RollbackController() {
+		this.notifyExecutor = newParallelExecutor(RollbackController.class.getSimpleName() + "-notify");
+	}
+	final private ExecutorService notifyExecutor;
+	
+	/**
+	 * How long the clients wait for the drivers to process a batch, in milliseconds
+	 */
+	static long getTimeout() {
+		long timeout = (System.getProperty(RollbackController.class.getSimpleName() + ".timeout") == null ? 60000 : Long.parseLong(System.getProperty(RollbackController.class.getSimpleName() + ".timeout")));
+		return timeout;
+	}
+	
+	/**
+	 * The number of threads used to rollback in parallel, 0 means sequential
+	 */
+	static int getParallelism() {
+		int parallelism = (System.getProperty(RollbackController.class.getSimpleName() + ".parallelism") == null ? 0 : Integer.parseInt(System.getProperty(RollbackController.class.getSimpleName() + ".parallelism")));
+		return parallelism;
+	}
+	
+	/**
+	 * @return null if parallelism is not enabled
+	 */
+	static ExecutorService newParallelExecutor(final String name) {
+		int parallelism = getParallelism();
+		if (parallelism <= 0) {
+			return null;
+		}
+		final AtomicInteger threadCount = new AtomicInteger();
+		return Executors.newFixedThreadPool(parallelism, runnable -> {
+			Thread thread = new Thread(runnable, name + "-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+	
+	/**
+	 * With parallelism the drivers are notified in parallel, but each listener gets its notifications one at a time and in the order they were sent.
+	 * Otherwise a driver could, for example, see a popScope before the pushScope it belongs to.
+	 */
+	@Override
+	protected void handleNotification(NotificationListener listener, Notification notification, Object handback) {
+		if (notifyExecutor == null) {
+			super.handleNotification(listener, notification, handback);
+			return;
+		}
+		notificationLanes.computeIfAbsent(listener, l -> new SerialExecutor(notifyExecutor)).execute( () -> {
+			try {
+				super.handleNotification(listener, notification, handback);
+			}
+			catch (RuntimeException e) {
+				logger.warn("Listener " + listener + " failed on notification " + notification.getSequenceNumber(), e);
+			}
+		});
+	}
+	final private Map<NotificationListener, SerialExecutor> notificationLanes = new ConcurrentHashMap<>();
+	
+	/**
+	 * Runs the tasks one after the other, on the threads of a shared executor
+	 */
+	static private class SerialExecutor implements Executor {
+		SerialExecutor(Executor executor) {
+			this.executor = executor;
+		}
+		final private Executor executor;
+		final private Queue<Runnable> tasks = new ArrayDeque<>();
+		private Runnable active;
+		
+		@Override
+		synchronized public void execute(Runnable task) {
+			tasks.add( () -> {
+				try {
+					task.run();
+				}
+				finally {
+					scheduleNext();
+				}
+			});
+			if (active == null) {
+				scheduleNext();
+			}
+		}
+		
+		synchronized private void scheduleNext() {
+			active = tasks.poll();
+			if (active != null) {
+				executor.execute(active);
+			}
+		}
+	}
+	
+	// ========================================================================================================================================================
+	// MBean implementation
+	
+	/** 
+	 * Invoke this MBean method to cause all RollbackDrivers to rollback
+	 */
+	@Override
+	public void rollbackAll() {
+		if (logger.isDebugEnabled()) logger.debug("rollbackAll");
+        sendNotification(ROLLBACKAll_ACTION, null);
+	}
+
+	/** 
+	 * Invoke this MBean method to cause all RollbackDrivers to allow commits
+	 */
+	@Override
+	public void allowTransactions() {
+		if (logger.isDebugEnabled()) logger.debug("allowTransactions");
+        sendNotification(ALLOWTRANSACTIONS_ACTION, null);
+	}
+
+	/** 
+	 * Invoke this MBean method to cause all RollbackDrivers to ignore commits
+	 */
+	@Override
+	public void disableTransactions() {
+		if (logger.isDebugEnabled()) logger.debug("disableTransactions");
+        sendNotification(DISABLETRANSACTIONS_ACTION, null);
+	}
+	
+	/** 
+	 * Invoke this MBean method to cause only the RollbackDrivers owning a database with this label (jdbc:rollback:label#...) to rollback that database.
+	 * The other drivers are not woken up, their listener's filter rejects the notification.
+	 */
+	@Override
+	public void rollback(String labelName) {
+		if (logger.isDebugEnabled()) logger.debug("rollback(" + labelName + ")");
+        sendNotification(ROLLBACKAll_ACTION, labelName);
+	}
+	
+	/** 
+	 * Like rollback(label), but wait until all drivers owning such a database are done
+	 */
+	@Override
+	public RollbackSummary rollbackAndWait(String labelName, long timeoutMillis) {
+		if (logger.isDebugEnabled()) logger.debug("rollbackAndWait(" + labelName + ", " + timeoutMillis + ")");
+		return sendNotificationAndWait(ROLLBACKAll_ACTION, labelName, timeoutMillis);
+	}
+
+	/** 
+	 * Invoke this MBean method to allow commits only on the databases with this label
+	 */
+	@Override
+	public void allowTransactions(String labelName) {
+		if (logger.isDebugEnabled()) logger.debug("allowTransactions(" + labelName + ")");
+        sendNotification(ALLOWTRANSACTIONS_ACTION, labelName);
+	}
+	
+	/** 
+	 * Like allowTransactions(label), but wait until all drivers owning such a database are done
+	 */
+	@Override
+	public RollbackSummary allowTransactionsAndWait(String labelName, long timeoutMillis) {
+		if (logger.isDebugEnabled()) logger.debug("allowTransactionsAndWait(" + labelName + ", " + timeoutMillis + ")");
+		return sendNotificationAndWait(ALLOWTRANSACTIONS_ACTION, labelName, timeoutMillis);
+	}
+
+	/** 
+	 * Invoke this MBean method to ignore commits only on the databases with this label
+	 */
+	@Override
+	public void disableTransactions(String labelName) {
+		if (logger.isDebugEnabled()) logger.debug("disableTransactions(" + labelName + ")");
+        sendNotification(DISABLETRANSACTIONS_ACTION, labelName);
+	}
+	
+	/** 
+	 * Like disableTransactions(label), but wait until all drivers owning such a database are done
+	 */
+	@Override
+	public RollbackSummary disableTransactionsAndWait(String labelName, long timeoutMillis) {
+		if (logger.isDebugEnabled()) logger.debug("disableTransactionsAndWait(" + labelName + ", " + timeoutMillis + ")");
+		return sendNotificationAndWait(DISABLETRANSACTIONS_ACTION, labelName, timeoutMillis);
+	}
+	
+	/** 
+	 * Invoke this MBean method to cause all RollbackDrivers to allow commits, and wait until all of them are done
+	 */
+	@Override
+	public RollbackSummary allowTransactionsAndWait(long timeoutMillis) {
+		if (logger.isDebugEnabled()) logger.debug("allowTransactionsAndWait(" + timeoutMillis + ")");
+		return sendNotificationAndWait(ALLOWTRANSACTIONS_ACTION, null, timeoutMillis);
+	}
+	
+	/** 
+	 * Invoke this MBean method to cause all RollbackDrivers to ignore commits, and wait until all of them are done
+	 */
+	@Override
+	public RollbackSummary disableTransactionsAndWait(long timeoutMillis) {
+		if (logger.isDebugEnabled()) logger.debug("disableTransactionsAndWait(" + timeoutMillis + ")");
+		return sendNotificationAndWait(DISABLETRANSACTIONS_ACTION, null, timeoutMillis);
+	}
+	
+	final private AtomicLong sequenceNumber = new AtomicLong(1);
+	
+	/** 
+	 * Invoke this MBean method to cause all RollbackDrivers to rollback, and wait until all of them are done.
+	 * This way a test runner can continue the moment the database is clean.
+	 */
+	@Override
+	public RollbackSummary rollbackAllAndWait(long timeoutMillis) {
+		if (logger.isDebugEnabled()) logger.debug("rollbackAllAndWait(" + timeoutMillis + ")");
+		return sendNotificationAndWait(ROLLBACKAll_ACTION, null, timeoutMillis);
+	}
+	
+	/** 
+	 * Invoke this MBean method to mark the current state of all databases with a savepoint, and wait until all drivers are done.
+	 * Scope commands are never coalesced, each one creates or removes a savepoint.
+	 * @see RollbackDatabase#pushScope(String)
+	 */
+	@Override
+	public RollbackSummary pushScope(String scopeName, long timeoutMillis) {
+		if (logger.isDebugEnabled()) logger.debug("pushScope(" + scopeName + ", " + timeoutMillis + ")");
+		return sendScopeNotificationAndWait(PUSHSCOPE_ACTION, scopeName, timeoutMillis);
+	}
+	
+	/** 
+	 * Invoke this MBean method to make all databases return to the savepoint of the scope, and wait until all drivers are done.
+	 * This is what a test calls instead of rollbackAllAndWait, to keep the fixtures loaded before the scope was pushed.
+	 * @see RollbackDatabase#rollbackToScope(String)
+	 */
+	@Override
+	public RollbackSummary rollbackToScope(String scopeName, long timeoutMillis) {
+		if (logger.isDebugEnabled()) logger.debug("rollbackToScope(" + scopeName + ", " + timeoutMillis + ")");
+		return sendScopeNotificationAndWait(ROLLBACKTOSCOPE_ACTION, scopeName, timeoutMillis);
+	}
+	
+	/** 
+	 * Invoke this MBean method to remove the innermost scope of all databases, and wait until all drivers are done
+	 * @see RollbackDatabase#popScope()
+	 */
+	@Override
+	public RollbackSummary popScope(long timeoutMillis) {
+		if (logger.isDebugEnabled()) logger.debug("popScope(" + timeoutMillis + ")");
+		return sendScopeNotificationAndWait(POPSCOPE_ACTION, null, timeoutMillis);
+	}
+	
+	/**
+	 * 
+	 */
+	private RollbackSummary sendScopeNotificationAndWait(String type, String scopeName, long timeoutMillis) {
+		commandLock.lock();
+		try {
+			return doSendNotificationAndWait(type, null, scopeName, timeoutMillis);
+		}
+		finally {
+			commandLock.unlock();
+		}
+	}
+	
+	/** 
+	 * Execute the commands in order, and wait until all drivers are done with each of them.
+	 * No command of another client is executed in between.
+	 * The batch stops at the first command that fails or times out.
+	 * @param commands rollbackAll, allowTransactions, disableTransactions, pushScope:name, rollbackToScope:name or popScope, optionally targeted at a label like rollbackAll@label
+	 * @param timeoutMillis for the whole batch
+	 */
+	@Override
+	public RollbackSummary batch(String[] commands, long timeoutMillis) {
+		if (logger.isDebugEnabled()) logger.debug("batch(" + Arrays.toString(commands) + ", " + timeoutMillis + ")");
+		for (String command : commands) {
+			if (!COMMANDS.contains(commandType(command))) {
+				throw new IllegalArgumentException("Unknown command: " + command);
+			}
+			if (SCOPE_COMMANDS.contains(commandType(command)) && !POPSCOPE_ACTION.equals(commandType(command)) && commandScope(command) == null) {
+				throw new IllegalArgumentException("Missing scope name: " + command);
+			}
+		}
+		
+		long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		List<RollbackSummary> rollbackSummaries = new ArrayList<>();
+		commandLock.lock();
+		try {
+			for (String command : commands) {
+				long remainingMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+				RollbackSummary rollbackSummary = doSendNotificationAndWait(commandType(command), commandLabel(command), commandScope(command), remainingMillis);
+				rollbackSummaries.add(rollbackSummary);
+				if (!rollbackSummary.isSuccess()) {
+					break;
+				}
+			}
+		}
+		finally {
+			commandLock.unlock();
+		}
+		return RollbackSummary.combine(rollbackSummaries, commands.length);
+	}
+	
+	/*
+	 * All commands are sent while holding this lock, so a batch is not interleaved with commands of other clients
+	 */
+	final private ReentrantLock commandLock = new ReentrantLock(true);
+	
+	/**
+	 * Send the notification without waiting for the drivers.
+	 * If the same command is already queued, this one is merged into it; otherwise it is queued itself while it waits for its turn, so the same commands arriving meanwhile are merged into it.
+	 * A command that waits for the drivers does not merge into a queued one that does not, because there would be no acknowledgements to report.
+	 */
+	void sendNotification(String type, String labelName) {
+		String command = labeledCommand(type, labelName);
+		synchronized (queuedCommands) {
+			if (queuedCommands.containsKey(command) || queuedFireAndForgetCommands.contains(command)) {
+				if (logger.isDebugEnabled()) logger.debug(command + " merged with the queued one");
+				coalescedCount.incrementAndGet();
+				return;
+			}
+			queuedFireAndForgetCommands.add(command);
+		}
+		commandLock.lock();
+		try {
+			synchronized (queuedCommands) {
+				queuedFireAndForgetCommands.remove(command);
+			}
+			sendNotification(newNotification(type, labelName, sequenceNumber.getAndIncrement()));
+		}
+		finally {
+			commandLock.unlock();
+		}
+	}
+	
+	/**
+	 * Send the notification and wait until all registered drivers acknowledged it, or the timeout expires.
+	 * 
+	 * Identical commands are coalesced: while a command waits for its turn (because another command is in flight), 
+	 * the same commands arriving from other clients are merged into it and complete together with it.
+	 * A command that is already in flight is not joined, because the database may have changed after it started; the merged commands form the next execution instead.
+	 * Use -DRollbackController.debounce=50 to wait that many milliseconds before executing, so commands arriving at almost the same moment are merged as well.
+	 */
+	RollbackSummary sendNotificationAndWait(String type, String labelName, long timeoutMillis) {
+		
+		// inside a batch the lock is already held, queued commands cannot run before the batch is done
+		if (commandLock.isHeldByCurrentThread()) {
+			return doSendNotificationAndWait(type, labelName, null, timeoutMillis);
+		}
+		
+		// join a queued command or queue a new one
+		String command = labeledCommand(type, labelName);
+		CompletableFuture<RollbackSummary> queuedCommand;
+		synchronized (queuedCommands) {
+			queuedCommand = queuedCommands.get(command);
+			if (queuedCommand != null) {
+				if (logger.isDebugEnabled()) logger.debug(command + " merged with the queued one");
+				coalescedCount.incrementAndGet();
+			}
+			else {
+				queuedCommand = new CompletableFuture<>();
+				queuedCommands.put(command, queuedCommand);
+				execute(type, labelName, queuedCommand, timeoutMillis);
+			}
+		}
+		
+		// wait for the result
+		try {
+			return queuedCommand.get(timeoutMillis, TimeUnit.MILLISECONDS);
+		}
+		catch (TimeoutException e) {
+			return new RollbackSummary(getDriverIds(newNotification(type, labelName, 0)).size(), Collections.<String, Long>emptyMap(), Collections.<String, String>emptyMap(), false, timeoutMillis);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+		catch (ExecutionException e) {
+			throw (e.getCause() instanceof RuntimeException ? (RuntimeException)e.getCause() : new RuntimeException(e.getCause()));
+		}
+	}
+	
+	/**
+	 * Execute the queued command when it is its turn; from that moment on it no longer accepts merges 
+	 */
+	private void execute(String type, String labelName, CompletableFuture<RollbackSummary> queuedCommand, long timeoutMillis) {
+		String command = labeledCommand(type, labelName);
+		coalesceExecutor.execute( () -> {
+			commandLock.lock();
+			try {
+				long debounceMillis = getDebounce();
+				if (debounceMillis > 0) {
+					Thread.sleep(debounceMillis);
+				}
+				synchronized (queuedCommands) {
+					queuedCommands.remove(command);
+				}
+				queuedCommand.complete(doSendNotificationAndWait(type, labelName, null, timeoutMillis));
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				queuedCommand.completeExceptionally(e);
+			}
+			catch (RuntimeException e) {
+				queuedCommand.completeExceptionally(e);
+			}
+			finally {
+				synchronized (queuedCommands) {
+					queuedCommands.remove(command, queuedCommand);
+				}
+				commandLock.unlock();
+			}
+		});
+	}
+	final private Map<String, CompletableFuture<RollbackSummary>> queuedCommands = new HashMap<>();
+	final private Set<String> queuedFireAndForgetCommands = new HashSet<>();
+	final private ExecutorService coalesceExecutor = Executors.newCachedThreadPool( runnable -> {
+		Thread thread = new Thread(runnable, RollbackController.class.getSimpleName() + "-command");
+		thread.setDaemon(true);
+		return thread;
+	});
+	
+	/** 
+	 * The number of commands that were merged into another one
+	 */
+	@Override
+	public long getCoalescedCount() {
+		return coalescedCount.get();
+	}
+	final private AtomicLong coalescedCount = new AtomicLong();
+	
+	/**
+	 * In milliseconds, 0 means no debouncing
+	 */
+	static long getDebounce() {
+		long debounce = (System.getProperty(RollbackController.class.getSimpleName() + ".debounce") == null ? 0 : Long.parseLong(System.getProperty(RollbackController.class.getSimpleName() + ".debounce")));
+		return debounce;
+	}
+	private RollbackSummary doSendNotificationAndWait(String type, String labelName, String scopeName, long timeoutMillis) {
+		long startNanos = System.nanoTime();
+		long sequenceNumber = this.sequenceNumber.getAndIncrement();
+		Notification notification = newNotification(type, labelName, scopeName, sequenceNumber);
+		Acknowledgements acknowledgements = new Acknowledgements(getDriverIds(notification));
+		pendingAcknowledgements.put(sequenceNumber, acknowledgements);
+		try {
+	        sendNotification(notification);
+	        boolean completed = acknowledgements.await(timeoutMillis);
+	        RollbackSummary rollbackSummary = acknowledgements.toSummary(completed, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+	        if (!completed) {
+	        	logger.warn(labeledCommand(type, labelName) + " timed out: " + rollbackSummary);
+	        }
+	        else if (logger.isDebugEnabled()) {
+	        	logger.debug(labeledCommand(type, labelName) + " completed: " + rollbackSummary);
+	        }
+	        return rollbackSummary;
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+		finally {
+			pendingAcknowledgements.remove(sequenceNumber);
+		}
+	}
+	final private Map<Long, Acknowledgements> pendingAcknowledgements = new ConcurrentHashMap<>();
+	
+	/**
+	 * A targeted notification carries the label as its user data, a broadcast has none
+	 */
+	private Notification newNotification(String type, String labelName, long sequenceNumber) {
+		return newNotification(type, labelName, null, sequenceNumber);
+	}
+	
+	/**
+	 * A scope notification carries the name of the scope as its message
+	 */
+	private Notification newNotification(String type, String labelName, String scopeName, long sequenceNumber) {
+		Notification notification = new Notification(type, this, sequenceNumber, scopeName);
+		notification.setUserData(labelName);
+		return notification;
+	}
+	
+	/**
+	 * Collects the acknowledgements of the drivers for one notification; each expected driver counts once, either by acknowledging or by going away
+	 */
+	static class Acknowledgements {
+		
+		Acknowledgements(Collection<String> driverIds) {
+			this.driverCount = driverIds.size();
+			this.countDownLatch = new CountDownLatch(driverCount);
+			this.expectedDriverIds.addAll(driverIds);
+		}
+		final private int driverCount;
+		final private CountDownLatch countDownLatch;
+		final private Set<String> expectedDriverIds = ConcurrentHashMap.newKeySet();
+		final private Map<String, Long> durations = new ConcurrentHashMap<>();
+		final private Map<String, String> failures = new ConcurrentHashMap<>();
+		
+		/**
+		 * @return false if the driver was not expected, or already counted
+		 */
+		boolean acknowledge(String driverId, long durationMillis, String failure) {
+			if (!expectedDriverIds.remove(driverId)) {
+				return false;
+			}
+			durations.put(driverId, durationMillis);
+			if (failure != null) {
+				failures.put(driverId, failure);
+			}
+			countDownLatch.countDown();
+			return true;
+		}
+		
+		/**
+		 * A driver stopped listening, it will not acknowledge anymore
+		 */
+		void release(String driverId) {
+			if (expectedDriverIds.remove(driverId)) {
+				countDownLatch.countDown();
+			}
+		}
+		
+		boolean await(long timeoutMillis) throws InterruptedException {
+			return countDownLatch.await(timeoutMillis, TimeUnit.MILLISECONDS);
+		}
+		
+		RollbackSummary toSummary(boolean completed, long durationMillis) {
+			return new RollbackSummary(driverCount, durations, failures, completed, durationMillis);
+		}
+	}
+	
+	/** 
+	 * Called by the drivers after they have processed a notification
+	 */
+	@Override
+	public void acknowledge(long sequenceNumber, String driverId, long durationMillis, String failure) {
+		
+		// this is a public operation, only the registered drivers may acknowledge
+		if (!isRegisteredDriver(driverId)) {
+			logger.warn("Ignoring the acknowledgement of notification " + sequenceNumber + " by unknown driver " + driverId);
+			return;
+		}
+		if (failure != null) {
+			logger.warn(driverId + " failed notification " + sequenceNumber + " after " + durationMillis + "ms: " + failure);
+		}
+		else if (logger.isInfoEnabled()) {
+			logger.info(driverId + " processed notification " + sequenceNumber + " in " + durationMillis + "ms");
+		}
+		lastDurations.put(driverId, durationMillis);
+		
+		// someone may be waiting for this
+		Acknowledgements acknowledgements = pendingAcknowledgements.get(sequenceNumber);
+		if (acknowledgements != null && !acknowledgements.acknowledge(driverId, durationMillis, failure)) {
+			logger.warn("Ignoring the acknowledgement of notification " + sequenceNumber + " by " + driverId + ", it was not expected");
+		}
+	}
+	
+	/** 
+	 * Per driver, how long it took to process the last notification
+	 */
+	@Override
+	public Map<String, Long> getLastDurations() {
+		return new TreeMap<>(lastDurations);
+	}
+	final private Map<String, Long> lastDurations = new ConcurrentHashMap<>();
+
+	/** 
+	 * The number of RollbackDrivers (over all classloaders) that listen to this controller
+	 */
+	@Override
+	public int getRegisteredDriverCount() {
+		return driverListeners.size();
+	}
+	
+	/*
+	 * Keep track of the listeners that are drivers. The MBeanServer wraps the listeners, but the wrappers are equal if the wrapped listener is.
+	 * The driver listeners are recognized by their handback, because the listener classes may come from different classloaders; the handback also holds the id of the driver.
+	 */
+	@Override
+	public void addNotificationListener(NotificationListener listener, NotificationFilter filter, Object handback) {
+		super.addNotificationListener(listener, filter, handback);
+		String driverId = driverId(handback);
+		if (driverId != null) {
+			driverListeners.put(listener, new DriverListener(filter == null ? ALL_NOTIFICATIONS : filter, driverId));
+		}
+	}
+	
+	@Override
+	public void removeNotificationListener(NotificationListener listener) throws ListenerNotFoundException {
+		super.removeNotificationListener(listener);
+		notificationLanes.remove(listener);
+		DriverListener driverListener = driverListeners.remove(listener);
+		if (driverListener != null) {
+			releasePendingAcknowledgements(driverListener.driverId);
+		}
+	}
+	
+	@Override
+	public void removeNotificationListener(NotificationListener listener, NotificationFilter filter, Object handback) throws ListenerNotFoundException {
+		super.removeNotificationListener(listener, filter, handback);
+		notificationLanes.remove(listener);
+		DriverListener driverListener = (driverId(handback) == null ? null : driverListeners.remove(listener));
+		if (driverListener != null) {
+			releasePendingAcknowledgements(driverListener.driverId);
+		}
+	}
+	
+	/**
+	 * A driver that is garbage collected removes its listener instead of acknowledging, do not wait for it until the timeout
+	 */
+	private void releasePendingAcknowledgements(String driverId) {
+		for (Acknowledgements acknowledgements : pendingAcknowledgements.values()) {
+			acknowledgements.release(driverId);
+		}
+	}
+	final private Map<NotificationListener, DriverListener> driverListeners = new ConcurrentHashMap<>();
+	static final private NotificationFilter ALL_NOTIFICATIONS = notification -> true;
+	
+	/**
+	 * The filter and the id of a driver's listener
+	 */
+	static private class DriverListener {
+		DriverListener(NotificationFilter filter, String driverId) {
+			this.filter = filter;
+			this.driverId = driverId;
+		}
+		final NotificationFilter filter;
+		final String driverId;
+	}
+	
+	/**
+	 * 
+	 */
+	private boolean isRegisteredDriver(String driverId) {
+		for (DriverListener driverListener : driverListeners.values()) {
+			if (driverListener.driverId.equals(driverId)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * The ids of the drivers that will process (and acknowledge) the notification, according to their filters
+	 */
+	private List<String> getDriverIds(Notification notification) {
+		List<String> driverIds = new ArrayList<>();
+		for (DriverListener driverListener : driverListeners.values()) {
+			if (driverListener.filter.isNotificationEnabled(notification)) {
+				driverIds.add(driverListener.driverId);
+			}
+		}
+		return driverIds;
+	}
+	
+	/**
+	 * The handback of a driver's listener, see driverId
+	 */
+	static String driverHandback(RollbackDriver rollbackDriver) {
+		return DRIVER_HANDBACK + rollbackDriver.getId();
+	}
+	
+	/**
+	 * The id of the driver, if the handback is that of a driver's listener, otherwise null
+	 */
+	static String driverId(Object handback) {
+		if (!(handback instanceof String) || !((String)handback).startsWith(DRIVER_HANDBACK)) {
+			return null;
+		}
+		return ((String)handback).substring(DRIVER_HANDBACK.length());
+	}
+	static final String DRIVER_HANDBACK = RollbackDriver.class.getName() + ":";
+
+	// ========================================================================================================================================================
+	// Supporting methods wrapping the MBean implementation away from the Driver and test runner
+	
+	/**
+	 * Execute a command by name (as used by the transports) and wait until all drivers are done.
+	 * A batch is written as "batch:" followed by the commands separated by a comma, see batchCommand.
+	 */
+	static RollbackSummary execute(RollbackControllerMBean rollbackController, String command, long timeoutMillis) {
+		if (command.startsWith(BATCH_PREFIX)) {
+			return rollbackController.batch(command.substring(BATCH_PREFIX.length()).split(","), timeoutMillis);
+		}
+		if (SCOPE_COMMANDS.contains(commandType(command))) {
+			// the MBean has no targeted scope methods, a batch handles all forms
+			return rollbackController.batch(new String[] {command}, timeoutMillis);
+		}
+		String labelName = commandLabel(command);
+		if (labelName != null) {
+			String type = commandType(command);
+			if (ROLLBACKAll_ACTION.equals(type)) {
+				return rollbackController.rollbackAndWait(labelName, timeoutMillis);
+			}
+			if (ALLOWTRANSACTIONS_ACTION.equals(type)) {
+				return rollbackController.allowTransactionsAndWait(labelName, timeoutMillis);
+			}
+			if (DISABLETRANSACTIONS_ACTION.equals(type)) {
+				return rollbackController.disableTransactionsAndWait(labelName, timeoutMillis);
+			}
+		}
+		if (ROLLBACKAll_ACTION.equals(command)) {
+			return rollbackController.rollbackAllAndWait(timeoutMillis);
+		}
+		if (ALLOWTRANSACTIONS_ACTION.equals(command)) {
+			return rollbackController.allowTransactionsAndWait(timeoutMillis);
+		}
+		if (DISABLETRANSACTIONS_ACTION.equals(command)) {
+			return rollbackController.disableTransactionsAndWait(timeoutMillis);
+		}
+		throw new IllegalArgumentException("Unknown command: " + command);
+	}
+	
+	/**
+	 * The textual form of a batch, for the transports
+	 */
+	static String batchCommand(String... commands) {
+		return BATCH_PREFIX + String.join(",", commands);
+	}
+	static final String BATCH_PREFIX = "batch:";
+	
+	/**
+	 * The textual form of a scope command, for example pushScope:baseline; the name cannot contain ':', '@' or ','
+	 */
+	static String scopeCommand(String type, String scopeName) {
+		return type + SCOPE_SEPARATOR + scopeName;
+	}
+	static final String SCOPE_SEPARATOR = ":";
+	
+	/**
+	 * The textual form of a command targeted at a label, for example rollbackAll@theId; without a label it is a broadcast
+	 */
+	static String labeledCommand(String type, String labelName) {
+		return (labelName == null ? type : type + LABEL_SEPARATOR + labelName);
+	}
+	static final String LABEL_SEPARATOR = "@";
+	
+	/**
+	 * 
+	 */
+	static String commandType(String command) {
+		int idx = commandLabelIndex(command);
+		int scopeIdx = command.indexOf(SCOPE_SEPARATOR);
+		if (scopeIdx >= 0 && scopeIdx < idx) {
+			idx = scopeIdx;
+		}
+		return command.substring(0, idx);
+	}
+	
+	/**
+	 * @return null if the command has no scope
+	 */
+	static String commandScope(String command) {
+		int idx = commandLabelIndex(command);
+		int scopeIdx = command.indexOf(SCOPE_SEPARATOR);
+		return (scopeIdx < 0 || scopeIdx > idx ? null : command.substring(scopeIdx + 1, idx));
+	}
+	
+	/**
+	 * The end of the command without its label
+	 */
+	static private int commandLabelIndex(String command) {
+		int idx = command.indexOf(LABEL_SEPARATOR);
+		return (idx < 0 ? command.length() : idx);
+	}
+	
+	/**
+	 * @return null for a broadcast
+	 */
+	static String commandLabel(String command) {
+		int idx = command.indexOf(LABEL_SEPARATOR);
+		return (idx < 0 ? null : command.substring(idx + 1));
+	}
+	
+	/**
+	 * 
+	 */
+	private static void registerMBean() {
+		if (logger.isDebugEnabled()) logger.debug("Check to see if the MBean needs to be registed");
+		try {
+			// Register the MBean if it is not registered yet
+			MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+	        ObjectName objectName = new ObjectName(MBEAN_NAME);
+			if (!mbeanServer.isRegistered(objectName)) {
+				RollbackController mbean = new RollbackController();
+				if (logger.isInfoEnabled()) logger.info("Registering the MBean " + MBEAN_NAME);
+				//Logger.getLogger("javax.management.mbeanserver").setLevel(Level.FINEST);
+				mbeanServer.registerMBean(mbean, objectName);
+				
+				// start listening on the configured transports as well (socket, multicast, ...)
+				RollbackTransports.startListening();
+			}
+		} 
+		catch (MalformedObjectNameException | InstanceAlreadyExistsException | NotCompliantMBeanException | MBeanException e) {
+			throw new RuntimeException(e);
+		}		
+	}
+	
+	/**
+	 * Make the driver change its state when the controller is told to do so.
+	 * This is idempotent: each driver gets exactly one listener, no matter how often it calls this method (e.g. on every connect).
+	 * The driver is only weakly referenced, if it is garbage collected the listener removes itself. 
+	 */
+	public static void startControllingDriver(final RollbackDriver rollbackDriver, final String label) {
+		synchronized (controlledDrivers) {
+			if (controlledDrivers.containsKey(rollbackDriver)) {
+				return;
+			}
+			registerMBean();
+	
+			if (logger.isInfoEnabled()) logger.info(label + "Taking control over the JDBC driver");
+			try {
+				MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+				ObjectName objectName = new ObjectName(MBEAN_NAME);
+				NotificationListener notificationListener = new DriverNotificationListener(rollbackDriver, label, objectName);
+				mbeanServer.addNotificationListener(objectName, notificationListener, new LabelFilter(rollbackDriver), driverHandback(rollbackDriver));
+				controlledDrivers.put(rollbackDriver, notificationListener);
+			} 
+			catch (InstanceNotFoundException | MalformedObjectNameException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+	static final private Map<RollbackDriver, NotificationListener> controlledDrivers = new WeakHashMap<>();
+	
+	/**
+	 * Release the driver, it no longer reacts to the controller
+	 */
+	public static void stopControllingDriver(final RollbackDriver rollbackDriver) {
+		synchronized (controlledDrivers) {
+			NotificationListener notificationListener = controlledDrivers.remove(rollbackDriver);
+			if (notificationListener == null) {
+				return;
+			}
+			try {
+				MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+				mbeanServer.removeNotificationListener(new ObjectName(MBEAN_NAME), notificationListener);
+			} 
+			catch (InstanceNotFoundException | ListenerNotFoundException | MalformedObjectNameException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+	
+	/**
+	 * Lets a targeted notification only through to the drivers that own a database with its label, the others are not even called.
+	 * A broadcast (no label) and a garbage collected driver (its listener needs to remove itself) are let through.
+	 */
+	static class LabelFilter implements NotificationFilter {
+		private static final long serialVersionUID = 1L;
+		
+		LabelFilter(RollbackDriver rollbackDriver) {
+			this.rollbackDriverReference = new WeakReference<>(rollbackDriver);
+		}
+		final transient private WeakReference<RollbackDriver> rollbackDriverReference;
+		
+		@Override
+		public boolean isNotificationEnabled(Notification notification) {
+			if (!(notification.getUserData() instanceof String)) {
+				return true;
+			}
+			RollbackDriver rollbackDriver = (rollbackDriverReference == null ? null : rollbackDriverReference.get());
+			if (rollbackDriver == null) {
+				return true;
+			}
+			return !RollbackDriver.getDatabases((String)notification.getUserData()).isEmpty();
+		}
+	}
+	
+	/**
+	 * The listener only holds a weak reference to the driver, so it does not keep it (and its classloader) alive
+	 */
+	static class DriverNotificationListener implements NotificationListener {
+		
+		DriverNotificationListener(RollbackDriver rollbackDriver, String label, ObjectName objectName) {
+			this.rollbackDriverReference = new WeakReference<>(rollbackDriver);
+			this.label = label;
+			this.objectName = objectName;
+		}
+		final private WeakReference<RollbackDriver> rollbackDriverReference;
+		final private String label;
+		final private ObjectName objectName;
+		
+		@Override
+		public void handleNotification(Notification notification, Object handback) {
+			
+			// the driver may have been garbage collected
+			RollbackDriver rollbackDriver = rollbackDriverReference.get();
+			if (rollbackDriver == null) {
+				if (logger.isDebugEnabled()) logger.debug((label == null ? "" : label) + "Driver was garbage collected, removing the listener");
+				try {
+					ManagementFactory.getPlatformMBeanServer().removeNotificationListener(objectName, this);
+				} 
+				catch (InstanceNotFoundException | ListenerNotFoundException e) {
+					// already gone
+				}
+				return;
+			}
+			
+			// depending on the type of the notification, make the drive change state
+			String type = notification.getType();
+			if (logger.isDebugEnabled()) logger.debug((label == null ? "" : label) + "Notification for coming in: " + type);
+			long startNanos = System.nanoTime();
+			String failure = null;
+			String labelName = (notification.getUserData() instanceof String ? (String)notification.getUserData() : null);
+			String scopeName = notification.getMessage();
+			try {
+				if (ROLLBACKAll_ACTION.equals(type)) {
+					rollbackDriver.rollback(labelName, notification.getSequenceNumber());
+				}
+				if (ALLOWTRANSACTIONS_ACTION.equals(type)) {
+					if (labelName == null) {
+						rollbackDriver.setTransactionsEnabled(true);
+					}
+					else {
+						rollbackDriver.setTransactionsEnabled(labelName, true);
+					}
+				}
+				if (DISABLETRANSACTIONS_ACTION.equals(type)) {
+					if (labelName == null) {
+						rollbackDriver.setTransactionsEnabled(false);
+					}
+					else {
+						rollbackDriver.setTransactionsEnabled(labelName, false);
+					}
+				}
+				if (PUSHSCOPE_ACTION.equals(type)) {
+					rollbackDriver.pushScope(scopeName, labelName, notification.getSequenceNumber());
+				}
+				if (ROLLBACKTOSCOPE_ACTION.equals(type)) {
+					rollbackDriver.rollbackToScope(scopeName, labelName, notification.getSequenceNumber());
+				}
+				if (POPSCOPE_ACTION.equals(type)) {
+					rollbackDriver.popScope(labelName, notification.getSequenceNumber());
+				}
+			}
+			catch (RuntimeException e) {
+				failure = e.toString();
+				throw e;
+			}
+			finally {
+				acknowledge(notification.getSequenceNumber(), rollbackDriver.getId(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), failure);
+			}
+		}
+		
+		/**
+		 * Report back to the controller; via the MBeanServer, because the controller may have been loaded by another classloader
+		 */
+		private void acknowledge(long sequenceNumber, String driverId, long durationMillis, String failure) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().invoke(objectName, "acknowledge"
+						, new Object[] {sequenceNumber, driverId, durationMillis, failure}
+						, new String[] {long.class.getName(), String.class.getName(), long.class.getName(), String.class.getName()});
+			} 
+			catch (InstanceNotFoundException | MBeanException | ReflectionException e) {
+				logger.warn("Could not acknowledge notification " + sequenceNumber, e);
+			}
+		}
+	}
+	
+	/**
+	 * Connect to the MBean from another JVM (e.g. the JVM running the Cucumber or integration tests)
+	 * Use -DRollbackControllerMBean.host=localhost to specify the host 
+	 * Use -DRollbackControllerMBean.port=7676 to specify the port 
+	 * The returned MBean uses a managed connection (see RollbackControllerClient) that is shared, and reconnects after the other JVM has restarted.
+	 */
+	public static RollbackControllerMBean connect() {
+		return getClient().getProxy();
+	}
+
+	/**
+	 * The managed connection used by connect, e.g. for its latency metrics
+	 */
+	public static RollbackControllerClient getClient() {
+		return RollbackControllerClient.of(getServiceUrl(), getCredentials());
+	}
+
+	/**
+	 * 
+	 */
+	static String getServiceUrl() {
+		String host = (System.getProperty("RollbackControllerMBean.host") == null ? "localhost" : System.getProperty("RollbackControllerMBean.host"));
+		if (host.contains(":")) {
+			host = "[" + host + "]"; // IPv6 requires brackets around the URL
+		}
+		int port = (System.getProperty("RollbackControllerMBean.port") == null ? 7676 : Integer.parseInt(System.getProperty("RollbackControllerMBean.port"))); 
+		String url = "service:jmx:rmi:///jndi/rmi://" + host + ":" + port + "/jmxrmi";
+		return url;
+	}
+
+	/**
+	 * Get the credentials from the system properties
+	 */
+	private static Map<String, String[]> getCredentials() {
+		
+		// see if credentials are configured
+		String username = System.getProperty(RollbackControllerMBean.class.getSimpleName() + ".user");
+		String password = System.getProperty(RollbackControllerMBean.class.getSimpleName() + ".password");
+		if (username == null || password == null) {
+			return null;
+		}
+
+		// return the credentials
+		Map<String, String[]> env = new HashMap<>();
+		String[] creds = { username, password };
+		env.put(JMXConnector.CREDENTIALS, creds);
+		return env;
+	}
+
+	/**
+	 * Connect to the MBean from inside this JVM 
+	 */
+	public static RollbackControllerMBean connectLocally() {
+		System.out.println("Connecting to RollbackControllerMBean on this JVM");
+		try {
+			MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer(); 
+			ObjectName name = new ObjectName(MBEAN_NAME);
+			RollbackControllerMBean mbean = MBeanServerInvocationHandler.newProxyInstance(mbeanServer, name, RollbackControllerMBean.class, false);
+			return mbean;
+		} 
+		catch (MalformedObjectNameException e) {
+			throw new RuntimeException("Error connecting local mbean", e);
+		}
+	}
+
+	// ========================================================================================================================================================
+	// Transport
+
+	/**
+	 * The MBean over RMI, this client is always available and used if no other transport is configured.
+	 * There is no server half, the MBean itself is always registered.
+	 */
+	public static class Transport implements RollbackTransport {
+		@Override
+		public String getName() {
+			return "mbean";
+		}
+		@Override
+		public int getPriority() {
+			return 0;
+		}
+		@Override
+		public boolean isClientConfigured() {
+			return true;
+		}
+		@Override
+		public void rollbackAll() {
+			RollbackDriver.getControllerBean().rollbackAll();
+		}
+		@Override
+		public void allowTransactions() {
+			RollbackDriver.getControllerBean().allowTransactions();
+		}
+		@Override
+		public void disableTransactions() {
+			RollbackDriver.getControllerBean().disableTransactions();
+		}
+		@Override
+		public void batch(String... commands) {
+			RollbackSummary rollbackSummary = RollbackDriver.getControllerBean().batch(commands, getTimeout());
+			if (!rollbackSummary.isSuccess()) {
+				throw new IllegalStateException("Batch " + Arrays.toString(commands) + " failed: " + rollbackSummary);
+			}
+		}
+		@Override
+		public boolean isServerConfigured() {
+			return false;
+		}
+		@Override
+		public void startListening() {
+		}
+		@Override
+		public void stopListening() {
+		}
+		@Override
+		public String toString() {
+			return getName();
+		}
+	}
+}
@@ -0,0 +1,331 @@
+package org.tbee.jdbcrollbackdriver;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServerInvocationHandler;
+import javax.management.MalformedObjectNameException;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import javax.management.remote.JMXConnectionNotification;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+
+/**
+ * A managed connection to the RollbackController MBean in another JVM.
+ * One JMXConnector is reused for all calls. When it breaks (a closed or failed JMXConnectionNotification, or an IOException during a call) the next call reconnects, with a bounded exponential backoff.
+ * A call that failed on a broken connection is retried once, if it is idempotent (see IDEMPOTENT); the others may have been executed before the connection broke, so their failure is reported instead.
+ * So the proxy can be kept forever, it survives restarts of the application server.
+ * The connect and invoke latencies are recorded, see the getters.
+ */
+public class RollbackControllerClient implements InvocationHandler, NotificationListener {
+	final static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RollbackControllerClient.class);
+
+	/**
+	 * One client per URL and environment (credentials)
+	 */
+	static RollbackControllerClient of(String url, Map<String, ?> environment) {
+		return clients.computeIfAbsent(key(url, environment), k -> new RollbackControllerClient(url, environment));
+	}
+	static final private ConcurrentMap<List<Object>, RollbackControllerClient> clients = new ConcurrentHashMap<>();
+
+	/**
+	 * The credentials are an array, which is compared by content
+	 */
+	static private List<Object> key(String url, Map<String, ?> environment) {
+		Map<String, Object> values = new TreeMap<>();
+		if (environment != null) {
+			for (Map.Entry<String, ?> entry : environment.entrySet()) {
+				values.put(entry.getKey(), entry.getValue() instanceof Object[] ? Arrays.asList((Object[])entry.getValue()) : entry.getValue());
+			}
+		}
+		return Arrays.asList(url, values);
+	}
+
+	// ================================================================================================
+	// Constructor
+
+	RollbackControllerClient(String url, Map<String, ?> environment) {
+		this.url = url;
+		this.environment = environment;
+		this.proxy = (RollbackControllerMBean)Proxy.newProxyInstance(RollbackControllerMBean.class.getClassLoader(), new Class<?>[] { RollbackControllerMBean.class }, this);
+	}
+	final private String url;
+	final private Map<String, ?> environment;
+	final private RollbackControllerMBean proxy;
+
+	/**
+	 * The MBean, calls go over the managed connection
+	 */
+	public RollbackControllerMBean getProxy() {
+		return proxy;
+	}
+
+	/**
+	 *
+	 */
+	public String getUrl() {
+		return url;
+	}
+
+	// ================================================================================================
+	// Connection
+
+	/**
+	 * Connect if there is no working connection, retrying with backoff until the connect timeout expires
+	 */
+	synchronized RollbackControllerMBean getMBean() {
+		if (mbean != null && !broken) {
+			return mbean;
+		}
+		closeConnector();
+
+		long deadlineNanos = System.nanoTime() + getConnectTimeout() * 1000000;
+		long backoffMillis = getInitialBackoff();
+		while (true) {
+			long startNanos = System.nanoTime();
+			try {
+				if (logger.isDebugEnabled()) logger.debug("Connecting to RollbackControllerMBean running on " + url);
+				JMXConnector connector = JMXConnectorFactory.connect(new JMXServiceURL(url), environment);
+				connector.addConnectionNotificationListener(this, null, connector);
+				RollbackControllerMBean mbean = MBeanServerInvocationHandler.newProxyInstance(connector.getMBeanServerConnection(), new ObjectName(RollbackController.MBEAN_NAME), RollbackControllerMBean.class, false);
+				lastConnectMicros = (System.nanoTime() - startNanos) / 1000;
+				connectCount.incrementAndGet();
+				this.connector = connector;
+				this.mbean = mbean;
+				this.broken = false;
+				if (logger.isDebugEnabled()) logger.debug("Connected to " + url + " in " + lastConnectMicros + "us");
+				return mbean;
+			}
+			catch (MalformedObjectNameException e) {
+				throw new RuntimeException("Error connecting to " + url, e);
+			}
+			catch (IOException e) {
+				connectFailureCount.incrementAndGet();
+				if (System.nanoTime() + backoffMillis * 1000000 > deadlineNanos) {
+					throw new RuntimeException("Error connecting to " + url, e);
+				}
+				if (logger.isDebugEnabled()) logger.debug("Connecting to " + url + " failed, retrying in " + backoffMillis + "ms: " + e);
+				try {
+					Thread.sleep(backoffMillis);
+				}
+				catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException("Interrupted while connecting to " + url, e);
+				}
+				backoffMillis = Math.min(backoffMillis * 2, getMaxBackoff());
+			}
+		}
+	}
+	volatile private JMXConnector connector; // also read by the notification thread
+	private RollbackControllerMBean mbean;
+	volatile private boolean broken = false;
+
+	/**
+	 * The connector reports that the connection is gone
+	 */
+	@Override
+	public void handleNotification(Notification notification, Object handback) {
+		if (JMXConnectionNotification.CLOSED.equals(notification.getType()) || JMXConnectionNotification.FAILED.equals(notification.getType())) {
+			if (handback == connector) {
+				if (logger.isDebugEnabled()) logger.debug("Connection to " + url + " " + notification.getType());
+				broken = true;
+			}
+		}
+	}
+
+	/**
+	 *
+	 */
+	synchronized void markBroken(RollbackControllerMBean failedMBean) {
+		if (failedMBean == mbean) {
+			broken = true;
+		}
+	}
+
+	/**
+	 *
+	 */
+	synchronized private void closeConnector() {
+		if (connector == null) {
+			return;
+		}
+		try {
+			connector.removeConnectionNotificationListener(this);
+		}
+		catch (Exception e) {
+			// ignore
+		}
+		try {
+			connector.close();
+		}
+		catch (IOException e) {
+			// ignore, it is broken anyhow
+		}
+		connector = null;
+		mbean = null;
+	}
+
+	/**
+	 * Close the connection, the next call will reconnect
+	 */
+	public void close() {
+		closeConnector();
+	}
+
+	// ================================================================================================
+	// Invoke
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		if (method.getDeclaringClass() == Object.class) {
+			switch (method.getName()) {
+				case "equals": return proxy == args[0];
+				case "hashCode": return System.identityHashCode(proxy);
+				default: return toString();
+			}
+		}
+
+		for (int attempt = 0; ; attempt++) {
+			RollbackControllerMBean mbean = getMBean();
+			long startNanos = System.nanoTime();
+			try {
+				Object result = method.invoke(mbean, args);
+				long micros = (System.nanoTime() - startNanos) / 1000;
+				invokeCount.incrementAndGet();
+				totalInvokeMicros.addAndGet(micros);
+				maxInvokeMicros.accumulateAndGet(micros, Math::max);
+				return result;
+			}
+			catch (InvocationTargetException e) {
+				Throwable cause = e.getCause();
+				if (!isConnectionFailure(cause)) {
+					throw cause;
+				}
+				markBroken(mbean);
+				if (attempt > 0 || !IDEMPOTENT.contains(method.getName())) {
+					throw cause;
+				}
+				if (logger.isDebugEnabled()) logger.debug(method.getName() + " on " + url + " failed, reconnecting: " + cause);
+			}
+		}
+	}
+
+	/**
+	 * The operations that can safely be executed twice; a scope, batch or acknowledgement could be applied twice
+	 */
+	static final private Set<String> IDEMPOTENT = new HashSet<>(Arrays.asList(
+			"rollbackAll", "rollbackAllAndWait", "rollback", "rollbackAndWait",
+			"allowTransactions", "allowTransactionsAndWait", "disableTransactions", "disableTransactionsAndWait",
+			"getRegisteredDriverCount", "getLastDurations", "getCoalescedCount"));
+
+	/**
+	 * IOExceptions (including RMI's) are wrapped in an UndeclaredThrowableException by the MBean proxy
+	 */
+	static boolean isConnectionFailure(Throwable throwable) {
+		for (Throwable t = throwable; t != null; t = t.getCause()) {
+			if (t instanceof IOException) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// ================================================================================================
+	// Metrics
+
+	/**
+	 * How long the last successful connect took, in microseconds
+	 */
+	public long getLastConnectMicros() {
+		return lastConnectMicros;
+	}
+	volatile private long lastConnectMicros = 0;
+
+	/**
+	 *
+	 */
+	public long getConnectCount() {
+		return connectCount.get();
+	}
+	final private AtomicLong connectCount = new AtomicLong();
+
+	/**
+	 *
+	 */
+	public long getConnectFailureCount() {
+		return connectFailureCount.get();
+	}
+	final private AtomicLong connectFailureCount = new AtomicLong();
+
+	/**
+	 * The number of successful calls
+	 */
+	public long getInvokeCount() {
+		return invokeCount.get();
+	}
+	final private AtomicLong invokeCount = new AtomicLong();
+
+	/**
+	 *
+	 */
+	public long getAverageInvokeMicros() {
+		long count = invokeCount.get();
+		return (count == 0 ? 0 : totalInvokeMicros.get() / count);
+	}
+	final private AtomicLong totalInvokeMicros = new AtomicLong();
+
+	/**
+	 *
+	 */
+	public long getMaxInvokeMicros() {
+		return maxInvokeMicros.get();
+	}
+	final private AtomicLong maxInvokeMicros = new AtomicLong();
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[" + url + ", connects=" + getConnectCount() + ", lastConnect=" + getLastConnectMicros() + "us, invokes=" + getInvokeCount() + ", avgInvoke=" + getAverageInvokeMicros() + "us, maxInvoke=" + getMaxInvokeMicros() + "us]";
+	}
+
+	// ================================================================================================
+	// Configuration
+
+	/**
+	 * How long to keep trying to connect, in milliseconds
+	 */
+	static long getConnectTimeout() {
+		long timeout = (System.getProperty(RollbackControllerClient.class.getSimpleName() + ".connectTimeout") == null ? 30000 : Long.parseLong(System.getProperty(RollbackControllerClient.class.getSimpleName() + ".connectTimeout")));
+		return timeout;
+	}
+
+	/**
+	 * The first wait after a failed connect, in milliseconds, it doubles on every next failure
+	 */
+	static long getInitialBackoff() {
+		long backoff = (System.getProperty(RollbackControllerClient.class.getSimpleName() + ".initialBackoff") == null ? 100 : Long.parseLong(System.getProperty(RollbackControllerClient.class.getSimpleName() + ".initialBackoff")));
+		return backoff;
+	}
+
+	/**
+	 * The longest wait between connects, in milliseconds
+	 */
+	static long getMaxBackoff() {
+		long backoff = (System.getProperty(RollbackControllerClient.class.getSimpleName() + ".maxBackoff") == null ? 5000 : Long.parseLong(System.getProperty(RollbackControllerClient.class.getSimpleName() + ".maxBackoff")));
+		return backoff;
+	}
+}
@@ -1,16 +1,52 @@
-/**
- * 
- */
-package org.tbee.jdbcrollbackdriver;
-
-/**
- *
- */
-public interface RollbackControllerMBean {
-	
-	void rollbackAll();  
-	
-	void allowTransactions();  
-	
-	void disableTransactions();  
-}
+/**
+ * 
+ */
+package org.tbee.jdbcrollbackdriver;
+
+import java.util.Map;
+
+/**
+ *
+ */
+public interface RollbackControllerMBean {
+	
+	void rollbackAll();  
+	
+	RollbackSummary rollbackAllAndWait(long timeoutMillis);  
+	
+	void allowTransactions();  
+	
+	RollbackSummary allowTransactionsAndWait(long timeoutMillis);  
+	
+	void disableTransactions();  
+	
+	RollbackSummary disableTransactionsAndWait(long timeoutMillis);  
+	
+	void rollback(String labelName);
+	
+	RollbackSummary rollbackAndWait(String labelName, long timeoutMillis);
+	
+	void allowTransactions(String labelName);
+	
+	RollbackSummary allowTransactionsAndWait(String labelName, long timeoutMillis);
+	
+	void disableTransactions(String labelName);
+	
+	RollbackSummary disableTransactionsAndWait(String labelName, long timeoutMillis);
+	
+	RollbackSummary pushScope(String scopeName, long timeoutMillis);
+	
+	RollbackSummary rollbackToScope(String scopeName, long timeoutMillis);
+	
+	RollbackSummary popScope(long timeoutMillis);
+	
+	RollbackSummary batch(String[] commands, long timeoutMillis);
+	
+	int getRegisteredDriverCount();
+	
+	void acknowledge(long sequenceNumber, String driverId, long durationMillis, String failure);
+	
+	Map<String, Long> getLastDurations();
+	
+	long getCoalescedCount();
+}
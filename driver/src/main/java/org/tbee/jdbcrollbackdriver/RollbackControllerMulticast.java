@@ -1,177 +1,663 @@
-/**
- * 
- */
-package org.tbee.jdbcrollbackdriver;
-
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.IOException;
-import java.io.OutputStream;
-import java.lang.ref.Reference;
-import java.net.DatagramPacket;
-import java.net.InetAddress;
-import java.net.MulticastSocket;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.util.ArrayList;
-
-/**
- *
- */
-public class RollbackControllerMulticast {
-	final static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RollbackControllerMulticast.class);
-
-	final private static String ROLLBACK = "ROLLBACK";
-	final private static String ALLOWTRANSACTIONS = "allowTransactions";
-	final private static String DISABLETRANSACTIONS = "disableTransactions";
-
-	static void startListening() {
-		if (!useMulticast()) {
-			System.out.println(RollbackControllerMulticast.class.getSimpleName() + ": not using multicast");
-			return;
-		}
-		
-		serverThread = new Thread( () -> {
-			Thread.currentThread().setName(RollbackControllerMulticast.class.getSimpleName() + "-server");
-			waitForData();	
-		});
-		serverThread.start();
-	}
-	static Thread serverThread;
-
-	/**
-	 * Stop the listener
-	 */
-	public static void stop() {
-		forever = false;
-		serverThread.stop(); // TBEERNOT we can do better
-	}
-	
-	/**
-	 * @return
-	 */
-	private static void waitForData() {
-		
-		// connect to the MBean locally (bypassing the VPN problems)
-		RollbackControllerMBean rollbackController = RollbackController.connectLocally();
-
-		String ip = getIP();
-		int port = getPort();
-
-		// create a server socket
-	    if (logger.isInfoEnabled()) logger.info(RollbackControllerMulticast.class.getSimpleName() + ": listening to " + ip + ":" + port);
-	    System.out.println(RollbackControllerMulticast.class.getSimpleName() + ": listening to " + ip + ":" + port);
-		try (
-			MulticastSocket socket = new MulticastSocket(port);
-		){
-			// join group
-		    InetAddress group = InetAddress.getByName(ip);
-			socket.joinGroup(group);
-
-			// forever
-			while (forever) {
-				
-				try {		
-					DatagramPacket packet;
-				    byte[] buf = new byte[256];
-				    packet = new DatagramPacket(buf, buf.length);
-				    if (logger.isDebugEnabled()) logger.debug(RollbackControllerMulticast.class.getSimpleName() + ": Listening on " + ip + ":" + port);
-				    socket.receive(packet);
-				    String received = new String(packet.getData(), 0, packet.getLength());
-				    if (logger.isDebugEnabled()) logger.debug(RollbackControllerMulticast.class.getSimpleName() + ": Received : " + received);
-				    
-				    // react to the received packet
-				    if (ROLLBACK.equals(received)) {
-						rollbackController.rollbackAll();
-				    }
-				    else if (ALLOWTRANSACTIONS.equals(received)) {
-						rollbackController.allowTransactions();
-				    }
-				    else if (DISABLETRANSACTIONS.equals(received)) {
-						rollbackController.disableTransactions();
-		    		}
-				}
-				catch (Exception e) {
-					e.printStackTrace();
-					return; // stop the server
-				}
-			}
-		} 
-	    catch (IOException e) {
-			e.printStackTrace();
-		}
-	}
-	static boolean forever = true;
-
-	/**
-	 * 
-	 */
-	static private void broadcast(String msg) {
-		String ip = getIP();
-		int port = getPort();
-		try (
-			MulticastSocket socket = new MulticastSocket(port);
-		){
-			// join group
-			InetAddress group = InetAddress.getByName(ip);
-			socket.joinGroup(group);
-
-			// send command
-		    if (logger.isDebugEnabled()) logger.debug(RollbackControllerMulticast.class.getSimpleName() + ": Sending to " + ip + ":" + port + " " + msg);
-			DatagramPacket sendPacket = new DatagramPacket(msg.getBytes(), msg.length(), group, 7777);
-			socket.send(sendPacket);
-		    if (logger.isDebugEnabled()) logger.debug(RollbackControllerMulticast.class.getSimpleName() + ": Send " + msg);
-		}
-		catch (Exception e) {
-			e.printStackTrace();
-		}
-	}
-
-	/**
-	 * 
-	 */
-	static String getIP() {
-		String host = (System.getProperty(RollbackControllerMulticast.class.getSimpleName() + ".ip") == null ? "" : System.getProperty(RollbackControllerMulticast.class.getSimpleName() + ".ip"));
-		return host; 
-	}
-
-	/**
-	 * 
-	 */
-	static int getPort() {
-		int port = (System.getProperty(RollbackControllerMulticast.class.getSimpleName() + ".port") == null ? 0 : Integer.parseInt(System.getProperty(RollbackControllerMulticast.class.getSimpleName() + ".port")));
-		return port;
-	}
-
-	/**
-	 * 
-	 */
-	static boolean useMulticast() {
-		return getPort() > 0;
-	}
-	
-	// ========================================================================================================================================================
-	// API
-
-	/**
-	 * 
-	 */
-	static public void rollbackAll() {
-		broadcast(ROLLBACK);
-	}
-	
-	/**
-	 * 
-	 */
-	static public void allowTransactions() {
-		broadcast(ALLOWTRANSACTIONS);
-	}
-	
-	/**
-	 * 
-	 */
-	static public void disableTransactions() {
-		broadcast(DISABLETRANSACTIONS);
-	}
-	
-}
+/**
+ *
+ */
+package org.tbee.jdbcrollbackdriver;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends the commands to all nodes in a multicast group, so one command can reset a whole cluster.
+ * UDP is unreliable, so every command carries a sequence number, each node acknowledges it (unicast, with its node name) after its drivers have processed it, and the sender retransmits until the nodes have confirmed or the timeout expires.
+ * Each node also reports right away that it received the command, so the sender knows which nodes to wait for, however long they take to process it.
+ * A node that receives a retransmit of a command it already processed only repeats its acknowledgement, or its receipt if it is still processing.
+ *
+ * A command packet is [byte COMMAND][long session][long sequence][UTF-8 command], a receipt is [byte RECEIVED][long session][long sequence][UTF-8 node name],
+ * an acknowledgement is [byte ACK][long session][long sequence][byte status][UTF-8 node name + "\n" + message].
+ * Packets that do not start with COMMAND are treated as the old unacknowledged plain text commands.
+ */
+public class RollbackControllerMulticast {
+	final static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RollbackControllerMulticast.class);
+
+	final private static String ROLLBACK = "ROLLBACK";
+	final private static String ALLOWTRANSACTIONS = "allowTransactions";
+	final private static String DISABLETRANSACTIONS = "disableTransactions";
+
+	final private static String ROLLBACKAll_ACTION = "rollbackAll";
+	final private static String ALLOWTRANSACTIONS_ACTION = "allowTransactions";
+	final private static String DISABLETRANSACTIONS_ACTION = "disableTransactions";
+
+	static final byte COMMAND = 1;
+	static final byte ACK = 2;
+	static final byte RECEIVED = 3;
+	static final byte STATUS_OK = 0;
+	static final byte STATUS_FAILED = 1;
+	static final int HEADER_LENGTH = 1 + 8 + 8;
+	static final int MAX_PACKET_SIZE = 1400; // stay below the usual MTU, so packets are not fragmented
+
+	static void startListening() {
+		if (!useMulticast()) {
+			System.out.println(RollbackControllerMulticast.class.getSimpleName() + ": not using multicast");
+			return;
+		}
+
+		// connect to the MBean locally (bypassing the VPN problems)
+		RollbackControllerMBean rollbackController = RollbackController.connectLocally();
+
+		// create the channel
+		String ip = getIP();
+		int port = getPort();
+	    if (logger.isInfoEnabled()) logger.info(RollbackControllerMulticast.class.getSimpleName() + ": listening to " + ip + ":" + port);
+	    System.out.println(RollbackControllerMulticast.class.getSimpleName() + ": listening to " + ip + ":" + port);
+		try {
+			InetAddress group = InetAddress.getByName(ip);
+			DatagramChannel channel = DatagramChannel.open(protocolFamily(group));
+			channel.setOption(StandardSocketOptions.SO_REUSEADDR, true); // multiple nodes on one host
+			channel.bind(new InetSocketAddress(port));
+			channel.join(group, getNetworkInterface());
+			serverChannel = channel;
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+
+		forever = true;
+		serverThread = new Thread( () -> {
+			Thread.currentThread().setName(RollbackControllerMulticast.class.getSimpleName() + "-server");
+			waitForData(serverChannel, rollbackController);
+		});
+		serverThread.start();
+	}
+	static Thread serverThread;
+	static private DatagramChannel serverChannel;
+
+	/**
+	 * Stop the listener, closing the channel ends the blocking receive
+	 */
+	public static void stop() {
+		forever = false;
+		close(serverChannel);
+		serverChannel = null;
+		synchronized (RollbackControllerMulticast.class) {
+			close(senderChannel);
+			senderChannel = null;
+		}
+	}
+
+	/**
+	 *
+	 */
+	private static void waitForData(DatagramChannel channel, RollbackControllerMBean rollbackController) {
+
+		// the commands are executed on a separate thread, so retransmits can be recognized while a command is still running
+		ExecutorService commandExecutor = Executors.newSingleThreadExecutor( runnable -> {
+			Thread thread = new Thread(runnable);
+			thread.setName(RollbackControllerMulticast.class.getSimpleName() + "-command");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		// one buffer is reused for all packets
+		ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_PACKET_SIZE);
+		try {
+			while (forever) {
+				try {
+					buffer.clear();
+					SocketAddress sender = channel.receive(buffer);
+					buffer.flip();
+					received(channel, rollbackController, commandExecutor, sender, buffer);
+				}
+				catch (ClosedChannelException e) {
+					// stopped
+					break;
+				}
+				catch (IOException | RuntimeException e) {
+					// a bad packet does not stop the server
+					logger.warn(RollbackControllerMulticast.class.getSimpleName() + ": failed to process packet", e);
+				}
+			}
+		}
+		finally {
+			commandExecutor.shutdownNow();
+		}
+	}
+	static boolean forever = true;
+
+	/**
+	 *
+	 */
+	private static void received(DatagramChannel channel, RollbackControllerMBean rollbackController, ExecutorService commandExecutor, SocketAddress sender, ByteBuffer buffer) throws IOException {
+
+		// the old plain text commands
+		if (!buffer.hasRemaining() || buffer.get(0) != COMMAND) {
+		    String received = StandardCharsets.UTF_8.decode(buffer).toString();
+		    if (logger.isDebugEnabled()) logger.debug(RollbackControllerMulticast.class.getSimpleName() + ": Received : " + received);
+		    if (ROLLBACK.equals(received)) {
+				rollbackController.rollbackAll();
+		    }
+		    else if (ALLOWTRANSACTIONS.equals(received)) {
+				rollbackController.allowTransactions();
+		    }
+		    else if (DISABLETRANSACTIONS.equals(received)) {
+				rollbackController.disableTransactions();
+    		}
+		    return;
+		}
+
+		// sequenced command
+		if (buffer.remaining() < HEADER_LENGTH) {
+			throw new IOException("Packet of " + buffer.remaining() + " bytes from " + sender + " is too short");
+		}
+		buffer.get();
+		long session = buffer.getLong();
+		long sequence = buffer.getLong();
+		String command = StandardCharsets.UTF_8.decode(buffer).toString();
+		String key = session + "/" + sequence;
+
+		// a retransmit: repeat the acknowledgement, or the receipt if the command is still running
+		synchronized (processedCommands) {
+			if (processedCommands.containsKey(key)) {
+				ByteBuffer ack = processedCommands.get(key);
+				if (logger.isDebugEnabled()) logger.debug(RollbackControllerMulticast.class.getSimpleName() + ": Retransmit of " + key + " from " + sender + (ack == null ? ", still running" : ", acknowledging again"));
+				channel.send(ack == null ? receipt(session, sequence) : ack.duplicate(), sender);
+				return;
+			}
+			processedCommands.put(key, null);
+		}
+
+		// let the sender know this node is processing it
+		channel.send(receipt(session, sequence), sender);
+
+		// execute
+		if (logger.isDebugEnabled()) logger.debug(RollbackControllerMulticast.class.getSimpleName() + ": Received " + key + " from " + sender + ": " + command);
+		commandExecutor.execute( () -> {
+			byte status;
+			String message;
+			try {
+				RollbackSummary rollbackSummary = RollbackController.execute(rollbackController, command, getTimeout());
+				status = (rollbackSummary.isSuccess() ? STATUS_OK : STATUS_FAILED);
+				message = rollbackSummary.toString();
+			}
+			catch (RuntimeException e) {
+				status = STATUS_FAILED;
+				message = e.toString();
+			}
+
+			// acknowledge
+			byte[] text = (getNodeName() + "\n" + message).getBytes(StandardCharsets.UTF_8);
+			ByteBuffer ack = ByteBuffer.allocate(HEADER_LENGTH + 1 + Math.min(text.length, MAX_PACKET_SIZE - HEADER_LENGTH - 1));
+			ack.put(ACK).putLong(session).putLong(sequence).put(status).put(text, 0, ack.remaining()).flip();
+			synchronized (processedCommands) {
+				processedCommands.put(key, ack);
+			}
+			try {
+				channel.send(ack.duplicate(), sender);
+			}
+			catch (IOException e) {
+				// the sender will retransmit
+				logger.warn(RollbackControllerMulticast.class.getSimpleName() + ": failed to acknowledge " + key + " to " + sender, e);
+			}
+		});
+	}
+	static private ByteBuffer receipt(long session, long sequence) {
+		byte[] text = getNodeName().getBytes(StandardCharsets.UTF_8);
+		ByteBuffer receipt = ByteBuffer.allocate(HEADER_LENGTH + Math.min(text.length, MAX_PACKET_SIZE - HEADER_LENGTH));
+		receipt.put(RECEIVED).putLong(session).putLong(sequence).put(text, 0, receipt.remaining()).flip();
+		return receipt;
+	}
+	static final private Map<String, ByteBuffer> processedCommands = new LinkedHashMap<String, ByteBuffer>() {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, ByteBuffer> eldest) {
+			return size() > 1000;
+		}
+	};
+
+	// ========================================================================================================================================================
+	// Sending
+
+	/**
+	 * Send the command to the group and collect the acknowledgements
+	 */
+	static RollbackSummary broadcastAndWait(String msg, long timeoutMillis) {
+		byte[] bytes = msg.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > MAX_PACKET_SIZE - HEADER_LENGTH) {
+			throw new IllegalArgumentException("Command too long: " + msg);
+		}
+		InetSocketAddress target = new InetSocketAddress(getIP(), getPort());
+		int expectedNodes = getExpectedNodes();
+		long retransmitMillis = getRetransmitInterval();
+		long sequence = sequenceNumber.incrementAndGet();
+		PendingCommand pendingCommand = new PendingCommand();
+		pendingCommands.put(sequence, pendingCommand);
+		ByteBuffer buffer = acquireBuffer();
+		long startNanos = System.nanoTime();
+		try {
+			DatagramChannel channel = getSenderChannel();
+			buffer.put(COMMAND).putLong(SESSION).putLong(sequence).put(bytes).flip();
+
+			// send until all nodes have confirmed
+			boolean completed;
+			while (true) {
+			    if (logger.isDebugEnabled()) logger.debug(RollbackControllerMulticast.class.getSimpleName() + ": Sending " + sequence + " to " + target + " " + msg);
+				channel.send(buffer.duplicate(), target);
+				completed = pendingCommand.await(expectedNodes, retransmitMillis);
+				long elapsedMillis = (System.nanoTime() - startNanos) / 1000000;
+				if (completed || elapsedMillis >= timeoutMillis) {
+					break;
+				}
+			}
+			long durationMillis = (System.nanoTime() - startNanos) / 1000000;
+			RollbackSummary rollbackSummary = pendingCommand.toSummary(expectedNodes, completed, durationMillis);
+		    if (logger.isDebugEnabled()) logger.debug(RollbackControllerMulticast.class.getSimpleName() + ": " + msg + " " + rollbackSummary);
+			return rollbackSummary;
+		}
+		catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		finally {
+			pendingCommands.remove(sequence);
+			releaseBuffer(buffer);
+		}
+	}
+	final static private long SESSION = new Random().nextLong();
+	final static private AtomicLong sequenceNumber = new AtomicLong();
+	final static private Map<Long, PendingCommand> pendingCommands = new ConcurrentHashMap<>();
+
+	/**
+	 * The channel used for sending is reused, a thread collects the acknowledgements sent to it
+	 */
+	static synchronized private DatagramChannel getSenderChannel() throws IOException {
+		if (senderChannel != null && senderChannel.isOpen()) {
+			return senderChannel;
+		}
+		InetAddress group = InetAddress.getByName(getIP());
+		DatagramChannel channel = DatagramChannel.open(protocolFamily(group));
+		channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, getNetworkInterface());
+		channel.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true); // nodes on this host
+		channel.bind(null);
+		senderChannel = channel;
+
+		Thread thread = new Thread( () -> receiveAcknowledgements(channel) );
+		thread.setName(RollbackControllerMulticast.class.getSimpleName() + "-acknowledgements");
+		thread.setDaemon(true);
+		thread.start();
+		return channel;
+	}
+	static private DatagramChannel senderChannel;
+
+	/**
+	 *
+	 */
+	private static void receiveAcknowledgements(DatagramChannel channel) {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_PACKET_SIZE);
+		while (channel.isOpen()) {
+			try {
+				buffer.clear();
+				SocketAddress node = channel.receive(buffer);
+				buffer.flip();
+				byte type = (buffer.remaining() < HEADER_LENGTH ? 0 : buffer.get());
+				if ((type != ACK && type != RECEIVED) || (type == ACK && buffer.remaining() < HEADER_LENGTH)) {
+					logger.warn(RollbackControllerMulticast.class.getSimpleName() + ": ignoring invalid packet from " + node);
+					continue;
+				}
+				long session = buffer.getLong();
+				long sequence = buffer.getLong();
+				PendingCommand pendingCommand = (session == SESSION ? pendingCommands.get(sequence) : null);
+
+				// a receipt
+				if (type == RECEIVED) {
+					String nodeName = StandardCharsets.UTF_8.decode(buffer).toString();
+					if (logger.isDebugEnabled()) logger.debug(RollbackControllerMulticast.class.getSimpleName() + ": Receipt of " + sequence + " from " + nodeName + " (" + node + ")");
+					if (pendingCommand != null) {
+						pendingCommand.received(nodeName);
+					}
+					continue;
+				}
+
+				// an acknowledgement
+				byte status = buffer.get();
+				String text = StandardCharsets.UTF_8.decode(buffer).toString();
+				int newline = text.indexOf('\n');
+				String nodeName = (newline < 0 ? text : text.substring(0, newline));
+				String message = (newline < 0 ? "" : text.substring(newline + 1));
+				if (logger.isDebugEnabled()) logger.debug(RollbackControllerMulticast.class.getSimpleName() + ": Acknowledgement of " + sequence + " from " + nodeName + " (" + node + "): " + message);
+				if (pendingCommand != null) {
+					pendingCommand.acknowledge(nodeName, status == STATUS_OK ? null : message);
+				}
+			}
+			catch (ClosedChannelException e) {
+				return;
+			}
+			catch (IOException | RuntimeException e) {
+				logger.warn(RollbackControllerMulticast.class.getSimpleName() + ": failed to receive acknowledgement", e);
+			}
+		}
+	}
+
+	/**
+	 * The buffers for sending are pooled
+	 */
+	static private ByteBuffer acquireBuffer() {
+		ByteBuffer buffer = bufferPool.poll();
+		return (buffer != null ? buffer : ByteBuffer.allocateDirect(MAX_PACKET_SIZE));
+	}
+	static private void releaseBuffer(ByteBuffer buffer) {
+		buffer.clear();
+		bufferPool.offer(buffer);
+	}
+	final static private BlockingQueue<ByteBuffer> bufferPool = new ArrayBlockingQueue<>(8);
+
+	/**
+	 * The acknowledgements collected for one command
+	 */
+	static class PendingCommand {
+		final private long startNanos = System.nanoTime();
+		final private Map<String, Long> durations = new HashMap<>();
+		final private Map<String, String> failures = new HashMap<>();
+		final private Set<String> receivedNodes = new HashSet<>();
+		private long lastReceiptNanos = 0;
+
+		/**
+		 * The node started processing the command (or a node that does not send receipts finished it)
+		 */
+		synchronized void received(String nodeName) {
+			if (receivedNodes.add(nodeName)) {
+				lastReceiptNanos = System.nanoTime();
+				notifyAll();
+			}
+		}
+
+		synchronized void acknowledge(String nodeName, String failure) {
+			if (durations.containsKey(nodeName)) {
+				return; // a repeated acknowledgement
+			}
+			received(nodeName);
+			durations.put(nodeName, (System.nanoTime() - startNanos) / 1000000);
+			if (failure != null) {
+				failures.put(nodeName, failure);
+			}
+			notifyAll();
+		}
+
+		/**
+		 * If the number of nodes is not known, the command is considered complete when every node that sent a receipt has acknowledged, and no new receipt came in for a while.
+		 * The receipts are sent before the command is processed, so a slow node is waited for.
+		 * @return true if complete
+		 */
+		synchronized boolean await(int expectedNodes, long waitMillis) {
+			long deadlineNanos = System.nanoTime() + waitMillis * 1000000;
+			while (true) {
+				if (expectedNodes > 0 && durations.size() >= expectedNodes) {
+					return true;
+				}
+				if (expectedNodes <= 0 && !receivedNodes.isEmpty() && durations.size() >= receivedNodes.size() && System.nanoTime() - lastReceiptNanos >= QUIET_PERIOD_FACTOR * waitMillis * 1000000) {
+					return true;
+				}
+				long remainingNanos = deadlineNanos - System.nanoTime();
+				if (remainingNanos <= 0) {
+					return false;
+				}
+				try {
+					wait(remainingNanos / 1000000 + 1);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+		}
+
+		synchronized RollbackSummary toSummary(int expectedNodes, boolean completed, long durationMillis) {
+			return new RollbackSummary(expectedNodes > 0 ? expectedNodes : receivedNodes.size(), durations, failures, completed, durationMillis);
+		}
+	}
+	static final private int QUIET_PERIOD_FACTOR = 4;
+
+	// ========================================================================================================================================================
+	// Support
+
+	/**
+	 *
+	 */
+	static private ProtocolFamily protocolFamily(InetAddress group) {
+		return (group instanceof Inet6Address ? StandardProtocolFamily.INET6 : StandardProtocolFamily.INET);
+	}
+
+	/**
+	 *
+	 */
+	static private void close(DatagramChannel channel) {
+		if (channel == null) {
+			return;
+		}
+		try {
+			channel.close();
+		}
+		catch (IOException e) {
+			// ignore
+		}
+	}
+
+	/**
+	 *
+	 */
+	static String getIP() {
+		String host = (System.getProperty(RollbackControllerMulticast.class.getSimpleName() + ".ip") == null ? "" : System.getProperty(RollbackControllerMulticast.class.getSimpleName() + ".ip"));
+		return host;
+	}
+
+	/**
+	 *
+	 */
+	static int getPort() {
+		int port = (System.getProperty(RollbackControllerMulticast.class.getSimpleName() + ".port") == null ? 0 : Integer.parseInt(System.getProperty(RollbackControllerMulticast.class.getSimpleName() + ".port")));
+		return port;
+	}
+
+	/**
+	 * Use -DRollbackControllerMulticast.interface=eth0 to select the network interface, by default the first non loopback interface that supports multicast is used
+	 */
+	static NetworkInterface getNetworkInterface() throws IOException {
+		String name = System.getProperty(RollbackControllerMulticast.class.getSimpleName() + ".interface");
+		if (name != null) {
+			NetworkInterface networkInterface = NetworkInterface.getByName(name);
+			if (networkInterface == null) {
+				throw new IOException("Network interface " + name + " not found");
+			}
+			return networkInterface;
+		}
+		NetworkInterface fallback = null;
+		for (NetworkInterface networkInterface : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+			if (!networkInterface.isUp() || !networkInterface.supportsMulticast()) {
+				continue;
+			}
+			if (networkInterface.isLoopback()) {
+				fallback = networkInterface;
+				continue;
+			}
+			for (InetAddress inetAddress : Collections.list(networkInterface.getInetAddresses())) {
+				if (inetAddress instanceof Inet4Address) {
+					return networkInterface;
+				}
+			}
+			if (fallback == null) {
+				fallback = networkInterface;
+			}
+		}
+		if (fallback == null) {
+			throw new IOException("No network interface that supports multicast");
+		}
+		return fallback;
+	}
+
+	/**
+	 * Use -DRollbackControllerMulticast.node=name to identify this node in the acknowledgements, default is the JVM's name (pid@host)
+	 */
+	static String getNodeName() {
+		String node = (System.getProperty(RollbackControllerMulticast.class.getSimpleName() + ".node") == null ? ManagementFactory.getRuntimeMXBean().getName() : System.getProperty(RollbackControllerMulticast.class.getSimpleName() + ".node"));
+		return node;
+	}
+
+	/**
+	 * Use -DRollbackControllerMulticast.nodes=3 to wait for exactly that many nodes;
+	 * 0 (default) means unknown, then the sender waits for the nodes that reported a receipt, until no new receipt has come in for a few retransmit intervals
+	 */
+	static int getExpectedNodes() {
+		int nodes = (System.getProperty(RollbackControllerMulticast.class.getSimpleName() + ".nodes") == null ? 0 : Integer.parseInt(System.getProperty(RollbackControllerMulticast.class.getSimpleName() + ".nodes")));
+		return nodes;
+	}
+
+	/**
+	 * How long to wait for acknowledgements before sending the command again, in milliseconds
+	 */
+	static long getRetransmitInterval() {
+		long retransmit = (System.getProperty(RollbackControllerMulticast.class.getSimpleName() + ".retransmit") == null ? 250 : Long.parseLong(System.getProperty(RollbackControllerMulticast.class.getSimpleName() + ".retransmit")));
+		return retransmit;
+	}
+
+	/**
+	 * How long to wait for the nodes to process a command, in milliseconds
+	 */
+	static long getTimeout() {
+		long timeout = (System.getProperty(RollbackControllerMulticast.class.getSimpleName() + ".timeout") == null ? 60000 : Long.parseLong(System.getProperty(RollbackControllerMulticast.class.getSimpleName() + ".timeout")));
+		return timeout;
+	}
+
+	/**
+	 *
+	 */
+	static boolean useMulticast() {
+		return getPort() > 0;
+	}
+
+	// ========================================================================================================================================================
+	// API
+
+	/**
+	 * @throws IllegalStateException if not all nodes confirmed
+	 */
+	static public void rollbackAll() {
+		confirm(ROLLBACKAll_ACTION, rollbackAllAndWait(getTimeout()));
+	}
+
+	/**
+	 * @return which nodes confirmed the rollback
+	 */
+	static public RollbackSummary rollbackAllAndWait(long timeoutMillis) {
+		return broadcastAndWait(ROLLBACKAll_ACTION, timeoutMillis);
+	}
+
+	/**
+	 * @throws IllegalStateException if not all nodes confirmed
+	 */
+	static public void allowTransactions() {
+		confirm(ALLOWTRANSACTIONS_ACTION, broadcastAndWait(ALLOWTRANSACTIONS_ACTION, getTimeout()));
+	}
+
+	/**
+	 * @throws IllegalStateException if not all nodes confirmed
+	 */
+	static public void disableTransactions() {
+		confirm(DISABLETRANSACTIONS_ACTION, broadcastAndWait(DISABLETRANSACTIONS_ACTION, getTimeout()));
+	}
+
+	/**
+	 * Execute the commands in one round-trip, see RollbackControllerMBean.batch
+	 * @throws IllegalStateException if not all nodes confirmed
+	 */
+	static public void batch(String... commands) {
+		String command = RollbackController.batchCommand(commands);
+		confirm(command, broadcastAndWait(command, getTimeout()));
+	}
+
+	/**
+	 *
+	 */
+	static private void confirm(String command, RollbackSummary rollbackSummary) {
+		if (logger.isDebugEnabled()) logger.debug(RollbackControllerMulticast.class.getSimpleName() + ": " + command + " " + rollbackSummary);
+		if (!rollbackSummary.isSuccess() || rollbackSummary.getAcknowledgedCount() == 0) {
+			throw new IllegalStateException(command + " was not confirmed by all nodes: " + rollbackSummary);
+		}
+	}
+
+	// ========================================================================================================================================================
+	// Transport
+
+	/**
+	 * Client: -DRollbackControllerMulticast, server: -DRollbackControllerMulticast.port
+	 */
+	public static class Transport implements RollbackTransport {
+		@Override
+		public String getName() {
+			return "multicast";
+		}
+		@Override
+		public int getPriority() {
+			return 20;
+		}
+		@Override
+		public boolean isClientConfigured() {
+			return System.getProperty(RollbackControllerMulticast.class.getSimpleName()) != null;
+		}
+		@Override
+		public void rollbackAll() {
+			RollbackControllerMulticast.rollbackAll();
+		}
+		@Override
+		public void allowTransactions() {
+			RollbackControllerMulticast.allowTransactions();
+		}
+		@Override
+		public void disableTransactions() {
+			RollbackControllerMulticast.disableTransactions();
+		}
+		@Override
+		public void batch(String... commands) {
+			RollbackControllerMulticast.batch(commands);
+		}
+		@Override
+		public boolean isServerConfigured() {
+			return useMulticast();
+		}
+		@Override
+		public void startListening() {
+			RollbackControllerMulticast.startListening();
+		}
+		@Override
+		public void stopListening() {
+			RollbackControllerMulticast.stop();
+		}
+		@Override
+		public String toString() {
+			return getName();
+		}
+	}
+}
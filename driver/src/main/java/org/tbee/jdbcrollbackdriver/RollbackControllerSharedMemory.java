@@ -0,0 +1,568 @@
+package org.tbee.jdbcrollbackdriver;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends the commands through a memory-mapped file, for a test runner and an application server on the same host.
+ * No socket is involved, a command reaches the other JVM in the time it takes the listener to poll.
+ *
+ * The file holds:
+ * - a header with the sequence number of the last command,
+ * - a table of listeners, each with a completion slot: the sequence number of the last command it finished, and how it went,
+ * - a ring buffer of commands, each with its sequence number.
+ * Writers take a file lock, so multiple test runners can use the same file.
+ * Each listener polls for new sequence numbers, executes the commands, and fills its completion slot, which the writer polls in turn.
+ * A listener that has not updated its heartbeat for a while is considered gone and not waited for; the heartbeat has its own thread, so a long command does not make a listener look gone.
+ *
+ * A plain write to a MappedByteBuffer is only guaranteed to be seen in order by another process on x86, and Java 8 has no VarHandle fences.
+ * So the data behind a sequence number (a command, a completion) is written while holding the file lock, and read after a file lock round-trip (see fence);
+ * the lock is taken and released in the kernel, which orders the memory accesses across processes.
+ */
+public class RollbackControllerSharedMemory {
+	final static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RollbackControllerSharedMemory.class);
+
+	final private static String ROLLBACKAll_ACTION = "rollbackAll";
+	final private static String ALLOWTRANSACTIONS_ACTION = "allowTransactions";
+	final private static String DISABLETRANSACTIONS_ACTION = "disableTransactions";
+
+	// header
+	static final int MAGIC = 0x52424B31; // RBK1
+	static final int MAGIC_OFFSET = 0;
+	static final int SEQUENCE_OFFSET = 8;
+	static final int HEADER_SIZE = 64;
+
+	// listeners
+	static final int LISTENER_COUNT = 16;
+	static final int LISTENER_SIZE = 128;
+	static final int LISTENER_ID_OFFSET = 0;
+	static final int LISTENER_HEARTBEAT_OFFSET = 8;
+	static final int LISTENER_COMPLETED_OFFSET = 16;
+	static final int LISTENER_DURATION_OFFSET = 24;
+	static final int LISTENER_STATUS_OFFSET = 32;
+	static final int LISTENER_NAME_LENGTH_OFFSET = 36;
+	static final int LISTENER_NAME_OFFSET = 40;
+	static final int LISTENERS_OFFSET = HEADER_SIZE;
+
+	// commands
+	static final int SLOT_COUNT = 64;
+	static final int SLOT_SIZE = 256;
+	static final int SLOT_SEQUENCE_OFFSET = 0;
+	static final int SLOT_LENGTH_OFFSET = 8;
+	static final int SLOT_COMMAND_OFFSET = 12;
+	static final int SLOTS_OFFSET = LISTENERS_OFFSET + LISTENER_COUNT * LISTENER_SIZE;
+
+	static final int FILE_SIZE = SLOTS_OFFSET + SLOT_COUNT * SLOT_SIZE;
+
+	static final int STATUS_OK = 0;
+	static final int STATUS_FAILED = 1;
+	static final long HEARTBEAT_TIMEOUT_MILLIS = 5000;
+	static final long HEARTBEAT_INTERVAL_MILLIS = HEARTBEAT_TIMEOUT_MILLIS / 5;
+
+	// ========================================================================================================================================================
+	// Listening
+
+	/**
+	 *
+	 */
+	static void startListening() {
+		if (!useSharedMemory()) {
+			System.out.println(RollbackControllerSharedMemory.class.getSimpleName() + ": not using shared memory");
+			return;
+		}
+
+		// connect to the MBean locally
+		RollbackControllerMBean rollbackController = RollbackController.connectLocally();
+
+		// claim a listener slot
+		try {
+			listenerIndex = claimListener();
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+		System.out.println(RollbackControllerSharedMemory.class.getSimpleName() + ": listening to " + getFile() + " as listener " + listenerIndex);
+
+		forever = true;
+		serverThread = new Thread( () -> {
+			Thread.currentThread().setName(RollbackControllerSharedMemory.class.getSimpleName() + "-server");
+			waitForData(rollbackController);
+		});
+		serverThread.setDaemon(true);
+		serverThread.start();
+
+		int index = listenerIndex;
+		heartbeatThread = new Thread( () -> heartbeat(index) );
+		heartbeatThread.setName(RollbackControllerSharedMemory.class.getSimpleName() + "-heartbeat");
+		heartbeatThread.setDaemon(true);
+		heartbeatThread.start();
+	}
+	static Thread serverThread;
+	static private Thread heartbeatThread;
+	static private int listenerIndex = -1;
+	static volatile boolean forever = true;
+
+	/**
+	 * Stop the listener and free its slot
+	 */
+	public static void stop() {
+		forever = false;
+		if (serverThread != null) {
+			try {
+				serverThread.join(10000);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			serverThread = null;
+		}
+		if (heartbeatThread != null) {
+			LockSupport.unpark(heartbeatThread);
+			try {
+				heartbeatThread.join(10000);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			heartbeatThread = null;
+		}
+		if (listenerIndex >= 0) {
+			try {
+				MappedByteBuffer buffer = getBuffer();
+				buffer.putLong(listenerOffset(listenerIndex) + LISTENER_ID_OFFSET, 0);
+			}
+			catch (IOException e) {
+				e.printStackTrace();
+			}
+			listenerIndex = -1;
+		}
+	}
+
+	/**
+	 * Poll for new commands; only commands written after the listener claimed its slot are executed.
+	 * claimListener marked the commands before that as completed under the file lock; a command written after it, but before this thread started, must still be executed.
+	 */
+	private static void waitForData(RollbackControllerMBean rollbackController) {
+		try {
+			MappedByteBuffer buffer = getBuffer();
+			int listenerOffset = listenerOffset(listenerIndex);
+			long pollNanos = getPollMicros() * 1000;
+			long lastSequence = buffer.getLong(listenerOffset + LISTENER_COMPLETED_OFFSET);
+			while (forever) {
+
+				// anything new?
+				long sequence = buffer.getLong(SEQUENCE_OFFSET);
+				if (sequence <= lastSequence) {
+					LockSupport.parkNanos(pollNanos);
+					continue;
+				}
+				fence();
+
+				// a listener that falls behind more than the ring size has lost commands
+				if (sequence - lastSequence > SLOT_COUNT) {
+					logger.warn(RollbackControllerSharedMemory.class.getSimpleName() + ": missed commands " + (lastSequence + 1) + " to " + (sequence - SLOT_COUNT));
+					lastSequence = sequence - SLOT_COUNT;
+				}
+
+				// execute all new commands in order
+				while (lastSequence < sequence && forever) {
+					lastSequence++;
+					String command = readCommand(buffer, lastSequence);
+					execute(buffer, listenerOffset, rollbackController, lastSequence, command);
+				}
+			}
+		}
+		catch (IOException | RuntimeException e) {
+			logger.error(RollbackControllerSharedMemory.class.getSimpleName() + ": listener failed", e);
+		}
+	}
+
+	/**
+	 * Tell the writers this listener is alive, also while it is executing a command
+	 */
+	private static void heartbeat(int listenerIndex) {
+		try {
+			MappedByteBuffer buffer = getBuffer();
+			int listenerOffset = listenerOffset(listenerIndex);
+			while (forever) {
+				buffer.putLong(listenerOffset + LISTENER_HEARTBEAT_OFFSET, System.currentTimeMillis());
+				LockSupport.parkNanos(HEARTBEAT_INTERVAL_MILLIS * 1000000);
+			}
+		}
+		catch (IOException | RuntimeException e) {
+			logger.error(RollbackControllerSharedMemory.class.getSimpleName() + ": heartbeat failed", e);
+		}
+	}
+
+	/**
+	 *
+	 */
+	private static void execute(MappedByteBuffer buffer, int listenerOffset, RollbackControllerMBean rollbackController, long sequence, String command) throws IOException {
+		long startNanos = System.nanoTime();
+		int status;
+		try {
+			if (logger.isDebugEnabled()) logger.debug(RollbackControllerSharedMemory.class.getSimpleName() + ": executing " + sequence + " " + command);
+			if (command == null) {
+				throw new IllegalStateException("Command " + sequence + " was overwritten before it could be read");
+			}
+			RollbackSummary rollbackSummary = RollbackController.execute(rollbackController, command, getTimeout());
+			status = (rollbackSummary.isSuccess() ? STATUS_OK : STATUS_FAILED);
+		}
+		catch (RuntimeException e) {
+			logger.warn(RollbackControllerSharedMemory.class.getSimpleName() + ": command " + sequence + " failed", e);
+			status = STATUS_FAILED;
+		}
+
+		// the writer only looks at the rest after it sees the completed sequence, and a fence
+		synchronized (RollbackControllerSharedMemory.class) {
+			FileLock fileLock = fileChannel.lock();
+			try {
+				buffer.putLong(listenerOffset + LISTENER_DURATION_OFFSET, (System.nanoTime() - startNanos) / 1000000);
+				buffer.putInt(listenerOffset + LISTENER_STATUS_OFFSET, status);
+				buffer.putLong(listenerOffset + LISTENER_COMPLETED_OFFSET, sequence);
+			}
+			finally {
+				fileLock.release();
+			}
+		}
+	}
+
+	/**
+	 * A file lock round-trip, after which everything written while another process (or thread) held the lock is visible
+	 */
+	private static void fence() throws IOException {
+		synchronized (RollbackControllerSharedMemory.class) {
+			fileChannel.lock().release();
+		}
+	}
+
+	/**
+	 * @return null if the slot already holds a newer command
+	 */
+	private static String readCommand(MappedByteBuffer buffer, long sequence) {
+		int slotOffset = slotOffset(sequence);
+		if (buffer.getLong(slotOffset + SLOT_SEQUENCE_OFFSET) != sequence) {
+			return null;
+		}
+		byte[] bytes = new byte[buffer.getInt(slotOffset + SLOT_LENGTH_OFFSET)];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(slotOffset + SLOT_COMMAND_OFFSET + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Take a free listener slot, or one of a listener that is gone
+	 */
+	private static int claimListener() throws IOException {
+		MappedByteBuffer buffer = getBuffer();
+		synchronized (RollbackControllerSharedMemory.class) {
+			FileLock fileLock = fileChannel.lock();
+			try {
+				long now = System.currentTimeMillis();
+				for (int i = 0; i < LISTENER_COUNT; i++) {
+					int listenerOffset = listenerOffset(i);
+					if (buffer.getLong(listenerOffset + LISTENER_ID_OFFSET) == 0 || now - buffer.getLong(listenerOffset + LISTENER_HEARTBEAT_OFFSET) > HEARTBEAT_TIMEOUT_MILLIS) {
+						byte[] name = getListenerName().getBytes(StandardCharsets.UTF_8);
+						int nameLength = Math.min(name.length, LISTENER_SIZE - LISTENER_NAME_OFFSET);
+						for (int j = 0; j < nameLength; j++) {
+							buffer.put(listenerOffset + LISTENER_NAME_OFFSET + j, name[j]);
+						}
+						buffer.putInt(listenerOffset + LISTENER_NAME_LENGTH_OFFSET, nameLength);
+						buffer.putLong(listenerOffset + LISTENER_COMPLETED_OFFSET, buffer.getLong(SEQUENCE_OFFSET));
+						buffer.putLong(listenerOffset + LISTENER_HEARTBEAT_OFFSET, now);
+						buffer.putLong(listenerOffset + LISTENER_ID_OFFSET, new Random().nextLong() | 1);
+						return i;
+					}
+				}
+			}
+			finally {
+				fileLock.release();
+			}
+		}
+		throw new IOException("All " + LISTENER_COUNT + " listener slots in " + getFile() + " are in use");
+	}
+
+	// ========================================================================================================================================================
+	// Sending
+
+	/**
+	 * Write the command to the ring buffer and wait until all live listeners have completed it
+	 */
+	static RollbackSummary sendAndWait(String command, long timeoutMillis) {
+		byte[] bytes = command.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > SLOT_SIZE - SLOT_COMMAND_OFFSET) {
+			throw new IllegalArgumentException("Command too long: " + command);
+		}
+		long startNanos = System.nanoTime();
+		try {
+			MappedByteBuffer buffer = getBuffer();
+
+			// write
+			long sequence;
+			Map<Integer, String> listeners = new HashMap<>();
+			synchronized (RollbackControllerSharedMemory.class) {
+				FileLock fileLock = fileChannel.lock();
+				try {
+					sequence = buffer.getLong(SEQUENCE_OFFSET) + 1;
+					int slotOffset = slotOffset(sequence);
+					for (int i = 0; i < bytes.length; i++) {
+						buffer.put(slotOffset + SLOT_COMMAND_OFFSET + i, bytes[i]);
+					}
+					buffer.putInt(slotOffset + SLOT_LENGTH_OFFSET, bytes.length);
+					buffer.putLong(slotOffset + SLOT_SEQUENCE_OFFSET, sequence);
+
+					// the listeners that are expected to respond
+					long now = System.currentTimeMillis();
+					for (int i = 0; i < LISTENER_COUNT; i++) {
+						int listenerOffset = listenerOffset(i);
+						if (buffer.getLong(listenerOffset + LISTENER_ID_OFFSET) != 0 && now - buffer.getLong(listenerOffset + LISTENER_HEARTBEAT_OFFSET) <= HEARTBEAT_TIMEOUT_MILLIS) {
+							listeners.put(i, readListenerName(buffer, listenerOffset));
+						}
+					}
+
+					// publish
+					buffer.putLong(SEQUENCE_OFFSET, sequence);
+				}
+				finally {
+					fileLock.release();
+				}
+			}
+			if (logger.isDebugEnabled()) logger.debug(RollbackControllerSharedMemory.class.getSimpleName() + ": sent " + sequence + " " + command + " to " + listeners.values());
+
+			// wait for the completion slots
+			Map<String, Long> durations = new HashMap<>();
+			Map<String, String> failures = new HashMap<>();
+			long pollNanos = getPollMicros() * 1000;
+			long deadlineNanos = startNanos + timeoutMillis * 1000000;
+			while (durations.size() < listeners.size() && System.nanoTime() < deadlineNanos) {
+				for (Map.Entry<Integer, String> listener : listeners.entrySet()) {
+					int listenerOffset = listenerOffset(listener.getKey());
+					if (durations.containsKey(listener.getValue()) || buffer.getLong(listenerOffset + LISTENER_COMPLETED_OFFSET) < sequence) {
+						continue;
+					}
+					fence();
+					durations.put(listener.getValue(), buffer.getLong(listenerOffset + LISTENER_DURATION_OFFSET));
+					if (buffer.getInt(listenerOffset + LISTENER_STATUS_OFFSET) != STATUS_OK) {
+						failures.put(listener.getValue(), command + " failed");
+					}
+				}
+				if (durations.size() < listeners.size()) {
+					LockSupport.parkNanos(pollNanos);
+				}
+			}
+			long durationMillis = (System.nanoTime() - startNanos) / 1000000;
+			return new RollbackSummary(listeners.size(), durations, failures, durations.size() == listeners.size(), durationMillis);
+		}
+		catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	// ========================================================================================================================================================
+	// Support
+
+	/**
+	 * The file is mapped once per JVM, and initialized by whoever opens it first
+	 */
+	static synchronized MappedByteBuffer getBuffer() throws IOException {
+		if (mappedByteBuffer != null) {
+			return mappedByteBuffer;
+		}
+		RandomAccessFile randomAccessFile = new RandomAccessFile(getFile(), "rw");
+		fileChannel = randomAccessFile.getChannel();
+		FileLock fileLock = fileChannel.lock();
+		try {
+			MappedByteBuffer buffer = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+			if (buffer.getInt(MAGIC_OFFSET) != MAGIC) {
+				for (int i = 0; i < FILE_SIZE; i++) {
+					buffer.put(i, (byte)0);
+				}
+				buffer.putInt(MAGIC_OFFSET, MAGIC);
+			}
+			mappedByteBuffer = buffer;
+		}
+		finally {
+			fileLock.release();
+		}
+		return mappedByteBuffer;
+	}
+	static private MappedByteBuffer mappedByteBuffer;
+	static private FileChannel fileChannel;
+
+	/**
+	 *
+	 */
+	static private int listenerOffset(int index) {
+		return LISTENERS_OFFSET + index * LISTENER_SIZE;
+	}
+
+	/**
+	 *
+	 */
+	static private int slotOffset(long sequence) {
+		return SLOTS_OFFSET + (int)(sequence % SLOT_COUNT) * SLOT_SIZE;
+	}
+
+	/**
+	 *
+	 */
+	static private String readListenerName(MappedByteBuffer buffer, int listenerOffset) {
+		byte[] bytes = new byte[buffer.getInt(listenerOffset + LISTENER_NAME_LENGTH_OFFSET)];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(listenerOffset + LISTENER_NAME_OFFSET + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8) + "#" + (listenerOffset - LISTENERS_OFFSET) / LISTENER_SIZE;
+	}
+
+	/**
+	 *
+	 */
+	static String getFile() {
+		String file = System.getProperty(RollbackControllerSharedMemory.class.getSimpleName() + ".file");
+		return file;
+	}
+
+	/**
+	 * How long to sleep between polls, in microseconds
+	 */
+	static long getPollMicros() {
+		long poll = (System.getProperty(RollbackControllerSharedMemory.class.getSimpleName() + ".poll") == null ? 50 : Long.parseLong(System.getProperty(RollbackControllerSharedMemory.class.getSimpleName() + ".poll")));
+		return poll;
+	}
+
+	/**
+	 * How long to wait for the listeners to process a command, in milliseconds
+	 */
+	static long getTimeout() {
+		long timeout = (System.getProperty(RollbackControllerSharedMemory.class.getSimpleName() + ".timeout") == null ? 60000 : Long.parseLong(System.getProperty(RollbackControllerSharedMemory.class.getSimpleName() + ".timeout")));
+		return timeout;
+	}
+
+	/**
+	 *
+	 */
+	static String getListenerName() {
+		return ManagementFactory.getRuntimeMXBean().getName();
+	}
+
+	/**
+	 *
+	 */
+	static boolean useSharedMemory() {
+		return getFile() != null;
+	}
+
+	// ========================================================================================================================================================
+	// API
+
+	/**
+	 * @throws IllegalStateException if not all listeners confirmed
+	 */
+	static public void rollbackAll() {
+		confirm(ROLLBACKAll_ACTION, rollbackAllAndWait(getTimeout()));
+	}
+
+	/**
+	 * @return which listeners confirmed the rollback
+	 */
+	static public RollbackSummary rollbackAllAndWait(long timeoutMillis) {
+		return sendAndWait(ROLLBACKAll_ACTION, timeoutMillis);
+	}
+
+	/**
+	 * @throws IllegalStateException if not all listeners confirmed
+	 */
+	static public void allowTransactions() {
+		confirm(ALLOWTRANSACTIONS_ACTION, sendAndWait(ALLOWTRANSACTIONS_ACTION, getTimeout()));
+	}
+
+	/**
+	 * @throws IllegalStateException if not all listeners confirmed
+	 */
+	static public void disableTransactions() {
+		confirm(DISABLETRANSACTIONS_ACTION, sendAndWait(DISABLETRANSACTIONS_ACTION, getTimeout()));
+	}
+
+	/**
+	 * Execute the commands in one round-trip, see RollbackControllerMBean.batch
+	 * @throws IllegalStateException if not all listeners confirmed
+	 */
+	static public void batch(String... commands) {
+		String command = RollbackController.batchCommand(commands);
+		confirm(command, sendAndWait(command, getTimeout()));
+	}
+
+	/**
+	 *
+	 */
+	static private void confirm(String command, RollbackSummary rollbackSummary) {
+		if (logger.isDebugEnabled()) logger.debug(RollbackControllerSharedMemory.class.getSimpleName() + ": " + command + " " + rollbackSummary);
+		if (!rollbackSummary.isSuccess() || rollbackSummary.getDriverCount() == 0) {
+			throw new IllegalStateException(command + " was not confirmed by all listeners: " + rollbackSummary);
+		}
+	}
+
+	// ========================================================================================================================================================
+	// Transport
+
+	/**
+	 * Client: -DRollbackControllerSharedMemory, server: -DRollbackControllerSharedMemory.file
+	 */
+	public static class Transport implements RollbackTransport {
+		@Override
+		public String getName() {
+			return "sharedMemory";
+		}
+		@Override
+		public int getPriority() {
+			return 10;
+		}
+		@Override
+		public boolean isClientConfigured() {
+			return System.getProperty(RollbackControllerSharedMemory.class.getSimpleName()) != null;
+		}
+		@Override
+		public void rollbackAll() {
+			RollbackControllerSharedMemory.rollbackAll();
+		}
+		@Override
+		public void allowTransactions() {
+			RollbackControllerSharedMemory.allowTransactions();
+		}
+		@Override
+		public void disableTransactions() {
+			RollbackControllerSharedMemory.disableTransactions();
+		}
+		@Override
+		public void batch(String... commands) {
+			RollbackControllerSharedMemory.batch(commands);
+		}
+		@Override
+		public boolean isServerConfigured() {
+			return useSharedMemory();
+		}
+		@Override
+		public void startListening() {
+			RollbackControllerSharedMemory.startListening();
+		}
+		@Override
+		public void stopListening() {
+			RollbackControllerSharedMemory.stop();
+		}
+		@Override
+		public String toString() {
+			return getName();
+		}
+	}
+}
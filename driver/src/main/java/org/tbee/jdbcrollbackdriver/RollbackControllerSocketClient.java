@@ -0,0 +1,202 @@
+package org.tbee.jdbcrollbackdriver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A long lived connection to the RollbackControllerSocket server, using the framed protocol:
+ * - after connecting the client announces the framed protocol by writing FRAMED_PROTOCOL as a UTF string (so the server can tell it apart from the one-shot protocol),
+ * - a request is [int length][long requestId][UTF-8 command],
+ * - a response is [int length][long requestId][byte status][UTF-8 message], sent by the server after all drivers have processed the command.
+ * Commands can be pipelined: send does not wait for the response, the responses are matched to the requests by their id.
+ */
+public class RollbackControllerSocketClient implements Closeable {
+	final static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RollbackControllerSocketClient.class);
+
+	static final String FRAMED_PROTOCOL = "framedProtocol";
+	static final byte STATUS_OK = 0;
+	static final byte STATUS_FAILED = 1;
+	static final int MAX_FRAME_LENGTH = 1024 * 1024;
+
+	/**
+	 * Connect over TCP
+	 */
+	static public RollbackControllerSocketClient connect(String host, int port) throws IOException {
+		Socket socket = new Socket(host, port);
+		socket.setTcpNoDelay(true);
+		return new RollbackControllerSocketClient(socket.getInputStream(), socket.getOutputStream(), socket, host + ":" + port);
+	}
+
+	// ================================================================================================
+	// Constructor
+
+	public RollbackControllerSocketClient(InputStream inputStream, OutputStream outputStream, Closeable closeable, String description) throws IOException {
+		this.in = new DataInputStream(new BufferedInputStream(inputStream));
+		this.out = new DataOutputStream(new BufferedOutputStream(outputStream));
+		this.closeable = closeable;
+		this.description = description;
+
+		// announce the protocol
+		out.writeUTF(FRAMED_PROTOCOL);
+		out.flush();
+
+		// responses are read by a separate thread
+		readerThread = new Thread( () -> readResponses() );
+		readerThread.setName(getClass().getSimpleName() + "-" + description);
+		readerThread.setDaemon(true);
+		readerThread.start();
+	}
+	final private DataInputStream in;
+	final private DataOutputStream out;
+	final private Closeable closeable;
+	final private String description;
+	final private Thread readerThread;
+	final private AtomicLong requestIdSequence = new AtomicLong(1);
+	final private Map<Long, CompletableFuture<String>> pendingRequests = new ConcurrentHashMap<>();
+	volatile private boolean closed = false;
+
+	// ================================================================================================
+	// API
+
+	/**
+	 * Send a command without waiting for the response
+	 * @return a future that is completed with the server's message once all drivers have processed the command
+	 */
+	public CompletableFuture<String> send(String command) throws IOException {
+		if (closed) {
+			throw new IOException("Connection to " + description + " is closed");
+		}
+		long requestId = requestIdSequence.getAndIncrement();
+		CompletableFuture<String> future = new CompletableFuture<>();
+		pendingRequests.put(requestId, future);
+		try {
+			if (logger.isDebugEnabled()) logger.debug("Sending " + requestId + " " + command + " to " + description);
+			synchronized (out) {
+				writeFrame(out, requestId, null, command);
+			}
+		}
+		catch (IOException e) {
+			pendingRequests.remove(requestId);
+			close();
+			throw e;
+		}
+		return future;
+	}
+
+	/**
+	 * Send a command and wait for the response
+	 */
+	public String sendAndWait(String command, long timeoutMillis) throws IOException {
+		try {
+			return send(command).get(timeoutMillis, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}
+		catch (ExecutionException e) {
+			throw (e.getCause() instanceof IOException ? (IOException)e.getCause() : new IOException(e.getCause()));
+		}
+		catch (TimeoutException e) {
+			throw new IOException("No response for " + command + " from " + description + " within " + timeoutMillis + "ms", e);
+		}
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			closeable.close();
+		}
+		catch (IOException e) {
+			// ignore
+		}
+		IOException exception = new IOException("Connection to " + description + " closed");
+		for (CompletableFuture<String> future : pendingRequests.values()) {
+			future.completeExceptionally(exception);
+		}
+		pendingRequests.clear();
+	}
+
+	// ================================================================================================
+	// Support
+
+	/**
+	 *
+	 */
+	private void readResponses() {
+		try {
+			while (!closed) {
+				int length = in.readInt();
+				if (length < 9 || length > MAX_FRAME_LENGTH) {
+					throw new IOException("Invalid frame length " + length);
+				}
+				long requestId = in.readLong();
+				byte status = in.readByte();
+				byte[] message = new byte[length - 9];
+				in.readFully(message);
+				String messageString = new String(message, StandardCharsets.UTF_8);
+				if (logger.isDebugEnabled()) logger.debug("Response " + requestId + " from " + description + ": " + messageString);
+
+				CompletableFuture<String> future = pendingRequests.remove(requestId);
+				if (future == null) {
+					logger.warn("Response for unknown request " + requestId + " from " + description);
+				}
+				else if (status == STATUS_OK) {
+					future.complete(messageString);
+				}
+				else {
+					future.completeExceptionally(new IOException(messageString));
+				}
+			}
+		}
+		catch (EOFException e) {
+			if (logger.isDebugEnabled()) logger.debug("Connection to " + description + " closed by the server");
+		}
+		catch (IOException e) {
+			if (!closed) {
+				logger.warn("Connection to " + description + " failed", e);
+			}
+		}
+		finally {
+			close();
+		}
+	}
+
+	/**
+	 * A request has no status, a response does
+	 */
+	static void writeFrame(DataOutputStream out, long requestId, Byte status, String message) throws IOException {
+		byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(8 + (status == null ? 0 : 1) + bytes.length);
+		out.writeLong(requestId);
+		if (status != null) {
+			out.writeByte(status);
+		}
+		out.write(bytes);
+		out.flush();
+	}
+}
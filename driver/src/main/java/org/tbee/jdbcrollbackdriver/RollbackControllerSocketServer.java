@@ -0,0 +1,410 @@
+package org.tbee.jdbcrollbackdriver;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The server side of RollbackControllerSocket.
+ * One selector thread does the IO for all clients, the commands are executed on worker threads, so many test runners can be served at the same time.
+ * Commands from one client are executed in the order they were received, commands from different clients run concurrently.
+ * Both the one-shot protocol (a single UTF string) and the framed protocol (see RollbackControllerSocketClient) are accepted.
+ * A misbehaving client only gets its own connection closed, the server keeps running until stop is called.
+ */
+public class RollbackControllerSocketServer {
+	final static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RollbackControllerSocketServer.class);
+
+	private static final String ROLLBACKAll_ACTION = "rollbackAll";
+	private static final String ALLOWTRANSACTIONS_ACTION = "allowTransactions";
+	private static final String DISABLETRANSACTIONS_ACTION = "disableTransactions";
+
+	// ================================================================================================
+	// Constructor
+
+	/**
+	 * @param serverChannel a bound channel, the server takes ownership and closes it on stop
+	 */
+	public RollbackControllerSocketServer(ServerSocketChannel serverChannel, RollbackControllerMBean rollbackController, String name) throws IOException {
+		this.serverChannel = serverChannel;
+		this.rollbackController = rollbackController;
+		this.name = name;
+		this.selector = Selector.open();
+		serverChannel.configureBlocking(false);
+		serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+		AtomicInteger threadCount = new AtomicInteger();
+		this.executor = Executors.newCachedThreadPool( runnable -> {
+			Thread thread = new Thread(runnable);
+			thread.setName(name + "-worker-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.thread = new Thread( () -> run() );
+		this.thread.setName(name);
+	}
+	final private ServerSocketChannel serverChannel;
+	final private RollbackControllerMBean rollbackController;
+	final private String name;
+	final private Selector selector;
+	final private ExecutorService executor;
+	final private Thread thread;
+	final private Queue<Client> writeRequests = new ConcurrentLinkedQueue<>();
+	volatile private boolean running = true;
+
+	// ================================================================================================
+	// API
+
+	/**
+	 *
+	 */
+	public void start() {
+		thread.start();
+	}
+
+	/**
+	 * Stop the server and close all client connections
+	 */
+	public void stop() {
+		running = false;
+		selector.wakeup();
+		try {
+			thread.join(10000);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		executor.shutdownNow();
+	}
+
+	/**
+	 *
+	 */
+	public boolean isRunning() {
+		return running && thread.isAlive();
+	}
+
+	// ================================================================================================
+	// Selector loop
+
+	/**
+	 *
+	 */
+	private void run() {
+		try {
+			while (running) {
+				selector.select();
+
+				// the workers cannot change the interest set themselves
+				Client client;
+				while ((client = writeRequests.poll()) != null) {
+					SelectionKey key = client.channel.keyFor(selector);
+					if (key != null && key.isValid()) {
+						key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+					}
+				}
+
+				// handle the events
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					try {
+						if (!key.isValid()) {
+							continue;
+						}
+						if (key.isAcceptable()) {
+							accept();
+							continue;
+						}
+						if (key.isReadable()) {
+							read((Client)key.attachment());
+						}
+						if (key.isValid() && key.isWritable()) {
+							write(key, (Client)key.attachment());
+						}
+					}
+					catch (IOException | RuntimeException e) {
+						// only this client is affected
+						if (key.attachment() == null) {
+							logger.warn(name + " failed to accept a client", e);
+						}
+						else {
+							logger.warn(name + " closing " + ((Client)key.attachment()).description, e);
+							close((Client)key.attachment());
+						}
+					}
+				}
+			}
+		}
+		catch (IOException | RuntimeException e) {
+			logger.error(name + " failed", e);
+		}
+		finally {
+			running = false;
+			closeAll();
+		}
+	}
+
+	/**
+	 *
+	 */
+	private void accept() throws IOException {
+		SocketChannel channel = serverChannel.accept();
+		if (channel == null) {
+			return;
+		}
+		channel.configureBlocking(false);
+		Client client = new Client(channel, String.valueOf(channel.getRemoteAddress()));
+		channel.register(selector, SelectionKey.OP_READ, client);
+		if (logger.isDebugEnabled()) logger.debug(name + " connection coming in from " + client.description);
+	}
+
+	/**
+	 *
+	 */
+	private void read(Client client) throws IOException {
+		int count = client.channel.read(client.readBuffer);
+		client.readBuffer.flip();
+		try {
+			while (client.channel.isOpen() && readMessage(client)) {
+				// next message
+			}
+		}
+		finally {
+			client.readBuffer.compact();
+		}
+
+		// the one-shot clients close after sending their command
+		if (count < 0) {
+			if (logger.isDebugEnabled()) logger.debug(name + " " + client.description + " disconnected");
+			close(client);
+		}
+	}
+
+	/**
+	 * @return true if a complete message was read
+	 */
+	private boolean readMessage(Client client) throws IOException {
+		ByteBuffer buffer = client.readBuffer;
+
+		// the first message always is a UTF string: either a one-shot command or the framed protocol announcement
+		if (!client.framed) {
+			if (buffer.remaining() < 2) {
+				return false;
+			}
+			int length = 2 + (buffer.getShort(buffer.position()) & 0xFFFF);
+			if (buffer.remaining() < length) {
+				ensureCapacity(client, length);
+				return false;
+			}
+			byte[] bytes = new byte[length];
+			buffer.get(bytes);
+			String type = new DataInputStream(new ByteArrayInputStream(bytes)).readUTF();
+			if (logger.isDebugEnabled()) logger.debug(name + " connection coming in from " + client.description + ", processing command: " + type);
+
+			// the client wants a long lived connection
+			if (RollbackControllerSocketClient.FRAMED_PROTOCOL.equals(type)) {
+				client.framed = true;
+				return true;
+			}
+
+			// one-shot: there is nothing more to read
+			submit(client, () -> executeOneShot(type));
+			close(client);
+			return false;
+		}
+
+		// framed: [int length][long requestId][UTF-8 command]
+		if (buffer.remaining() < 4) {
+			return false;
+		}
+		int length = buffer.getInt(buffer.position());
+		if (length < 8 || length > RollbackControllerSocketClient.MAX_FRAME_LENGTH) {
+			throw new IOException("Invalid frame length " + length + " from " + client.description);
+		}
+		if (buffer.remaining() < 4 + length) {
+			ensureCapacity(client, 4 + length);
+			return false;
+		}
+		buffer.getInt();
+		long requestId = buffer.getLong();
+		byte[] command = new byte[length - 8];
+		buffer.get(command);
+		String commandString = new String(command, StandardCharsets.UTF_8);
+		if (logger.isDebugEnabled()) logger.debug(name + " " + client.description + " request " + requestId + ": " + commandString);
+		submit(client, () -> executeFramed(client, requestId, commandString));
+		return true;
+	}
+
+	/**
+	 * The read buffer is in read mode and stays that way
+	 */
+	private void ensureCapacity(Client client, int length) {
+		if (client.readBuffer.capacity() >= length) {
+			return;
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		buffer.put(client.readBuffer);
+		buffer.flip();
+		client.readBuffer = buffer;
+	}
+
+	/**
+	 *
+	 */
+	private void write(SelectionKey key, Client client) throws IOException {
+		ByteBuffer buffer;
+		while ((buffer = client.writeQueue.peek()) != null) {
+			client.channel.write(buffer);
+			if (buffer.hasRemaining()) {
+				// the socket's buffer is full, continue when it is writable again
+				return;
+			}
+			client.writeQueue.poll();
+		}
+		key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+	}
+
+	/**
+	 *
+	 */
+	private void close(Client client) {
+		SelectionKey key = client.channel.keyFor(selector);
+		if (key != null) {
+			key.cancel();
+		}
+		try {
+			client.channel.close();
+		}
+		catch (IOException e) {
+			// ignore
+		}
+	}
+
+	/**
+	 *
+	 */
+	private void closeAll() {
+		for (SelectionKey key : selector.keys()) {
+			try {
+				key.channel().close();
+			}
+			catch (IOException e) {
+				// ignore
+			}
+		}
+		try {
+			selector.close();
+		}
+		catch (IOException e) {
+			// ignore
+		}
+		try {
+			serverChannel.close();
+		}
+		catch (IOException e) {
+			// ignore
+		}
+		System.out.println(name + " stopped");
+	}
+
+	// ================================================================================================
+	// Commands
+
+	/**
+	 * Commands of one client are chained, so they are executed in order
+	 */
+	private void submit(Client client, Runnable command) {
+		client.tail = client.tail.thenRunAsync( () -> {
+			try {
+				command.run();
+			}
+			catch (RuntimeException e) {
+				logger.warn(name + " command from " + client.description + " failed", e);
+			}
+		}, executor);
+	}
+
+	/**
+	 *
+	 */
+	private void executeOneShot(String type) {
+		if (ROLLBACKAll_ACTION.equals(type)) {
+			rollbackController.rollbackAll();
+		}
+		else if (ALLOWTRANSACTIONS_ACTION.equals(type)) {
+			rollbackController.allowTransactions();
+		}
+		else if (DISABLETRANSACTIONS_ACTION.equals(type)) {
+			rollbackController.disableTransactions();
+		}
+		else if (type.startsWith(RollbackController.BATCH_PREFIX)) {
+			RollbackController.execute(rollbackController, type, RollbackControllerSocket.getTimeout());
+		}
+	}
+
+	/**
+	 * Each command is only confirmed after all drivers have processed it
+	 */
+	private void executeFramed(Client client, long requestId, String command) {
+		byte status;
+		String message;
+		try {
+			RollbackSummary rollbackSummary = RollbackController.execute(rollbackController, command, RollbackControllerSocket.getTimeout());
+			status = (rollbackSummary.isSuccess() ? RollbackControllerSocketClient.STATUS_OK : RollbackControllerSocketClient.STATUS_FAILED);
+			message = rollbackSummary.toString();
+		}
+		catch (RuntimeException e) {
+			status = RollbackControllerSocketClient.STATUS_FAILED;
+			message = e.toString();
+		}
+
+		// hand the response to the selector thread
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			RollbackControllerSocketClient.writeFrame(new DataOutputStream(bytes), requestId, status, message);
+			client.writeQueue.add(ByteBuffer.wrap(bytes.toByteArray()));
+		}
+		catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		writeRequests.add(client);
+		selector.wakeup();
+	}
+
+	// ================================================================================================
+	// Client
+
+	/**
+	 * The state of one connection, the fields without a comment are only used by the selector thread
+	 */
+	static class Client {
+		Client(SocketChannel channel, String description) {
+			this.channel = channel;
+			this.description = description;
+		}
+		final SocketChannel channel;
+		final String description;
+		ByteBuffer readBuffer = ByteBuffer.allocate(1024);
+		boolean framed = false;
+		CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+
+		/** filled by the workers, emptied by the selector thread */
+		final Queue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<>();
+	}
+}
@@ -0,0 +1,223 @@
+package org.tbee.jdbcrollbackdriver;
+
+import java.io.IOException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Like RollbackControllerSocket, but over a unix domain socket: there is no loopback TCP stack involved, and a path is used instead of a port, so many JVMs on one host do not compete for ports.
+ * The server and the protocols (one-shot and framed) are the same as for RollbackControllerSocket, the client always uses the framed protocol over a long lived connection.
+ *
+ * Unix domain socket channels require Java 16, that code is in RollbackControllerUnixSocketChannels which only exists in META-INF/versions/16 of the multi-release jar.
+ * On older JVMs this transport reports that it is not available.
+ */
+public class RollbackControllerUnixSocket {
+	final static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RollbackControllerUnixSocket.class);
+
+	private static final String ROLLBACKAll_ACTION = "rollbackAll";
+	private static final String ALLOWTRANSACTIONS_ACTION = "allowTransactions";
+	private static final String DISABLETRANSACTIONS_ACTION = "disableTransactions";
+
+	/**
+	 * The Java 16 part
+	 */
+	interface Channels {
+		ServerSocketChannel openServer(String path) throws IOException;
+		RollbackControllerSocketClient connect(String path) throws IOException;
+	}
+
+	/**
+	 * @return null if the JVM does not support unix domain socket channels
+	 */
+	static Channels getChannels() {
+		try {
+			return (Channels)Class.forName(RollbackControllerUnixSocket.class.getName() + "Channels").newInstance();
+		}
+		catch (ClassNotFoundException | LinkageError e) {
+			return null;
+		}
+		catch (InstantiationException | IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 *
+	 */
+	static void startListening() {
+		// are we using unix sockets or not?
+		if (!useUnixSocket()) {
+			System.out.println(RollbackControllerUnixSocket.class.getSimpleName() + ": not using unix socket");
+			return;
+		}
+		Channels channels = getChannels();
+		if (channels == null) {
+			System.out.println(RollbackControllerUnixSocket.class.getSimpleName() + ": unix sockets require Java 16 or higher");
+			return;
+		}
+
+		// start listening for commands coming in
+		try {
+			server = new RollbackControllerSocketServer(channels.openServer(getPath()), RollbackController.connectLocally(), RollbackControllerUnixSocket.class.getSimpleName() + "-server");
+			server.start();
+			System.out.println(RollbackControllerUnixSocket.class.getSimpleName() + "-server waiting for clients on " + getPath() + "...");
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	static RollbackControllerSocketServer server;
+
+	/**
+	 * Stop the listener and remove the socket file
+	 */
+	public static void stop() {
+		if (server == null) {
+			return;
+		}
+		server.stop();
+		server = null;
+		try {
+			Files.deleteIfExists(Paths.get(getPath()));
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Send and wait until all drivers have processed the command
+	 */
+	private static void send(String s) {
+		try {
+			String response = getClient().sendAndWait(s, getTimeout());
+			if (logger.isDebugEnabled()) logger.debug("Response " + response);
+		}
+		catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * The long lived connection, reconnects if the previous one was closed
+	 */
+	static synchronized RollbackControllerSocketClient getClient() throws IOException {
+		if (client == null || client.isClosed()) {
+			Channels channels = getChannels();
+			if (channels == null) {
+				throw new IOException("Unix sockets require Java 16 or higher");
+			}
+			client = channels.connect(getPath());
+		}
+		return client;
+	}
+	static private RollbackControllerSocketClient client;
+
+	/**
+	 * Use -DRollbackControllerUnixSocket.path=/tmp/rollback.sock to listen on a unix domain socket
+	 */
+	static String getPath() {
+		String path = System.getProperty(RollbackControllerUnixSocket.class.getSimpleName() + ".path");
+		return path;
+	}
+
+	/**
+	 * How long to wait for the drivers to process a command, in milliseconds
+	 */
+	static long getTimeout() {
+		long timeout = (System.getProperty(RollbackControllerUnixSocket.class.getSimpleName() + ".timeout") == null ? 60000 : Long.parseLong(System.getProperty(RollbackControllerUnixSocket.class.getSimpleName() + ".timeout")));
+		return timeout;
+	}
+
+	/**
+	 *
+	 */
+	static boolean useUnixSocket() {
+		return getPath() != null;
+	}
+
+	// ========================================================================================================================================================
+	// API
+
+	/**
+	 *
+	 */
+	static public void rollbackAll() {
+        send(ROLLBACKAll_ACTION);
+	}
+
+	/**
+	 *
+	 */
+	static public void allowTransactions() {
+        send(ALLOWTRANSACTIONS_ACTION);
+	}
+
+	/**
+	 *
+	 */
+	static public void disableTransactions() {
+        send(DISABLETRANSACTIONS_ACTION);
+	}
+
+	/** 
+	 * Execute the commands in one round-trip, see RollbackControllerMBean.batch
+	 */
+	static public void batch(String... commands) {
+        send(RollbackController.batchCommand(commands));
+	}
+
+	// ========================================================================================================================================================
+	// Transport
+
+	/**
+	 * Client: -DRollbackControllerUnixSocket, server: -DRollbackControllerUnixSocket.path
+	 */
+	public static class Transport implements RollbackTransport {
+		@Override
+		public String getName() {
+			return "unixSocket";
+		}
+		@Override
+		public int getPriority() {
+			return 30;
+		}
+		@Override
+		public boolean isClientConfigured() {
+			return System.getProperty(RollbackControllerUnixSocket.class.getSimpleName()) != null;
+		}
+		@Override
+		public void rollbackAll() {
+			RollbackControllerUnixSocket.rollbackAll();
+		}
+		@Override
+		public void allowTransactions() {
+			RollbackControllerUnixSocket.allowTransactions();
+		}
+		@Override
+		public void disableTransactions() {
+			RollbackControllerUnixSocket.disableTransactions();
+		}
+		@Override
+		public void batch(String... commands) {
+			RollbackControllerUnixSocket.batch(commands);
+		}
+		@Override
+		public boolean isServerConfigured() {
+			return useUnixSocket();
+		}
+		@Override
+		public void startListening() {
+			RollbackControllerUnixSocket.startListening();
+		}
+		@Override
+		public void stopListening() {
+			RollbackControllerUnixSocket.stop();
+		}
+		@Override
+		public String toString() {
+			return getName();
+		}
+	}
+}
@@ -0,0 +1,585 @@
+package org.tbee.jdbcrollbackdriver;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Savepoint;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One database managed by the RollbackDriver: the actual connection that is held open, its wrapper, and its transaction state.
+ * The RollbackDriver keeps one instance per URL and credentials, so a JVM can hold multiple rolled back databases (e.g. a main and a reporting database).
+ */
+public class RollbackDatabase {
+	final static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RollbackDatabase.class);
+
+	/**
+	 * The key under which a database is registered: the URL plus the credentials
+	 */
+	static String key(RollbackUrl rollbackUrl, Properties info) {
+		String url = normalize(rollbackUrl.getActualUrl());
+		String user = (info == null ? null : info.getProperty("user"));
+		String password = (info == null ? null : info.getProperty("password"));
+		if (user == null && password == null) {
+			return url;
+		}
+		return url + "\u0000" + user + "\u0000" + hash(password);
+	}
+
+	/**
+	 * Spellings of a URL that the actual drivers treat alike must not open a second connection to the same database:
+	 * surrounding whitespace and trailing ; or / are dropped (the jdbc: scheme is already in lower case, RollbackUrl rebuilds it).
+	 * The rest is kept as is, because whether it is case sensitive depends on the actual driver.
+	 */
+	static String normalize(String url) {
+		String normalized = url.trim();
+		while (normalized.endsWith(";") || normalized.endsWith("/")) {
+			normalized = normalized.substring(0, normalized.length() - 1);
+		}
+		return normalized;
+	}
+
+	/**
+	 * The key is public through getKey, so it holds a digest of the password instead of the password itself
+	 */
+	static private String hash(String password) {
+		if (password == null) {
+			return null;
+		}
+		try {
+			byte[] digest = java.security.MessageDigest.getInstance("SHA-256").digest(password.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+			StringBuilder hex = new StringBuilder();
+			for (byte b : digest) {
+				hex.append(String.format("%02x", b));
+			}
+			return hex.toString();
+		}
+		catch (java.security.NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // every Java platform is required to support SHA-256
+		}
+	}
+
+	// ================================================================================================
+	// Constructor
+
+	RollbackDatabase(String key, RollbackUrl rollbackUrl, Connection actualConnection, boolean transactionsEnabled) throws SQLException {
+		this(key, rollbackUrl, actualConnection, transactionsEnabled, null);
+	}
+
+	/**
+	 * @param connectionFactory opens additional physical connections for the standby mode, may be null
+	 */
+	RollbackDatabase(String key, RollbackUrl rollbackUrl, Connection actualConnection, boolean transactionsEnabled, ConnectionFactory connectionFactory) throws SQLException {
+		this.key = key;
+		this.rollbackUrl = rollbackUrl;
+		this.label = rollbackUrl.getLabel();
+		this.actualConnection = actualConnection;
+		this.transactionsEnabled = transactionsEnabled;
+		this.connectionFactory = connectionFactory;
+		this.gate = new RollbackGate(label);
+		this.tracker = new RollbackTracker(label);
+		this.multiplexer = new RollbackMultiplexer(label);
+		this.dialect = RollbackDialects.get(rollbackUrl);
+		this.resetSession = useResetSession(gate.isEnabled() || multiplexer.isEnabled() || (connectionFactory != null && useStandby()));
+		this.wrappedConnection = RollbackConnection.wrap(this, actualConnection, label);
+		if (connectionFactory != null && useStandby()) {
+			standbyConnection = openStandbyConnection();
+		}
+	}
+	final private String key;
+	final private RollbackUrl rollbackUrl;
+	final private String label;
+	volatile private Connection actualConnection;
+	final private Connection wrappedConnection;
+	final private ConnectionFactory connectionFactory;
+	final private RollbackGate gate;
+	final private RollbackTracker tracker;
+	final private RollbackMultiplexer multiplexer;
+	final private RollbackDialect dialect;
+	final private boolean resetSession;
+
+	/**
+	 * Opens a physical connection to the same database
+	 */
+	interface ConnectionFactory {
+		Connection connect() throws SQLException;
+	}
+
+	/**
+	 * The key in the RollbackDriver's registry
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * The label including a trailing ": " (see RollbackUrl)
+	 */
+	public String getLabel() {
+		return label;
+	}
+
+	/**
+	 * The label without decoration, or null (see RollbackUrl)
+	 */
+	public String getLabelName() {
+		return rollbackUrl.getLabelName();
+	}
+
+	/**
+	 * The URL to pass to the actual driver
+	 */
+	public String getActualUrl() {
+		return rollbackUrl.getActualUrl();
+	}
+
+	/**
+	 * The connection as created by the actual driver; in standby mode this changes on every rollback
+	 */
+	public Connection getActualConnection() {
+		return actualConnection;
+	}
+
+	/**
+	 * The gate the JDBC calls pass, a rollback first drains it
+	 */
+	public RollbackGate getGate() {
+		return gate;
+	}
+
+	/**
+	 * Lets one call at a time through to the actual connection
+	 */
+	public RollbackMultiplexer getMultiplexer() {
+		return multiplexer;
+	}
+
+	/**
+	 * The statements, result sets and LOBs opened through the wrappers, they are closed on a rollback
+	 */
+	public RollbackTracker getTracker() {
+		return tracker;
+	}
+
+	/**
+	 * What is specific about the actual database, see RollbackDialects
+	 */
+	public RollbackDialect getDialect() {
+		return dialect;
+	}
+
+	/**
+	 * The connection as it is handed out by the RollbackDriver
+	 */
+	public Connection getWrappedConnection() {
+		return wrappedConnection;
+	}
+
+	// ================================================================================================
+	// Actions
+
+	/**
+	 * Rollback the actual connection.
+	 * In standby mode (see useStandby) the wrapped connection is switched to the standby connection right away, 
+	 * and the old connection is rolled back in the background and then becomes the next standby connection.
+	 * If there is no standby connection ready (its background rollback is still running), the rollback is done inline.
+	 */
+	public void rollback() throws SQLException {
+		if (logger.isDebugEnabled()) logger.debug(label + "rollback " + actualConnection);
+		long startNanos = System.nanoTime();
+		boolean closed = gate.close();
+		boolean entered = enterMultiplexer(startNanos);
+		try {
+			if (swapToStandby()) {
+				return;
+			}
+			synchronized (this) {
+				actualConnection.setAutoCommit(false);
+			}
+			System.out.println(label + "rolling back " + getActualUrl());
+			actualConnection.rollback();
+			forgetScopes();
+			resetSession();
+		}
+		finally {
+			if (entered) {
+				multiplexer.exit();
+			}
+			if (closed) {
+				gate.open();
+			}
+		}
+	}
+
+	/**
+	 * A call that did not drain through the gate still holds the multiplexer; with the gate enabled the rollback waits for it no longer than the gate's timeout, counted from the start of the drain
+	 * @return true if the multiplexer was entered and must be exited
+	 */
+	private boolean enterMultiplexer(long startNanos) {
+		if (!gate.isEnabled()) {
+			multiplexer.enter();
+			return true;
+		}
+		long remainingMillis = gate.getTimeoutMillis() - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+		return multiplexer.tryEnter(Math.max(0, remainingMillis));
+	}
+
+	/**
+	 * @return false if there was no standby connection to swap to
+	 */
+	private boolean swapToStandby() {
+		Connection oldConnection;
+		List<Object> oldChildren;
+		synchronized (this) {
+			if (standbyConnection == null) {
+				return false;
+			}
+			oldConnection = actualConnection;
+			oldChildren = tracker.untrackAll();
+			actualConnection = standbyConnection;
+			standbyConnection = null;
+			scopes.clear();
+		}
+		System.out.println(label + "switched to the standby connection, rolling back " + getActualUrl() + " in the background");
+		standbyExecutor.execute( () -> recycle(oldConnection, oldChildren) );
+		return true;
+	}
+
+	/**
+	 * Rollback the old connection and make it the standby connection; a connection that cannot be rolled back is replaced by a new one
+	 */
+	private void recycle(Connection oldConnection, List<Object> oldChildren) {
+		long startNanos = System.nanoTime();
+		Connection connection = oldConnection;
+		try {
+			// the connection is no longer handed out, but statements created before the swap still use it; with those closed no other thread can use it during the recycle
+			tracker.close(oldChildren);
+			connection.rollback();
+			connection.setAutoCommit(false);
+			if (resetSession) {
+				dialect.resetSession(connection);
+				dialect.afterTransactionEnd(connection, -1);
+			}
+		}
+		catch (SQLException e) {
+			logger.warn(label + "background rollback failed, opening a new standby connection", e);
+			close(connection);
+			try {
+				connection = openStandbyConnection();
+			}
+			catch (SQLException e2) {
+				logger.error(label + "could not open a standby connection, rolling back inline from now on", e2);
+				return;
+			}
+		}
+		synchronized (this) {
+			standbyConnection = connection;
+		}
+		backgroundRollbackCount.incrementAndGet();
+		if (logger.isInfoEnabled()) logger.info(label + "background rollback took " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) + "ms");
+	}
+	private Connection standbyConnection;
+	static final private ExecutorService standbyExecutor = Executors.newCachedThreadPool( runnable -> {
+		Thread thread = new Thread(runnable, RollbackDatabase.class.getSimpleName() + "-standby");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 *
+	 */
+	private Connection openStandbyConnection() throws SQLException {
+		Connection connection = connectionFactory.connect();
+		connection.setAutoCommit(false);
+		return connection;
+	}
+
+	/**
+	 *
+	 */
+	private void close(Connection connection) {
+		try {
+			connection.close();
+		}
+		catch (SQLException e) {
+			// ignore, it is discarded anyhow
+		}
+	}
+
+	/**
+	 * Close the physical connections, for a database that is discarded before it was registered
+	 */
+	synchronized void close() {
+		close(actualConnection);
+		if (standbyConnection != null) {
+			close(standbyConnection);
+			standbyConnection = null;
+		}
+	}
+
+	/**
+	 * True if a standby connection is ready for the next rollback
+	 */
+	synchronized public boolean isStandbyReady() {
+		return standbyConnection != null;
+	}
+
+	/**
+	 * The number of rollbacks that were done in the background
+	 */
+	public long getBackgroundRollbackCount() {
+		return backgroundRollbackCount.get();
+	}
+	final private AtomicLong backgroundRollbackCount = new AtomicLong();
+
+	/**
+	 * Use -DRollbackDatabase.standby=true to hold a second physical connection per database, so a rollback does not block the application (see rollback).
+	 * The connections do not share uncommitted data: the new connection only sees what the old one did not change, and it waits for the old one's locks until the background rollback releases them.
+	 * Session settings made on a connection (isolation level, catalog, ...) do not carry over to the other one, and statements created before the swap stay on the old connection.
+	 */
+	static boolean useStandby() {
+		return Boolean.parseBoolean(System.getProperty(RollbackDatabase.class.getSimpleName() + ".standby"));
+	}
+
+	// ================================================================================================
+	// Session
+
+	/**
+	 * Clean up what lives in the session instead of in the transaction, so a connection that is held for a whole test run does not drift:
+	 * close the statements, result sets and LOBs that are still open (see RollbackTracker), let the dialect drop the temporary tables and session variables, and restore the isolation level.
+	 * Another thread may be using those statements, and the dialect resets the session in auto commit mode, so a statement of another thread in that window would be committed for good;
+	 * the reset therefore only happens when the rollback holds the connection exclusively, through a closed RollbackGate or the RollbackMultiplexer.
+	 */
+	private void resetSession() {
+		if (!resetSession) {
+			return;
+		}
+		if (!gate.isClosedByCurrentThread() && !multiplexer.isHeldByCurrentThread()) {
+			if (!resetSessionSkipLogged) {
+				resetSessionSkipLogged = true;
+				logger.warn(label + "the session is not reset after a rollback, because other threads may use the connection meanwhile; enable RollbackGate or RollbackMultiplexer");
+			}
+			sessionResetSkipCount.incrementAndGet();
+			return;
+		}
+		tracker.close(tracker.untrackAll());
+		try {
+			dialect.resetSession(actualConnection);
+			afterTransactionEnd(actualConnection);
+		}
+		catch (SQLException e) {
+			logger.warn(label + "could not reset the session", e);
+		}
+		sessionResetCount.incrementAndGet();
+	}
+
+	/**
+	 * Let the dialect set up the session after a transaction ended, see RollbackDialect
+	 */
+	void afterTransactionEnd(Connection connection) throws SQLException {
+		int currentIsolationLevel = (connection == isolationLevelConnection ? isolationLevel : -1);
+		rememberIsolationLevel(connection, dialect.afterTransactionEnd(connection, currentIsolationLevel));
+	}
+
+	/**
+	 * The isolation level as last set, and the physical connection it was set on; after a standby swap the level is unknown again
+	 */
+	void rememberIsolationLevel(Connection connection, int isolationLevel) {
+		this.isolationLevel = isolationLevel;
+		this.isolationLevelConnection = connection;
+	}
+	volatile private int isolationLevel = -1;
+	volatile private Connection isolationLevelConnection = null;
+
+	/**
+	 * The number of session resets after a rollback
+	 */
+	public long getSessionResetCount() {
+		return sessionResetCount.get();
+	}
+	final private AtomicLong sessionResetCount = new AtomicLong();
+
+	/**
+	 * The number of rollbacks after which the session was not reset, because the connection was not held exclusively
+	 */
+	public long getSessionResetSkipCount() {
+		return sessionResetSkipCount.get();
+	}
+	final private AtomicLong sessionResetSkipCount = new AtomicLong();
+	volatile private boolean resetSessionSkipLogged = false;
+
+	/**
+	 * Use -DRollbackDatabase.resetSession=false to leave the session as it is after a rollback (see resetSession).
+	 * Disable it if something above the driver, like a pool with a statement cache, keeps statements open over rollbacks.
+	 * By default it is only enabled if a rollback can have the connection to itself (the RollbackGate, the RollbackMultiplexer or a standby connection), otherwise the reset would be skipped anyway.
+	 */
+	static boolean useResetSession(boolean exclusive) {
+		return (System.getProperty(RollbackDatabase.class.getSimpleName() + ".resetSession") == null ? exclusive : Boolean.parseBoolean(System.getProperty(RollbackDatabase.class.getSimpleName() + ".resetSession")));
+	}
+
+	// ================================================================================================
+	// Scopes
+
+	/**
+	 * Mark the current state with a savepoint, so it can be returned to with rollbackToScope.
+	 * For example: load the fixtures once, push a "baseline" scope, and after each test roll back to it instead of reloading the fixtures.
+	 * Scopes nest, like the savepoints they are made of.
+	 */
+	public void pushScope(String name) throws SQLException {
+		if (logger.isDebugEnabled()) logger.debug(label + "pushScope(" + name + ")");
+		multiplexer.enter();
+		try {
+			synchronized (this) {
+				setAutoCommitFalse();
+				scopes.push(new Scope(name, actualConnection.setSavepoint(name)));
+			}
+		}
+		finally {
+			multiplexer.exit();
+		}
+	}
+
+	/**
+	 * Undo everything after the scope was pushed; the scope itself stays, the scopes pushed after it are discarded.
+	 */
+	public void rollbackToScope(String name) throws SQLException {
+		if (logger.isDebugEnabled()) logger.debug(label + "rollbackToScope(" + name + ")");
+		long startNanos = System.nanoTime();
+		boolean closed = gate.close();
+		boolean entered = enterMultiplexer(startNanos);
+		try {
+			synchronized (this) {
+				Scope scope = findScope(name);
+				if (scope == null) {
+					throw new SQLException(label + "unknown scope " + name);
+				}
+				if (logger.isInfoEnabled()) logger.info(label + "rolling back " + getActualUrl() + " to scope " + name);
+				actualConnection.rollback(scope.savepoint);
+
+				// a savepoint after the one rolled back to is no longer valid
+				while (scopes.peek() != scope) {
+					scopes.pop();
+				}
+			}
+		}
+		finally {
+			if (entered) {
+				multiplexer.exit();
+			}
+			if (closed) {
+				gate.open();
+			}
+		}
+	}
+
+	/**
+	 * The innermost scope with the name, or null
+	 */
+	private Scope findScope(String name) {
+		for (Scope scope : scopes) {
+			if (scope.name.equals(name)) {
+				return scope;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Remove the innermost scope, its changes are kept as part of the enclosing scope (or the transaction)
+	 */
+	public void popScope() throws SQLException {
+		multiplexer.enter();
+		try {
+			synchronized (this) {
+				Scope scope = scopes.poll();
+				if (scope == null) {
+					throw new SQLException(label + "there is no scope to pop");
+				}
+				if (logger.isDebugEnabled()) logger.debug(label + "popScope " + scope.name);
+				try {
+					actualConnection.releaseSavepoint(scope.savepoint);
+				}
+				catch (SQLFeatureNotSupportedException e) {
+					// not all databases can release a savepoint, it then lives until the transaction ends
+				}
+			}
+		}
+		finally {
+			multiplexer.exit();
+		}
+	}
+
+	/**
+	 * The names of the scopes, innermost first
+	 */
+	synchronized public List<String> getScopes() {
+		List<String> names = new ArrayList<>();
+		for (Scope scope : scopes) {
+			names.add(scope.name);
+		}
+		return names;
+	}
+
+	/**
+	 * The transaction ended, so did all its savepoints
+	 */
+	synchronized void forgetScopes() {
+		scopes.clear();
+	}
+	final private Deque<Scope> scopes = new ArrayDeque<>();
+
+	/**
+	 *
+	 */
+	static private class Scope {
+		Scope(String name, Savepoint savepoint) {
+			this.name = name;
+			this.savepoint = savepoint;
+		}
+		final String name;
+		final Savepoint savepoint;
+	}
+
+	/**
+	 * Allow or disable transactions
+	 */
+	public void setTransactionsEnabled(boolean v) throws SQLException {
+		if (logger.isDebugEnabled()) logger.debug(label + "setTransactionsEnabled(" + v + ")");
+		transactionsEnabled = v;
+		if (v == false) {
+			setAutoCommitFalse();
+		}
+	}
+	public boolean getTransactionsEnabled() {
+		return transactionsEnabled;
+	}
+	volatile private boolean transactionsEnabled;
+
+	/**
+	 * The multiplexer is always entered before synchronizing on this, because the connection's calls enter it first as well
+	 */
+	private void setAutoCommitFalse() throws SQLException {
+		multiplexer.enter();
+		try {
+			synchronized (this) {
+				actualConnection.setAutoCommit(false);
+			}
+		}
+		finally {
+			multiplexer.exit();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return label + getActualUrl();
+	}
+}
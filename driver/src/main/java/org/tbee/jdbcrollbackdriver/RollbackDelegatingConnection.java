@@ -0,0 +1,700 @@
+package org.tbee.jdbcrollbackdriver;
+
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.NClob;
+import java.sql.PreparedStatement;
+import java.sql.SQLClientInfoException;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Struct;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+
+/**
+ * A connection that directly delegates to the actual connection, without any reflection.
+ * Only setAutoCommit, commit, rollback and close take a special path, all other calls go straight to the delegate.
+ * The transaction methods here and the calls on the wrapped statements, result sets and meta data pass the database's RollbackGate.
+ * Statements and meta data are wrapped as well (see the generated Rollback* classes), so their getConnection does not expose the actual connection.
+ */
+public class RollbackDelegatingConnection implements Connection {
+	final static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RollbackDriver.class);
+
+	// ================================================================================================
+	// Constructor
+
+	public RollbackDelegatingConnection(RollbackDatabase rollbackDatabase, Connection connection, String label) throws SQLException {
+		this.rollbackDatabase = rollbackDatabase;
+		this.label = label;
+
+		// initialize
+		connection.setAutoCommit(false);
+	}
+	final private RollbackDatabase rollbackDatabase;
+	final private String label;
+
+	/**
+	 * The database's current actual connection; it may be swapped for a standby connection on a rollback (see RollbackDatabase)
+	 */
+	private Connection connection() {
+		return rollbackDatabase.getActualConnection();
+	}
+
+	/**
+	 * Used by the wrappers for every statement, result set and LOB they hand out, see RollbackTracker
+	 */
+	<T> T track(T child) {
+		return rollbackDatabase.getTracker().track(child);
+	}
+
+	/**
+	 * Used around each call, by this connection and by the wrappers, see RollbackGate and RollbackMultiplexer
+	 */
+	void enter(Statement statement) {
+		rollbackDatabase.getGate().enter(statement);
+		rollbackDatabase.getMultiplexer().enter();
+	}
+
+	/**
+	 *
+	 */
+	void exit() {
+		rollbackDatabase.getMultiplexer().exit();
+		rollbackDatabase.getGate().exit();
+	}
+
+	// ================================================================================================
+	// Special path
+	// http://www.practicalsqldba.com/2012/05/ms-sql-server-nested-transaction-and.html
+
+	@Override
+	public void setAutoCommit(boolean autoCommit) throws SQLException {
+		if (rollbackDatabase.getTransactionsEnabled()) {
+			if (logger.isTraceEnabled()) logger.trace(label + " allowing setAutoCommit(" + autoCommit + ")");
+		}
+		else {
+			if (logger.isTraceEnabled()) logger.trace(label + " blocking setAutoCommit(" + autoCommit + ")");
+			return;
+		}
+		enter(null);
+		try {
+			connection().setAutoCommit(autoCommit);
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public void commit() throws SQLException {
+		if (rollbackDatabase.getTransactionsEnabled()) {
+			if (logger.isDebugEnabled()) logger.debug(label + " allowing commit");
+		}
+		else {
+			if (logger.isDebugEnabled()) logger.debug(label + " blocking commit");
+			return;
+		}
+		enter(null);
+		try {
+			connection().commit();
+			rollbackDatabase.forgetScopes();
+			afterTransactionEnd();
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public void rollback() throws SQLException {
+		if (!allowRollback()) {
+			return;
+		}
+		enter(null);
+		try {
+			connection().rollback();
+			rollbackDatabase.forgetScopes();
+			afterTransactionEnd();
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public void rollback(Savepoint savepoint) throws SQLException {
+		if (!allowRollback()) {
+			return;
+		}
+		enter(null);
+		try {
+			connection().rollback(savepoint);
+		}
+		finally {
+			exit();
+		}
+	}
+
+	/**
+	 *
+	 */
+	private boolean allowRollback() {
+		if (rollbackDatabase.getTransactionsEnabled()) {
+			if (logger.isDebugEnabled()) logger.debug(label + " allowing rollback");
+			return true;
+		}
+		if (logger.isDebugEnabled()) logger.debug(label + " blocking rollback");
+		return false;
+	}
+
+	/**
+	 *
+	 */
+	private void afterTransactionEnd() throws SQLException {
+		if (logger.isDebugEnabled()) logger.debug(label + " after transaction end, dialect " + rollbackDatabase.getDialect().getName());
+		rollbackDatabase.afterTransactionEnd(connection());
+	}
+
+	@Override
+	public void close() throws SQLException {
+		if (logger.isDebugEnabled()) logger.debug(label + " blocking close");
+	}
+
+	// ================================================================================================
+	// Straight delegation (wrapping whatever is part of the JDBC object graph)
+
+	@Override
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		if (iface.isInstance(this)) {
+			return iface.cast(this);
+		}
+		return connection().unwrap(iface);
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return iface.isInstance(this) || connection().isWrapperFor(iface);
+	}
+
+	@Override
+	public Statement createStatement() throws SQLException {
+		enter(null);
+		try {
+			return RollbackStatement.wrap(this, track(connection().createStatement()));
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql) throws SQLException {
+		enter(null);
+		try {
+			return RollbackPreparedStatement.wrap(this, track(connection().prepareStatement(sql)));
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public CallableStatement prepareCall(String sql) throws SQLException {
+		enter(null);
+		try {
+			return RollbackCallableStatement.wrap(this, track(connection().prepareCall(sql)));
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public String nativeSQL(String sql) throws SQLException {
+		enter(null);
+		try {
+			return connection().nativeSQL(sql);
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public boolean getAutoCommit() throws SQLException {
+		enter(null);
+		try {
+			return connection().getAutoCommit();
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public boolean isClosed() throws SQLException {
+		enter(null);
+		try {
+			return connection().isClosed();
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public DatabaseMetaData getMetaData() throws SQLException {
+		enter(null);
+		try {
+			return RollbackDatabaseMetaData.wrap(this, connection().getMetaData());
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public void setReadOnly(boolean readOnly) throws SQLException {
+		enter(null);
+		try {
+			connection().setReadOnly(readOnly);
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public boolean isReadOnly() throws SQLException {
+		enter(null);
+		try {
+			return connection().isReadOnly();
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public void setCatalog(String catalog) throws SQLException {
+		enter(null);
+		try {
+			connection().setCatalog(catalog);
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public String getCatalog() throws SQLException {
+		enter(null);
+		try {
+			return connection().getCatalog();
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public void setTransactionIsolation(int level) throws SQLException {
+		enter(null);
+		try {
+			Connection connection = connection();
+			connection.setTransactionIsolation(level);
+			rollbackDatabase.rememberIsolationLevel(connection, level);
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public int getTransactionIsolation() throws SQLException {
+		enter(null);
+		try {
+			return connection().getTransactionIsolation();
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public SQLWarning getWarnings() throws SQLException {
+		enter(null);
+		try {
+			return connection().getWarnings();
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public void clearWarnings() throws SQLException {
+		enter(null);
+		try {
+			connection().clearWarnings();
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
+		enter(null);
+		try {
+			return RollbackStatement.wrap(this, track(connection().createStatement(resultSetType, resultSetConcurrency)));
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+		enter(null);
+		try {
+			return RollbackPreparedStatement.wrap(this, track(connection().prepareStatement(sql, resultSetType, resultSetConcurrency)));
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+		enter(null);
+		try {
+			return RollbackCallableStatement.wrap(this, track(connection().prepareCall(sql, resultSetType, resultSetConcurrency)));
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public Map<String, Class<?>> getTypeMap() throws SQLException {
+		enter(null);
+		try {
+			return connection().getTypeMap();
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public void setTypeMap(Map<String, Class<?>> map) throws SQLException {
+		enter(null);
+		try {
+			connection().setTypeMap(map);
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public void setHoldability(int holdability) throws SQLException {
+		enter(null);
+		try {
+			connection().setHoldability(holdability);
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public int getHoldability() throws SQLException {
+		enter(null);
+		try {
+			return connection().getHoldability();
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public Savepoint setSavepoint() throws SQLException {
+		enter(null);
+		try {
+			return connection().setSavepoint();
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public Savepoint setSavepoint(String name) throws SQLException {
+		enter(null);
+		try {
+			return connection().setSavepoint(name);
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public void releaseSavepoint(Savepoint savepoint) throws SQLException {
+		enter(null);
+		try {
+			connection().releaseSavepoint(savepoint);
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+		enter(null);
+		try {
+			return RollbackStatement.wrap(this, track(connection().createStatement(resultSetType, resultSetConcurrency, resultSetHoldability)));
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+		enter(null);
+		try {
+			return RollbackPreparedStatement.wrap(this, track(connection().prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability)));
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+		enter(null);
+		try {
+			return RollbackCallableStatement.wrap(this, track(connection().prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability)));
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+		enter(null);
+		try {
+			return RollbackPreparedStatement.wrap(this, track(connection().prepareStatement(sql, autoGeneratedKeys)));
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+		enter(null);
+		try {
+			return RollbackPreparedStatement.wrap(this, track(connection().prepareStatement(sql, columnIndexes)));
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+		enter(null);
+		try {
+			return RollbackPreparedStatement.wrap(this, track(connection().prepareStatement(sql, columnNames)));
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public Clob createClob() throws SQLException {
+		enter(null);
+		try {
+			return track(connection().createClob());
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public Blob createBlob() throws SQLException {
+		enter(null);
+		try {
+			return track(connection().createBlob());
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public NClob createNClob() throws SQLException {
+		enter(null);
+		try {
+			return track(connection().createNClob());
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public SQLXML createSQLXML() throws SQLException {
+		enter(null);
+		try {
+			return track(connection().createSQLXML());
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public boolean isValid(int timeout) throws SQLException {
+		enter(null);
+		try {
+			return connection().isValid(timeout);
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public void setClientInfo(String name, String value) throws SQLClientInfoException {
+		enter(null);
+		try {
+			connection().setClientInfo(name, value);
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public void setClientInfo(Properties properties) throws SQLClientInfoException {
+		enter(null);
+		try {
+			connection().setClientInfo(properties);
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public String getClientInfo(String name) throws SQLException {
+		enter(null);
+		try {
+			return connection().getClientInfo(name);
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public Properties getClientInfo() throws SQLException {
+		enter(null);
+		try {
+			return connection().getClientInfo();
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public Array createArrayOf(String typeName, Object[] elements) throws SQLException {
+		enter(null);
+		try {
+			return track(connection().createArrayOf(typeName, elements));
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public Struct createStruct(String typeName, Object[] attributes) throws SQLException {
+		enter(null);
+		try {
+			return connection().createStruct(typeName, attributes);
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public void setSchema(String schema) throws SQLException {
+		enter(null);
+		try {
+			connection().setSchema(schema);
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public String getSchema() throws SQLException {
+		enter(null);
+		try {
+			return connection().getSchema();
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public void abort(Executor executor) throws SQLException {
+		// not through the multiplexer: like Statement.cancel it must be able to reach a call in flight
+		connection().abort(executor);
+	}
+
+	@Override
+	public void setNetworkTimeout(Executor executor, int milliseconds) throws SQLException {
+		enter(null);
+		try {
+			connection().setNetworkTimeout(executor, milliseconds);
+		}
+		finally {
+			exit();
+		}
+	}
+
+	@Override
+	public int getNetworkTimeout() throws SQLException {
+		enter(null);
+		try {
+			return connection().getNetworkTimeout();
+		}
+		finally {
+			exit();
+		}
+	}
+}
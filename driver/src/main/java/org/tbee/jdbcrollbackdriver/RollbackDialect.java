@@ -0,0 +1,42 @@
+package org.tbee.jdbcrollbackdriver;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * What is database specific about the held connection, like the session setup after a transaction ended and the session reset after a rollback.
+ *
+ * Dialects are found with ServiceLoader (META-INF/services/org.tbee.jdbcrollbackdriver.RollbackDialect), see RollbackDialects.
+ * The dialect with the highest priority that accepts the actual driver class or URL is used, unless one is selected by name with -DRollbackDialect=h2.
+ */
+public interface RollbackDialect {
+
+	/**
+	 * For logging and for selecting the dialect with -DRollbackDialect
+	 */
+	String getName();
+
+	/**
+	 * If multiple dialects accept a database, the one with the highest priority is used
+	 */
+	int getPriority();
+
+	/**
+	 *
+	 */
+	boolean accepts(String actualDriverClass, String actualUrl);
+
+	/**
+	 * Called after each commit or rollback that the RollbackDriver let through; not after a rollback to a savepoint, that does not end the transaction.
+	 * The wrapper sees every setTransactionIsolation, so it can tell the dialect the current level, and the dialect can skip the round-trip if that is already right.
+	 * @param isolationLevel the current isolation level of the connection, or -1 if it is not known
+	 * @return the isolation level the connection has now, or -1 if it is not known
+	 */
+	int afterTransactionEnd(Connection connection, int isolationLevel) throws SQLException;
+
+	/**
+	 * Called after a rollback by the RollbackDriver, to clean up what lives in the session instead of in the transaction, like temporary tables and session variables.
+	 * The transaction has just been rolled back, so it is empty, and the caller holds the connection exclusively, so the reset may switch to auto commit.
+	 */
+	void resetSession(Connection connection) throws SQLException;
+}
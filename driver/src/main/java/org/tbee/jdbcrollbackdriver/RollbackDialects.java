@@ -0,0 +1,239 @@
+package org.tbee.jdbcrollbackdriver;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * The RollbackDialects found with ServiceLoader, and the dialects that come with the driver
+ */
+public class RollbackDialects {
+	final static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RollbackDialects.class);
+
+	/**
+	 * All dialects, highest priority first
+	 */
+	static public synchronized List<RollbackDialect> getDialects() {
+		if (dialects == null) {
+			List<RollbackDialect> list = new ArrayList<>();
+			for (RollbackDialect rollbackDialect : ServiceLoader.load(RollbackDialect.class, RollbackDialect.class.getClassLoader())) {
+				list.add(rollbackDialect);
+			}
+			list.sort(Comparator.comparingInt(RollbackDialect::getPriority).reversed());
+			if (logger.isDebugEnabled()) logger.debug("Dialects " + list);
+			dialects = Collections.unmodifiableList(list);
+		}
+		return dialects;
+	}
+	static private List<RollbackDialect> dialects;
+
+	/**
+	 * The dialect selected with -DRollbackDialect=name, or else the one with the highest priority that accepts the database
+	 */
+	static public RollbackDialect get(RollbackUrl rollbackUrl) {
+		String name = System.getProperty(RollbackDialect.class.getSimpleName());
+		for (RollbackDialect rollbackDialect : getDialects()) {
+			if (name != null ? rollbackDialect.getName().equals(name) : rollbackDialect.accepts(rollbackUrl.getActualDriverClass(), rollbackUrl.getActualUrl())) {
+				return rollbackDialect;
+			}
+		}
+		if (name != null) {
+			throw new IllegalArgumentException("Unknown dialect " + name);
+		}
+		return new Generic();
+	}
+
+	// ========================================================================================================================================================
+	// Dialects
+
+	/**
+	 * After a transaction the connection is set to an isolation level, using setTransactionIsolation; only if it does not have that level already.
+	 * After a rollback the session is reset by executing the reset statements.
+	 */
+	static abstract class SqlDialect implements RollbackDialect {
+		SqlDialect(String name, int isolationLevel, String urlPrefix, String... driverClassPrefixes) {
+			this.name = name;
+			this.isolationLevel = isolationLevel;
+			this.urlPrefix = urlPrefix;
+			this.driverClassPrefixes = driverClassPrefixes;
+		}
+		final private String name;
+		final private int isolationLevel;
+		final private String urlPrefix;
+		final private String[] driverClassPrefixes;
+
+		@Override
+		public String getName() {
+			return name;
+		}
+		@Override
+		public int getPriority() {
+			return 10;
+		}
+		@Override
+		public boolean accepts(String actualDriverClass, String actualUrl) {
+			if (actualUrl != null && actualUrl.startsWith(urlPrefix)) {
+				return true;
+			}
+			for (String driverClassPrefix : driverClassPrefixes) {
+				if (actualDriverClass != null && actualDriverClass.startsWith(driverClassPrefix)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		@Override
+		public int afterTransactionEnd(Connection connection, int isolationLevel) throws SQLException {
+			if (this.isolationLevel < 0 || this.isolationLevel == isolationLevel) {
+				return isolationLevel;
+			}
+			if (logger.isDebugEnabled()) logger.debug(name + ": setTransactionIsolation(" + this.isolationLevel + ")");
+			connection.setTransactionIsolation(this.isolationLevel);
+			return this.isolationLevel;
+		}
+
+		/**
+		 * The statements are executed in auto commit mode, otherwise the next rollback would undo them; this is safe because RollbackDatabase only resets a connection no other thread can use meanwhile
+		 */
+		@Override
+		public void resetSession(Connection connection) throws SQLException {
+			List<String> sqls = getResetStatements(connection);
+			if (sqls.isEmpty()) {
+				return;
+			}
+			connection.setAutoCommit(true);
+			try (Statement statement = connection.createStatement()) {
+				for (String sql : sqls) {
+					if (logger.isDebugEnabled()) logger.debug(name + ": " + sql);
+					statement.execute(sql);
+				}
+			}
+			finally {
+				connection.setAutoCommit(false);
+			}
+		}
+
+		/**
+		 * The SQL statements that reset the session
+		 */
+		List<String> getResetStatements(Connection connection) throws SQLException {
+			return Collections.emptyList();
+		}
+		@Override
+		public String toString() {
+			return getName();
+		}
+	}
+
+	/**
+	 * Read through locks, and drop the #temp tables of the session
+	 */
+	public static class SqlServer extends SqlDialect {
+		public SqlServer() {
+			super("sqlServer", Connection.TRANSACTION_READ_UNCOMMITTED, "jdbc:sqlserver:", "com.microsoft.sqlserver.", "net.sourceforge.jtds.");
+		}
+		@Override
+		public boolean accepts(String actualDriverClass, String actualUrl) {
+			return super.accepts(actualDriverClass, actualUrl) || (actualUrl != null && actualUrl.startsWith("jdbc:jtds:sqlserver:"));
+		}
+
+		/**
+		 * In tempdb the name of a local temporary table is padded with underscores and a suffix; it is only visible to its own session under the short name
+		 */
+		@Override
+		List<String> getResetStatements(Connection connection) throws SQLException {
+			List<String> sqls = new ArrayList<>();
+			try (
+				Statement statement = connection.createStatement();
+				ResultSet resultSet = statement.executeQuery(TEMP_TABLES_SQL);
+			) {
+				while (resultSet.next()) {
+					sqls.add("DROP TABLE [" + resultSet.getString(1).replace("]", "]]") + "]");
+				}
+			}
+			return sqls;
+		}
+		static final private String TEMP_TABLES_SQL
+			= "SELECT t.shortName FROM"
+			+ " (SELECT SUBSTRING(name, 1, CHARINDEX('___', name + '___') - 1) AS shortName, object_id FROM tempdb.sys.tables WHERE name LIKE '#[^#]%') t"
+			+ " WHERE OBJECT_ID('tempdb..' + t.shortName) = t.object_id";
+	}
+
+	/**
+	 * PostgreSQL treats read uncommitted as read committed, so there is no isolation level to set.
+	 * The session is reset with DISCARD TEMP and RESET ALL; not DISCARD ALL, because that also deallocates the prepared statements the JDBC driver holds.
+	 */
+	public static class PostgreSql extends SqlDialect {
+		public PostgreSql() {
+			super("postgreSql", -1, "jdbc:postgresql:", "org.postgresql.");
+		}
+		@Override
+		List<String> getResetStatements(Connection connection) throws SQLException {
+			return RESET_STATEMENTS;
+		}
+		static final private List<String> RESET_STATEMENTS = Collections.unmodifiableList(Arrays.asList("DISCARD TEMP", "RESET ALL"));
+	}
+
+	/**
+	 *
+	 */
+	public static class H2 extends SqlDialect {
+		public H2() {
+			super("h2", Connection.TRANSACTION_READ_UNCOMMITTED, "jdbc:h2:", "org.h2.");
+		}
+	}
+
+	/**
+	 *
+	 */
+	public static class Hsqldb extends SqlDialect {
+		public Hsqldb() {
+			super("hsqldb", Connection.TRANSACTION_READ_UNCOMMITTED, "jdbc:hsqldb:", "org.hsqldb.");
+		}
+	}
+
+	/**
+	 *
+	 */
+	public static class Derby extends SqlDialect {
+		public Derby() {
+			super("derby", Connection.TRANSACTION_READ_UNCOMMITTED, "jdbc:derby:", "org.apache.derby.");
+		}
+	}
+
+	/**
+	 * Any other database: the session is left as it is
+	 */
+	public static class Generic implements RollbackDialect {
+		@Override
+		public String getName() {
+			return "generic";
+		}
+		@Override
+		public int getPriority() {
+			return 0;
+		}
+		@Override
+		public boolean accepts(String actualDriverClass, String actualUrl) {
+			return true;
+		}
+		@Override
+		public int afterTransactionEnd(Connection connection, int isolationLevel) throws SQLException {
+			return isolationLevel;
+		}
+		@Override
+		public void resetSession(Connection connection) throws SQLException {
+		}
+		@Override
+		public String toString() {
+			return getName();
+		}
+	}
+}
@@ -1,276 +1,582 @@
-package org.tbee.jdbcrollbackdriver;
-
-import java.sql.Connection;
-import java.sql.Driver;
-import java.sql.DriverManager;
-import java.sql.DriverPropertyInfo;
-import java.sql.SQLException;
-import java.sql.SQLFeatureNotSupportedException;
-import java.util.Properties;
-
-/**
- * This driver is intended to be used during integration and UI testing.
- * It can be put in disabled transaction mode, which will ignore any commit and rollback call.
- * At the end of the test the rollback call on the driver rolls back all changes on all connections.
- * 
- * This driver will make sure that all connections of all drivers are rollbacked.
- * 
- * Each driver will  create one connection in order to minimize chances of locking conflicts.
- * Because certain processes (like logging in) requires a change to be written to the database, the driver can switch between allow or disable transactions.
- * For this use the corresponding static methods.
- * 
- *  Example:
- *  jdbc:rollback:theId#net.sourceforge.jtds.jdbc.Driver:jtds:sqlserver:...
- */
-public class RollbackDriver implements Driver {
-	final static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RollbackDriver.class);
-
-	// ================================================================================================
-	// DriverManager
-
-	/**
-	 * Register the Driver with DriverManager
-	 */
-	static {
-		// Register the Driver with DriverManager
-		try {
-			RollbackDriver driver = new RollbackDriver();
-			if (logger.isDebugEnabled()) logger.debug("registering RollbackDriver with the DriverManager [" + Integer.toHexString(driver.hashCode()) + "]");
-			DriverManager.registerDriver(driver);			
-		} 
-		catch (Exception e) {
-			throw new RuntimeException("JDBC driver can't be registered", e);
-		}
-	}
-	
-	// ================================================================================================
-	// Constructor
-	
-	public RollbackDriver() {
-		// a classloader may create multiple instances of this driver, we need to rollback them all
-		if (logger.isDebugEnabled()) logger.debug("Instantiated RollbackDriver [" + Integer.toHexString(hashCode()) + "]");
-	}
-	
-	// ================================================================================================
-	// Driver
-
-	final static public String PREFIX = "jdbc:rollback:";
-
-	@Override
-	public Connection connect(String url, Properties info) throws SQLException {
-		RollbackController.startControllingDriver(this, label);
-		try {
-			if (logger.isDebugEnabled()) logger.debug("Connect " + url);
-	
-			// check URL
-			// do not use acceptsURL, because then inheriting this Driver will not work
-			if (!url.startsWith(PREFIX)) {
-				if (logger.isDebugEnabled()) logger.debug("Prefix does not match, this driver cannot connect: " + url);
-				return null;
-			}
-	
-			// extract parameters
-			String driverPlusUrl = url.substring(PREFIX.length());
-			String actualDriverClass = driverPlusUrl.substring(0, driverPlusUrl.indexOf(":"));
-			actualUrl = "jdbc" + driverPlusUrl.substring(actualDriverClass.length());
-			if (actualDriverClass.contains("#")) {
-				label = actualDriverClass.substring(0, actualDriverClass.indexOf("#")) + ": ";
-				actualDriverClass = actualDriverClass.substring(actualDriverClass.indexOf("#") + 1);
-			}
-		    if (logger.isDebugEnabled()) logger.debug(label + this.getClass().getSimpleName() + ": managing " + actualUrl);
-			if (logger.isDebugEnabled()) logger.debug(label + "actualUrl = " + actualUrl);
-			if (logger.isDebugEnabled()) logger.debug(label + "actualDriverClass = " + actualDriverClass);
-
-			// now loading actual driver
-			driver = (Driver)Class.forName(actualDriverClass).newInstance(); 
-	
-			// create connection
-			if (wrappedConnection == null) {
-				if (logger.isInfoEnabled()) logger.info(label + "creating connection: " + actualUrl + " in driver [" + Integer.toHexString(hashCode()) + "]");
-				actualConnection = driver.connect(actualUrl, info);
-		
-				// wrap it
-				wrappedConnection = RollbackConnection.wrap(this, actualConnection, label);
-			}
-			
-			// done
-			return wrappedConnection;
-		}
-		catch (ClassNotFoundException | InstantiationException | IllegalAccessException e) {
-			throw new SQLException(e);
-		}
-	}
-	private Driver driver;
-	static private String actualUrl;
-	static private String label = "";
-	static private Connection actualConnection;
-	static private Connection wrappedConnection;
-	
-	@Override
-	public boolean acceptsURL(String url) throws SQLException {
-		// must begin with correct string
-		if (!url.startsWith(PREFIX)) {
-			if (logger.isDebugEnabled()) logger.debug("Prefix does not match, this driver cannot connect: " + url);
-			return false;
-		} 
-		else {
-			if (logger.isDebugEnabled()) logger.debug("acceptsURL " + url);
-		}
-		
-		// accept
-		return true;
-	}
-
-	@Override
-	public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) throws SQLException {
-		return driver.getPropertyInfo(url, info);
-	}
-
-	@Override
-	public int getMajorVersion() {
-		return driver.getMajorVersion();
-	}
-
-	@Override
-	public int getMinorVersion() {
-		return driver.getMinorVersion();
-	}
-
-	@Override
-	public boolean jdbcCompliant() {
-		return driver.jdbcCompliant();
-	}
-
-	@Override
-	public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
-		return driver.getParentLogger();
-	}
-	
-	
-	// ================================================================================================
-	// Actual implementation of the API's actions (after the message has been received)
-
-	/**
-	 * The actual implementation of rollback
-	 */
-	public void rollback() {
-		try {
-			if (logger.isDebugEnabled()) logger.debug(label + "rollback on RollbackDriver [" + Integer.toHexString(hashCode()) + "] " + actualConnection);
-			if (actualConnection != null) {
-				setAutoCommitFalse();
-				System.out.println(label + "rolling back " + actualUrl);
-				actualConnection.rollback();
-			}
-		}
-		catch (SQLException e) {
-			throw new RuntimeException(e);
-		}
-	}
-
-	/**
-	 * The actual implementation of allow or disable transactions
-	 */
-	public void setTransactionsEnabled(boolean v) {
-		if (logger.isDebugEnabled()) logger.debug(label + "setTransactionsEnabled(" + v + ") [" + Integer.toHexString(hashCode()) + "]");
-		transactionsEnabled = v;
-		if (v == false) {
-			setAutoCommitFalse();
-		}
-	}
-	public boolean getTransactionsEnabled() {
-		//if (logger.isDebugEnabled()) logger.debug(label + "getTransactionsEnabled=" + transactionsEnabled + " [" + Integer.toHexString(hashCode()) + "]");
-		return transactionsEnabled;
-	}
-
-	/**
-	 * 
-	 */
-	private void setAutoCommitFalse() {
-		try {
-			if (actualConnection != null) {
-				actualConnection.setAutoCommit(false);
-			}
-		} 
-		catch (SQLException e) {
-			throw new RuntimeException(e);
-		}
-	}
-	private boolean transactionsEnabled = true;
-	
-	// ================================================================================================
-	// API
-
-	/**
-	 * This will use the active method of communication: MBean, socket or multicast
-	 */
-	static public void rollbackAll() {  
-		if (logger.isDebugEnabled()) logger.debug(label + "rollbackAll");
-		if (usingSocket()) {
-			RollbackControllerSocket.rollbackAll();
-		}
-		else if (usingMulticast()) {
-			// rollbackMulticast.rollbackAllDrivers();
-		}
-		else {
-			getControllerBean().rollbackAll();
-		}
-	}
-	
-	/**
-	 * This will use the active method of communication: MBean, socket or multicast
-	 */
-	static public void allowTransactions() {  
-		if (logger.isDebugEnabled()) logger.debug(label + "allowTransactions");
-		if (usingSocket()) {
-			RollbackControllerSocket.allowTransactions();
-		}
-		else if (usingMulticast()) {
-			// rollbackMulticast.allowTransactions();
-		}
-		else {
-			getControllerBean().allowTransactions();
-		}
-	}
-	
-	/**
-	 * This will use the active method of communication: MBean, socket or multicast
-	 */
-	static public void disableTransactions() {  
-		if (logger.isDebugEnabled()) logger.debug(label + "disableTransactions");
-		if (usingSocket()) {
-			RollbackControllerSocket.disableTransactions();
-		}
-		else if (usingMulticast()) {
-			// rollbackMulticast.disableTransactions();
-		}
-		else {
-			getControllerBean().disableTransactions();
-		}
-	}
-
-	/**
-	 * 
-	 */
-	static private boolean usingSocket() {
-		return System.getProperty(RollbackControllerSocket.class.getSimpleName()) != null;
-	}
-
-	/**
-	 * 
-	 */
-	static private boolean usingMulticast() {
-		return System.getProperty(RollbackControllerMulticast.class.getSimpleName()) != null;
-	}
-	
-	/**
-	 * 
-	 */
-	static private RollbackControllerMBean getControllerBean() {
-		if (rollbackControllerMBean == null) {
-			rollbackControllerMBean = RollbackController.connect();
-		}
-		return rollbackControllerMBean;
-	}
-	static private RollbackControllerMBean rollbackControllerMBean = null;
-	
-}
+package org.tbee.jdbcrollbackdriver;
+
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This driver is intended to be used during integration and UI testing.
+ * It can be put in disabled transaction mode, which will ignore any commit and rollback call.
+ * At the end of the test the rollback call on the driver rolls back all changes on all connections.
+ * 
+ * This driver will make sure that all connections of all drivers are rollbacked.
+ * 
+ * Each driver will  create one connection per database (URL and credentials) in order to minimize chances of locking conflicts.
+ * For parallel tests it can hold multiple connections per database instead, one per group of workers (see RollbackLanes).
+ * Because certain processes (like logging in) requires a change to be written to the database, the driver can switch between allow or disable transactions.
+ * For this use the corresponding static methods.
+ * 
+ *  Example:
+ *  jdbc:rollback:theId#net.sourceforge.jtds.jdbc.Driver:jtds:sqlserver:...
+ */
+public class RollbackDriver implements Driver {
+	final static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RollbackDriver.class);
+
+	// ================================================================================================
+	// DriverManager
+
+	/**
+	 * Register the Driver with DriverManager
+	 */
+	static {
+		// Register the Driver with DriverManager
+		try {
+			RollbackDriver driver = new RollbackDriver();
+			if (logger.isDebugEnabled()) logger.debug("registering RollbackDriver with the DriverManager [" + Integer.toHexString(driver.hashCode()) + "]");
+			DriverManager.registerDriver(driver);			
+		} 
+		catch (Exception e) {
+			throw new RuntimeException("JDBC driver can't be registered", e);
+		}
+	}
+	
+	// ================================================================================================
+	// Constructor
+	
+	public RollbackDriver() {
+		// a classloader may create multiple instances of this driver, we need to rollback them all
+		if (logger.isDebugEnabled()) logger.debug("Instantiated RollbackDriver [" + Integer.toHexString(hashCode()) + "]");
+	}
+	
+	// ================================================================================================
+	// Driver
+
+	final static public String PREFIX = "jdbc:rollback:";
+
+	@Override
+	public Connection connect(String url, Properties info) throws SQLException {
+		if (logger.isDebugEnabled()) logger.debug("Connect " + url);
+
+		// check URL
+		// do not use acceptsURL, because then inheriting this Driver will not work
+		RollbackUrl rollbackUrl = RollbackUrl.parse(url);
+		if (rollbackUrl == null) {
+			if (logger.isDebugEnabled()) logger.debug("Prefix does not match, this driver cannot connect: " + url);
+			return null;
+		}
+		String label = rollbackUrl.getLabel();
+		RollbackController.startControllingDriver(this, label);
+	    if (logger.isDebugEnabled()) logger.debug(label + this.getClass().getSimpleName() + ": managing " + rollbackUrl.getActualUrl());
+		if (logger.isDebugEnabled()) logger.debug(label + "actualDriverClass = " + rollbackUrl.getActualDriverClass());
+
+		// the actual driver; a driver instance may connect to databases of different actual drivers concurrently, so it is passed along instead of kept
+		Driver actualDriver = getActualDriver(rollbackUrl.getActualDriverClass());
+		lastActualDriver = actualDriver;
+	
+		// each URL and credentials combination has its own database (or its own lanes, see RollbackLanes)
+		String key = RollbackDatabase.key(rollbackUrl, info);
+		int laneCount = RollbackLanes.getCount();
+		if (laneCount > 1) {
+			return connectLanes(actualDriver, key, rollbackUrl, info, laneCount);
+		}
+		RollbackDatabase rollbackDatabase = databases.get(key);
+		if (rollbackDatabase == null) {
+			synchronized (databases) {
+				rollbackDatabase = databases.get(key);
+				if (rollbackDatabase == null) {
+					rollbackDatabase = createDatabase(actualDriver, key, rollbackUrl, info);
+					databases.put(key, rollbackDatabase);
+				}
+			}
+		}
+		
+		// done
+		return rollbackDatabase.getWrappedConnection();
+	}
+
+	/**
+	 * Only used for the Driver methods without a URL, like getMajorVersion
+	 */
+	volatile private Driver lastActualDriver;
+	static final private ConcurrentMap<String, RollbackDatabase> databases = new ConcurrentHashMap<>();
+	
+	/**
+	 * Each lane is a database of its own, registered under the key plus the lane number
+	 */
+	private Connection connectLanes(Driver actualDriver, String key, RollbackUrl rollbackUrl, Properties info, int laneCount) throws SQLException {
+		Connection connection = laneConnections.get(key);
+		if (connection == null) {
+			synchronized (databases) {
+				connection = laneConnections.get(key);
+				if (connection == null) {
+					Map<String, RollbackDatabase> lanes = new LinkedHashMap<>();
+					try {
+						for (int i = 0; i < laneCount; i++) {
+							String laneKey = key + "\u0000lane" + i;
+							lanes.put(laneKey, createDatabase(actualDriver, laneKey, rollbackUrl, info));
+						}
+					}
+					catch (SQLException | RuntimeException e) {
+						// the lanes opened so far are not registered, so nothing else would ever close them
+						for (RollbackDatabase lane : lanes.values()) {
+							lane.close();
+						}
+						throw e;
+					}
+					databases.putAll(lanes);
+					connection = RollbackLanes.wrap(new ArrayList<>(lanes.values()));
+					laneConnections.put(key, connection);
+				}
+			}
+		}
+		return connection;
+	}
+	static final private ConcurrentMap<String, Connection> laneConnections = new ConcurrentHashMap<>();
+	
+	/**
+	 * 
+	 */
+	private RollbackDatabase createDatabase(Driver actualDriver, String key, RollbackUrl rollbackUrl, Properties info) throws SQLException {
+		if (logger.isInfoEnabled()) logger.info(rollbackUrl.getLabel() + "creating connection: " + rollbackUrl.getActualUrl() + " in driver [" + Integer.toHexString(hashCode()) + "]");
+		Connection actualConnection = actualDriver.connect(rollbackUrl.getActualUrl(), info);
+		return new RollbackDatabase(key, rollbackUrl, actualConnection, transactionsEnabled, () -> actualDriver.connect(rollbackUrl.getActualUrl(), info));
+	}
+	
+	/**
+	 * All databases managed by the RollbackDrivers in this classloader
+	 */
+	static public Collection<RollbackDatabase> getDatabases() {
+		return Collections.unmodifiableCollection(databases.values());
+	}
+	
+	/**
+	 * The databases in this classloader with the label
+	 */
+	static List<RollbackDatabase> getDatabases(String labelName) {
+		List<RollbackDatabase> rollbackDatabases = new ArrayList<>();
+		for (RollbackDatabase rollbackDatabase : databases.values()) {
+			if (labelName.equals(rollbackDatabase.getLabelName())) {
+				rollbackDatabases.add(rollbackDatabase);
+			}
+		}
+		return rollbackDatabases;
+	}
+	
+	/**
+	 * Only instantiate each actual driver class once
+	 */
+	static private Driver getActualDriver(String actualDriverClass) throws SQLException {
+		Driver driver = actualDrivers.get(actualDriverClass);
+		if (driver != null) {
+			return driver;
+		}
+		try {
+			if (logger.isDebugEnabled()) logger.debug("Instantiating actual driver " + actualDriverClass);
+			driver = (Driver)Class.forName(actualDriverClass).newInstance();
+		}
+		catch (ClassNotFoundException | InstantiationException | IllegalAccessException e) {
+			throw new SQLException(e);
+		}
+		Driver existing = actualDrivers.putIfAbsent(actualDriverClass, driver);
+		return existing != null ? existing : driver;
+	}
+	static final private ConcurrentMap<String, Driver> actualDrivers = new ConcurrentHashMap<>();
+	
+	@Override
+	public boolean acceptsURL(String url) throws SQLException {
+		// must begin with correct string
+		if (!url.startsWith(PREFIX)) {
+			if (logger.isDebugEnabled()) logger.debug("Prefix does not match, this driver cannot connect: " + url);
+			return false;
+		} 
+		else {
+			if (logger.isDebugEnabled()) logger.debug("acceptsURL " + url);
+		}
+		
+		// accept
+		return true;
+	}
+
+	@Override
+	public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) throws SQLException {
+		RollbackUrl rollbackUrl = RollbackUrl.parse(url);
+		Driver actualDriver = (rollbackUrl == null ? lastActualDriver : getActualDriver(rollbackUrl.getActualDriverClass()));
+		return actualDriver.getPropertyInfo(rollbackUrl == null ? url : rollbackUrl.getActualUrl(), info);
+	}
+
+	@Override
+	public int getMajorVersion() {
+		return lastActualDriver.getMajorVersion();
+	}
+
+	@Override
+	public int getMinorVersion() {
+		return lastActualDriver.getMinorVersion();
+	}
+
+	@Override
+	public boolean jdbcCompliant() {
+		return lastActualDriver.jdbcCompliant();
+	}
+
+	@Override
+	public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		return lastActualDriver.getParentLogger();
+	}
+	
+	
+	// ================================================================================================
+	// Actual implementation of the API's actions (after the message has been received)
+
+	/**
+	 * The actual implementation of rollback, over all databases.
+	 * If parallelism is enabled (see RollbackController), or in lanes mode (see RollbackLanes), the databases are rolled back concurrently.
+	 */
+	public void rollback() {
+		if (logger.isDebugEnabled()) logger.debug("rollback on RollbackDriver [" + Integer.toHexString(hashCode()) + "] " + databases.values());
+		rollback(databases.values());
+	}
+
+	/**
+	 * The actual implementation of a targeted rollback, only the databases with this label
+	 */
+	public void rollback(String labelName) {
+		if (logger.isDebugEnabled()) logger.debug("rollback(" + labelName + ") on RollbackDriver [" + Integer.toHexString(hashCode()) + "]");
+		rollback(getDatabases(labelName));
+	}
+
+	/**
+	 * 
+	 */
+	void rollback(Collection<RollbackDatabase> rollbackDatabases) {
+		
+		// start all rollbacks
+		ExecutorService executor = (rollbackExecutor != null ? rollbackExecutor : laneConnections.isEmpty() ? null : laneExecutor);
+		Map<RollbackDatabase, Future<?>> futures = new LinkedHashMap<>();
+		for (RollbackDatabase rollbackDatabase : rollbackDatabases) {
+			Callable<Void> rollback = () -> {
+				long startNanos = System.nanoTime();
+				rollbackDatabase.rollback();
+				if (logger.isInfoEnabled()) logger.info(rollbackDatabase.getLabel() + "rollback took " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) + "ms");
+				return null;
+			};
+			FutureTask<Void> future = new FutureTask<>(rollback);
+			if (executor == null || rollbackDatabases.size() == 1) {
+				future.run();
+			}
+			else {
+				executor.execute(future);
+			}
+			futures.put(rollbackDatabase, future);
+		}
+		
+		// wait for all of them, a failing database does not stop the others
+		RuntimeException exception = null;
+		for (Map.Entry<RollbackDatabase, Future<?>> entry : futures.entrySet()) {
+			try {
+				entry.getValue().get();
+			}
+			catch (ExecutionException | InterruptedException e) {
+				if (e instanceof InterruptedException) {
+					Thread.currentThread().interrupt();
+				}
+				Throwable cause = (e instanceof ExecutionException ? e.getCause() : e);
+				if (exception == null) {
+					exception = new RuntimeException(entry.getKey() + ": rollback failed", cause);
+				}
+				else {
+					exception.addSuppressed(cause);
+				}
+			}
+		}
+		if (exception != null) {
+			throw exception;
+		}
+	}
+	static final private ExecutorService rollbackExecutor = RollbackController.newParallelExecutor(RollbackDriver.class.getSimpleName() + "-rollback");
+	static final private AtomicInteger laneThreadCount = new AtomicInteger();
+	static final private ExecutorService laneExecutor = Executors.newCachedThreadPool( runnable -> {
+		Thread thread = new Thread(runnable, RollbackDriver.class.getSimpleName() + "-lane-" + laneThreadCount.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * The databases are shared by all drivers in this classloader, and each of these drivers receives the notification.
+	 * Rolling back the same databases again for each driver only makes them wait for each other, so only the first driver to see the notification executes it.
+	 */
+	void rollback(String labelName, long sequenceNumber) {
+		if (!isFirstToExecute(sequenceNumber)) {
+			if (logger.isDebugEnabled()) logger.debug("Notification " + sequenceNumber + " already executed in this classloader");
+			return;
+		}
+		if (labelName == null) {
+			rollback();
+		}
+		else {
+			rollback(labelName);
+		}
+	}
+
+	/**
+	 * The notifications may be delivered out of order (see RollbackController's parallelism), so the sequence numbers that were executed are remembered, not just the highest one
+	 */
+	static private boolean isFirstToExecute(long sequenceNumber) {
+		synchronized (executedSequenceNumbers) {
+			if (!executedSequenceNumbers.add(sequenceNumber)) {
+				return false;
+			}
+			if (executedSequenceNumbers.size() > MAX_EXECUTED_SEQUENCE_NUMBERS) {
+				Iterator<Long> iterator = executedSequenceNumbers.iterator();
+				iterator.next();
+				iterator.remove();
+			}
+			return true;
+		}
+	}
+	static final private Set<Long> executedSequenceNumbers = new LinkedHashSet<>();
+	static final private int MAX_EXECUTED_SEQUENCE_NUMBERS = 1024;
+
+	/**
+	 * The actual implementation of allow or disable transactions, over all databases
+	 */
+	public void setTransactionsEnabled(boolean v) {
+		if (logger.isDebugEnabled()) logger.debug("setTransactionsEnabled(" + v + ") [" + Integer.toHexString(hashCode()) + "]");
+		transactionsEnabled = v;
+		try {
+			for (RollbackDatabase rollbackDatabase : databases.values()) {
+				rollbackDatabase.setTransactionsEnabled(v);
+			}
+		} 
+		catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * The actual implementation of a targeted allow or disable transactions, only the databases with this label.
+	 * The driver's own setting, which new databases get, is not changed.
+	 */
+	public void setTransactionsEnabled(String labelName, boolean v) {
+		if (logger.isDebugEnabled()) logger.debug("setTransactionsEnabled(" + labelName + ", " + v + ") [" + Integer.toHexString(hashCode()) + "]");
+		try {
+			for (RollbackDatabase rollbackDatabase : getDatabases(labelName)) {
+				rollbackDatabase.setTransactionsEnabled(v);
+			}
+		} 
+		catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	 * The actual implementation of pushScope, on all databases or only those with the label
+	 */
+	void pushScope(String scopeName, String labelName, long sequenceNumber) {
+		forEachScopedDatabase(labelName, sequenceNumber, rollbackDatabase -> rollbackDatabase.pushScope(scopeName));
+	}
+	
+	/**
+	 * The actual implementation of rollbackToScope, on all databases or only those with the label
+	 */
+	void rollbackToScope(String scopeName, String labelName, long sequenceNumber) {
+		forEachScopedDatabase(labelName, sequenceNumber, rollbackDatabase -> rollbackDatabase.rollbackToScope(scopeName));
+	}
+	
+	/**
+	 * The actual implementation of popScope, on all databases or only those with the label
+	 */
+	void popScope(String labelName, long sequenceNumber) {
+		forEachScopedDatabase(labelName, sequenceNumber, rollbackDatabase -> rollbackDatabase.popScope());
+	}
+	
+	/**
+	 * The databases are shared by all drivers in this classloader, and each of these drivers receives the notification.
+	 * A savepoint must be set only once, so only the first driver to see the notification executes it.
+	 */
+	private void forEachScopedDatabase(String labelName, long sequenceNumber, ScopeAction scopeAction) {
+		if (!isFirstToExecute(sequenceNumber)) {
+			if (logger.isDebugEnabled()) logger.debug("Notification " + sequenceNumber + " already executed in this classloader");
+			return;
+		}
+		try {
+			for (RollbackDatabase rollbackDatabase : (labelName == null ? databases.values() : getDatabases(labelName))) {
+				scopeAction.execute(rollbackDatabase);
+			}
+		} 
+		catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	 * 
+	 */
+	private interface ScopeAction {
+		void execute(RollbackDatabase rollbackDatabase) throws SQLException;
+	}
+	
+	public boolean getTransactionsEnabled() {
+		//if (logger.isDebugEnabled()) logger.debug("getTransactionsEnabled=" + transactionsEnabled + " [" + Integer.toHexString(hashCode()) + "]");
+		return transactionsEnabled;
+	}
+	private boolean transactionsEnabled = true;
+	
+	/**
+	 * Identifies this driver instance, also over classloaders
+	 */
+	public String getId() {
+		return getClass().getSimpleName() + "[" + Integer.toHexString(hashCode()) + "]";
+	}
+	
+	// ================================================================================================
+	// API
+
+	/**
+	 * This will use the configured transport with the highest priority (see RollbackTransports), the MBean if none is configured
+	 */
+	static public void rollbackAll() {  
+		if (logger.isDebugEnabled()) logger.debug("rollbackAll");
+		RollbackTransports.getClient().rollbackAll();
+	}
+	
+	/**
+	 * Rollback and wait until all drivers are done; this always uses the MBean
+	 */
+	static public RollbackSummary rollbackAllAndWait(long timeoutMillis) {  
+		if (logger.isDebugEnabled()) logger.debug("rollbackAllAndWait");
+		return getControllerBean().rollbackAllAndWait(timeoutMillis);
+	}
+	
+	/**
+	 * This will use the configured transport with the highest priority (see RollbackTransports), the MBean if none is configured
+	 */
+	static public void allowTransactions() {  
+		if (logger.isDebugEnabled()) logger.debug("allowTransactions");
+		RollbackTransports.getClient().allowTransactions();
+	}
+	
+	/**
+	 * This will use the configured transport with the highest priority (see RollbackTransports), the MBean if none is configured
+	 */
+	static public void disableTransactions() {  
+		if (logger.isDebugEnabled()) logger.debug("disableTransactions");
+		RollbackTransports.getClient().disableTransactions();
+	}
+
+	/**
+	 * Rollback only the databases with this label (jdbc:rollback:label#...), only the drivers owning such a database are woken up.
+	 * This will use the configured transport with the highest priority (see RollbackTransports), the MBean if none is configured
+	 */
+	static public void rollbackAll(String labelName) {  
+		if (logger.isDebugEnabled()) logger.debug("rollbackAll(" + labelName + ")");
+		RollbackTransports.getClient().batch(RollbackController.labeledCommand(RollbackController.ROLLBACKAll_ACTION, labelName));
+	}
+	
+	/**
+	 * Allow transactions only on the databases with this label.
+	 * This will use the configured transport with the highest priority (see RollbackTransports), the MBean if none is configured
+	 */
+	static public void allowTransactions(String labelName) {  
+		if (logger.isDebugEnabled()) logger.debug("allowTransactions(" + labelName + ")");
+		RollbackTransports.getClient().batch(RollbackController.labeledCommand(RollbackController.ALLOWTRANSACTIONS_ACTION, labelName));
+	}
+	
+	/**
+	 * Disable transactions only on the databases with this label.
+	 * This will use the configured transport with the highest priority (see RollbackTransports), the MBean if none is configured
+	 */
+	static public void disableTransactions(String labelName) {  
+		if (logger.isDebugEnabled()) logger.debug("disableTransactions(" + labelName + ")");
+		RollbackTransports.getClient().batch(RollbackController.labeledCommand(RollbackController.DISABLETRANSACTIONS_ACTION, labelName));
+	}
+
+	/**
+	 * Mark the current state of all databases, so a test can return to it with rollbackToScope (see RollbackDatabase.pushScope).
+	 * This will use the configured transport with the highest priority (see RollbackTransports), the MBean if none is configured
+	 */
+	static public void pushScope(String scopeName) {  
+		if (logger.isDebugEnabled()) logger.debug("pushScope(" + scopeName + ")");
+		RollbackTransports.getClient().batch(RollbackController.scopeCommand(RollbackController.PUSHSCOPE_ACTION, scopeName));
+	}
+	
+	/**
+	 * Return all databases to the state in which the scope was pushed.
+	 * This will use the configured transport with the highest priority (see RollbackTransports), the MBean if none is configured
+	 */
+	static public void rollbackToScope(String scopeName) {  
+		if (logger.isDebugEnabled()) logger.debug("rollbackToScope(" + scopeName + ")");
+		RollbackTransports.getClient().batch(RollbackController.scopeCommand(RollbackController.ROLLBACKTOSCOPE_ACTION, scopeName));
+	}
+	
+	/**
+	 * Remove the innermost scope of all databases.
+	 * This will use the configured transport with the highest priority (see RollbackTransports), the MBean if none is configured
+	 */
+	static public void popScope() {  
+		if (logger.isDebugEnabled()) logger.debug("popScope");
+		RollbackTransports.getClient().batch(RollbackController.POPSCOPE_ACTION);
+	}
+
+	/**
+	 * In lanes mode (see RollbackLanes) the calls of the current thread go to the lane assigned to this key, instead of the one assigned to the thread.
+	 * For example, a servlet filter can set the test id a UI test sends as an HTTP header, so all requests of one test use the same lane.
+	 * @param workerKey null to fall back to the current thread
+	 */
+	static public void setWorkerKey(String workerKey) {
+		if (logger.isDebugEnabled()) logger.debug("setWorkerKey(" + workerKey + ")");
+		RollbackLanes.setWorkerKey(workerKey);
+	}
+
+	/**
+	 * Execute the commands (rollbackAll, allowTransactions, disableTransactions, pushScope:name, rollbackToScope:name, popScope, optionally targeted like rollbackAll@label) in one round-trip, without commands of other clients in between.
+	 * This will use the configured transport with the highest priority (see RollbackTransports), the MBean if none is configured
+	 */
+	static public void batch(String... commands) {  
+		if (logger.isDebugEnabled()) logger.debug("batch");
+		RollbackTransports.getClient().batch(commands);
+	}
+	
+	/**
+	 * Execute the commands in one round-trip and wait until all drivers are done; this always uses the MBean
+	 */
+	static public RollbackSummary batchAndWait(long timeoutMillis, String... commands) {  
+		if (logger.isDebugEnabled()) logger.debug("batchAndWait");
+		return getControllerBean().batch(commands, timeoutMillis);
+	}
+
+	/**
+	 * 
+	 */
+	static RollbackControllerMBean getControllerBean() {
+		if (rollbackControllerMBean == null) {
+			rollbackControllerMBean = RollbackController.connect();
+		}
+		return rollbackControllerMBean;
+	}
+	static private RollbackControllerMBean rollbackControllerMBean = null;
+	
+}
@@ -0,0 +1,211 @@
+package org.tbee.jdbcrollbackdriver;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Keeps a rollback from running while application threads are in the middle of a JDBC call on the same database.
+ * Every call through the wrappers (statements, result sets, meta data, and the connection itself) enters the gate shared, a rollback closes it exclusively.
+ * The lock is fair: once a rollback waits, new calls queue behind it, so only the calls already in flight need to drain.
+ *
+ * Use -DRollbackGate.timeout=5000 to enable the gate; if the calls have not drained within that many milliseconds the rollback continues anyway.
+ * Use -DRollbackGate.cancel=true to Statement.cancel() the calls still in flight after the timeout, and give them one more timeout to finish.
+ */
+public class RollbackGate {
+	final static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RollbackGate.class);
+
+	// ================================================================================================
+	// Constructor
+
+	RollbackGate(String label) {
+		this.label = label;
+		this.timeoutMillis = getTimeout();
+		this.cancel = useCancel();
+	}
+	final private String label;
+	final private long timeoutMillis;
+	final private boolean cancel;
+	final private ReentrantReadWriteLock lock = new ReentrantReadWriteLock(true);
+
+	/**
+	 * Per thread the statement it is executing, so it can be cancelled
+	 */
+	final private Map<Thread, Statement> inFlight = new ConcurrentHashMap<>();
+
+	/**
+	 *
+	 */
+	public boolean isEnabled() {
+		return timeoutMillis > 0;
+	}
+
+	/**
+	 *
+	 */
+	public long getTimeoutMillis() {
+		return timeoutMillis;
+	}
+
+	// ================================================================================================
+	// Calls
+
+	/**
+	 * Called before each JDBC call, waits while a rollback has the gate closed
+	 * @param statement the statement to cancel if the call does not drain, may be null
+	 */
+	void enter(Statement statement) {
+		if (timeoutMillis <= 0) {
+			return;
+		}
+		lock.readLock().lock();
+		if (statement != null) {
+			inFlight.put(Thread.currentThread(), statement);
+		}
+	}
+
+	/**
+	 * Called after each JDBC call
+	 */
+	void exit() {
+		if (timeoutMillis <= 0) {
+			return;
+		}
+		if (lock.getReadHoldCount() == 1) {
+			inFlight.remove(Thread.currentThread());
+		}
+		lock.readLock().unlock();
+	}
+
+	// ================================================================================================
+	// Rollback
+
+	/**
+	 * Stop new calls from entering and wait for the calls in flight.
+	 * @return true if the gate was closed, the caller must then call open; false if it is disabled or the calls did not drain in time
+	 */
+	boolean close() {
+		if (timeoutMillis <= 0) {
+			return false;
+		}
+
+		// a thread inside a call cannot wait for itself
+		if (lock.getReadHoldCount() > 0) {
+			if (logger.isDebugEnabled()) logger.debug(label + "rollback from within a JDBC call, not draining");
+			return false;
+		}
+
+		long startNanos = System.nanoTime();
+		boolean closed = false;
+		try {
+			closed = lock.writeLock().tryLock(timeoutMillis, TimeUnit.MILLISECONDS);
+			if (!closed && cancel) {
+				for (Statement statement : inFlight.values()) {
+					try {
+						statement.cancel();
+						cancelCount.incrementAndGet();
+					}
+					catch (SQLException e) {
+						logger.warn(label + "could not cancel " + statement, e);
+					}
+				}
+				closed = lock.writeLock().tryLock(timeoutMillis, TimeUnit.MILLISECONDS);
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		// report
+		long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+		lastDrainMicros = micros;
+		totalDrainMicros.addAndGet(micros);
+		drainCount.incrementAndGet();
+		if (!closed) {
+			timeoutCount.incrementAndGet();
+			logger.warn(label + inFlight.size() + " JDBC calls still in flight after " + (micros / 1000) + "ms, rolling back anyway");
+		}
+		else if (logger.isInfoEnabled()) {
+			logger.info(label + "draining the JDBC calls took " + (micros / 1000) + "ms");
+		}
+		return closed;
+	}
+
+	/**
+	 * Let the calls continue
+	 */
+	void open() {
+		lock.writeLock().unlock();
+	}
+
+	/**
+	 * Whether the current thread closed the gate, so no other thread is inside a call
+	 */
+	boolean isClosedByCurrentThread() {
+		return lock.isWriteLockedByCurrentThread();
+	}
+
+	// ================================================================================================
+	// Metrics
+
+	/**
+	 * How long the last rollback waited for the calls in flight, in microseconds
+	 */
+	public long getLastDrainMicros() {
+		return lastDrainMicros;
+	}
+	volatile private long lastDrainMicros = 0;
+
+	/**
+	 *
+	 */
+	public long getAverageDrainMicros() {
+		long count = drainCount.get();
+		return (count == 0 ? 0 : totalDrainMicros.get() / count);
+	}
+	final private AtomicLong totalDrainMicros = new AtomicLong();
+	final private AtomicLong drainCount = new AtomicLong();
+
+	/**
+	 * The number of rollbacks that continued without all calls drained
+	 */
+	public long getTimeoutCount() {
+		return timeoutCount.get();
+	}
+	final private AtomicLong timeoutCount = new AtomicLong();
+
+	/**
+	 * The number of statements that were cancelled
+	 */
+	public long getCancelCount() {
+		return cancelCount.get();
+	}
+	final private AtomicLong cancelCount = new AtomicLong();
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[" + label + "timeout=" + timeoutMillis + "ms, lastDrain=" + getLastDrainMicros() + "us, avgDrain=" + getAverageDrainMicros() + "us, timeouts=" + getTimeoutCount() + ", cancels=" + getCancelCount() + "]";
+	}
+
+	// ================================================================================================
+	// Configuration
+
+	/**
+	 * In milliseconds, 0 means the gate is disabled
+	 */
+	static long getTimeout() {
+		long timeout = (System.getProperty(RollbackGate.class.getSimpleName() + ".timeout") == null ? 0 : Long.parseLong(System.getProperty(RollbackGate.class.getSimpleName() + ".timeout")));
+		return timeout;
+	}
+
+	/**
+	 *
+	 */
+	static boolean useCancel() {
+		return Boolean.parseBoolean(System.getProperty(RollbackGate.class.getSimpleName() + ".cancel"));
+	}
+}
@@ -0,0 +1,475 @@
+package org.tbee.jdbcrollbackdriver;
+
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.NClob;
+import java.sql.PreparedStatement;
+import java.sql.SQLClientInfoException;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Struct;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * One held connection per database serializes all tests on it, so tests cannot run in parallel.
+ * In lanes mode the RollbackDriver holds multiple physical connections (lanes) per database, each in its own never committed transaction and each a RollbackDatabase of its own.
+ * The connection handed out routes every call directly to the wrapped connection of the current worker's lane, so each worker sees its own writes, and a rollback rolls back all lanes in parallel.
+ *
+ * A worker is identified by its key, set with RollbackDriver.setWorkerKey, for example the test id a UI test sends as an HTTP header, so the requests of one test all end up in the same lane.
+ * Without a key the current thread is the worker; that is wrong as soon as the requests of one test are served by different (pooled) threads, so it is warned about.
+ * A key is assigned to the lane with the fewest keys when it is first seen, and keeps that lane (sticky) until it has not been seen for a long time.
+ *
+ * Use -DRollbackLanes.count=4 to enable the lanes mode.
+ */
+public class RollbackLanes implements Connection {
+	final static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RollbackLanes.class);
+
+	/**
+	 * Wrap the lanes in a connection that routes to the lane of the current worker
+	 */
+	static public Connection wrap(List<RollbackDatabase> lanes) {
+		return new RollbackLanes(lanes);
+	}
+
+	// ================================================================================================
+	// Constructor
+
+	RollbackLanes(List<RollbackDatabase> lanes) {
+		this.lanes = Collections.unmodifiableList(lanes);
+		this.keyCounts = new AtomicIntegerArray(lanes.size());
+	}
+	final private List<RollbackDatabase> lanes;
+
+	/**
+	 *
+	 */
+	public List<RollbackDatabase> getLanes() {
+		return lanes;
+	}
+
+	/**
+	 * The wrapped connection of the current worker's lane; equals and hashCode are those of Object, because the pools use them and they must not depend on the worker
+	 */
+	private Connection lane() {
+		String workerKey = workerKeys.get();
+		if (workerKey == null) {
+			workerKey = "thread:" + Thread.currentThread().getId();
+			if (!warnedAboutThreadKey.getAndSet(true)) {
+				logger.warn(lanes.get(0).getLabel() + "no worker key is set, so each thread is a worker of its own; the requests of one test that are served by different threads end up in different lanes and do not see each other's writes. Use RollbackDriver.setWorkerKey");
+			}
+		}
+		return lanes.get(getLaneIndex(workerKey)).getWrappedConnection();
+	}
+	final private AtomicBoolean warnedAboutThreadKey = new AtomicBoolean();
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + lanes;
+	}
+
+	// ================================================================================================
+	// Assignment
+
+	/**
+	 * The lane the worker is assigned to, a new worker gets the lane with the fewest workers
+	 */
+	int getLaneIndex(String workerKey) {
+		Assignment assignment = assignments.get(workerKey);
+		if (assignment == null) {
+			assignment = assignments.computeIfAbsent(workerKey, this::assign);
+			if (assignments.size() > MAX_ASSIGNMENTS) {
+				forgetAssignments();
+			}
+		}
+		assignment.seen();
+		return assignment.laneIndex;
+	}
+	final private AtomicIntegerArray keyCounts;
+	final private Map<String, Assignment> assignments = new ConcurrentHashMap<>();
+	static final private int MAX_ASSIGNMENTS = 1024;
+
+	/**
+	 *
+	 */
+	private Assignment assign(String workerKey) {
+		int laneIndex = 0;
+		for (int i = 1; i < keyCounts.length(); i++) {
+			if (keyCounts.get(i) < keyCounts.get(laneIndex)) {
+				laneIndex = i;
+			}
+		}
+		keyCounts.incrementAndGet(laneIndex);
+		if (logger.isDebugEnabled()) logger.debug(lanes.get(laneIndex).getLabel() + "worker " + workerKey + " is assigned to lane " + laneIndex);
+		return new Assignment(laneIndex);
+	}
+
+	/**
+	 * Forget the workers that have not been seen for the longest time, a quarter at once, so this does not run on every new worker
+	 */
+	synchronized private void forgetAssignments() {
+		if (assignments.size() <= MAX_ASSIGNMENTS) {
+			return;
+		}
+		long[] lastSeens = new long[assignments.size()];
+		int count = 0;
+		for (Assignment assignment : assignments.values()) {
+			if (count < lastSeens.length) {
+				lastSeens[count++] = assignment.lastSeenMillis;
+			}
+		}
+		Arrays.sort(lastSeens, 0, count);
+		long forgetBefore = lastSeens[count / 4];
+		for (Iterator<Assignment> iterator = assignments.values().iterator(); iterator.hasNext(); ) {
+			Assignment assignment = iterator.next();
+			if (assignment.lastSeenMillis < forgetBefore) {
+				iterator.remove();
+				keyCounts.decrementAndGet(assignment.laneIndex);
+			}
+		}
+	}
+
+	/**
+	 *
+	 */
+	static private class Assignment {
+		Assignment(int laneIndex) {
+			this.laneIndex = laneIndex;
+		}
+		final int laneIndex;
+		volatile long lastSeenMillis = System.currentTimeMillis();
+
+		/**
+		 * Only written when more than a second passed, so the workers do not all write the same memory on every call
+		 */
+		void seen() {
+			long now = System.currentTimeMillis();
+			if (now - lastSeenMillis > 1000) {
+				lastSeenMillis = now;
+			}
+		}
+	}
+
+	// ================================================================================================
+	// Worker key
+
+	/**
+	 * The key of the current worker, by default the current thread
+	 */
+	static public String getWorkerKey() {
+		String workerKey = workerKeys.get();
+		return (workerKey != null ? workerKey : "thread:" + Thread.currentThread().getId());
+	}
+
+	/**
+	 * @param workerKey null to fall back to the current thread
+	 */
+	static public void setWorkerKey(String workerKey) {
+		if (workerKey == null) {
+			workerKeys.remove();
+		}
+		else {
+			workerKeys.set(workerKey);
+		}
+	}
+	static final private ThreadLocal<String> workerKeys = new ThreadLocal<>();
+
+	// ================================================================================================
+	// Connection
+
+	@Override
+	public void setAutoCommit(boolean autoCommit) throws SQLException {
+		lane().setAutoCommit(autoCommit);
+	}
+
+	@Override
+	public void commit() throws SQLException {
+		lane().commit();
+	}
+
+	@Override
+	public void rollback() throws SQLException {
+		lane().rollback();
+	}
+
+	@Override
+	public void rollback(Savepoint savepoint) throws SQLException {
+		lane().rollback(savepoint);
+	}
+
+	@Override
+	public void close() throws SQLException {
+		lane().close();
+	}
+
+	@Override
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		return lane().unwrap(iface);
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return lane().isWrapperFor(iface);
+	}
+
+	@Override
+	public Statement createStatement() throws SQLException {
+		return lane().createStatement();
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql) throws SQLException {
+		return lane().prepareStatement(sql);
+	}
+
+	@Override
+	public CallableStatement prepareCall(String sql) throws SQLException {
+		return lane().prepareCall(sql);
+	}
+
+	@Override
+	public String nativeSQL(String sql) throws SQLException {
+		return lane().nativeSQL(sql);
+	}
+
+	@Override
+	public boolean getAutoCommit() throws SQLException {
+		return lane().getAutoCommit();
+	}
+
+	@Override
+	public boolean isClosed() throws SQLException {
+		return lane().isClosed();
+	}
+
+	@Override
+	public DatabaseMetaData getMetaData() throws SQLException {
+		return lane().getMetaData();
+	}
+
+	@Override
+	public void setReadOnly(boolean readOnly) throws SQLException {
+		lane().setReadOnly(readOnly);
+	}
+
+	@Override
+	public boolean isReadOnly() throws SQLException {
+		return lane().isReadOnly();
+	}
+
+	@Override
+	public void setCatalog(String catalog) throws SQLException {
+		lane().setCatalog(catalog);
+	}
+
+	@Override
+	public String getCatalog() throws SQLException {
+		return lane().getCatalog();
+	}
+
+	@Override
+	public void setTransactionIsolation(int level) throws SQLException {
+		lane().setTransactionIsolation(level);
+	}
+
+	@Override
+	public int getTransactionIsolation() throws SQLException {
+		return lane().getTransactionIsolation();
+	}
+
+	@Override
+	public SQLWarning getWarnings() throws SQLException {
+		return lane().getWarnings();
+	}
+
+	@Override
+	public void clearWarnings() throws SQLException {
+		lane().clearWarnings();
+	}
+
+	@Override
+	public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
+		return lane().createStatement(resultSetType, resultSetConcurrency);
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+		return lane().prepareStatement(sql, resultSetType, resultSetConcurrency);
+	}
+
+	@Override
+	public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+		return lane().prepareCall(sql, resultSetType, resultSetConcurrency);
+	}
+
+	@Override
+	public Map<String, Class<?>> getTypeMap() throws SQLException {
+		return lane().getTypeMap();
+	}
+
+	@Override
+	public void setTypeMap(Map<String, Class<?>> map) throws SQLException {
+		lane().setTypeMap(map);
+	}
+
+	@Override
+	public void setHoldability(int holdability) throws SQLException {
+		lane().setHoldability(holdability);
+	}
+
+	@Override
+	public int getHoldability() throws SQLException {
+		return lane().getHoldability();
+	}
+
+	@Override
+	public Savepoint setSavepoint() throws SQLException {
+		return lane().setSavepoint();
+	}
+
+	@Override
+	public Savepoint setSavepoint(String name) throws SQLException {
+		return lane().setSavepoint(name);
+	}
+
+	@Override
+	public void releaseSavepoint(Savepoint savepoint) throws SQLException {
+		lane().releaseSavepoint(savepoint);
+	}
+
+	@Override
+	public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+		return lane().createStatement(resultSetType, resultSetConcurrency, resultSetHoldability);
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+		return lane().prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+	}
+
+	@Override
+	public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+		return lane().prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+		return lane().prepareStatement(sql, autoGeneratedKeys);
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+		return lane().prepareStatement(sql, columnIndexes);
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+		return lane().prepareStatement(sql, columnNames);
+	}
+
+	@Override
+	public Clob createClob() throws SQLException {
+		return lane().createClob();
+	}
+
+	@Override
+	public Blob createBlob() throws SQLException {
+		return lane().createBlob();
+	}
+
+	@Override
+	public NClob createNClob() throws SQLException {
+		return lane().createNClob();
+	}
+
+	@Override
+	public SQLXML createSQLXML() throws SQLException {
+		return lane().createSQLXML();
+	}
+
+	@Override
+	public boolean isValid(int timeout) throws SQLException {
+		return lane().isValid(timeout);
+	}
+
+	@Override
+	public void setClientInfo(String name, String value) throws SQLClientInfoException {
+		lane().setClientInfo(name, value);
+	}
+
+	@Override
+	public void setClientInfo(Properties properties) throws SQLClientInfoException {
+		lane().setClientInfo(properties);
+	}
+
+	@Override
+	public String getClientInfo(String name) throws SQLException {
+		return lane().getClientInfo(name);
+	}
+
+	@Override
+	public Properties getClientInfo() throws SQLException {
+		return lane().getClientInfo();
+	}
+
+	@Override
+	public Array createArrayOf(String typeName, Object[] elements) throws SQLException {
+		return lane().createArrayOf(typeName, elements);
+	}
+
+	@Override
+	public Struct createStruct(String typeName, Object[] attributes) throws SQLException {
+		return lane().createStruct(typeName, attributes);
+	}
+
+	@Override
+	public void setSchema(String schema) throws SQLException {
+		lane().setSchema(schema);
+	}
+
+	@Override
+	public String getSchema() throws SQLException {
+		return lane().getSchema();
+	}
+
+	@Override
+	public void abort(Executor executor) throws SQLException {
+		lane().abort(executor);
+	}
+
+	@Override
+	public void setNetworkTimeout(Executor executor, int milliseconds) throws SQLException {
+		lane().setNetworkTimeout(executor, milliseconds);
+	}
+
+	@Override
+	public int getNetworkTimeout() throws SQLException {
+		return lane().getNetworkTimeout();
+	}
+
+	// ================================================================================================
+	// Configuration
+
+	/**
+	 * The number of lanes per database, 1 means the lanes mode is disabled
+	 */
+	static int getCount() {
+		int count = (System.getProperty(RollbackLanes.class.getSimpleName() + ".count") == null ? 1 : Integer.parseInt(System.getProperty(RollbackLanes.class.getSimpleName() + ".count")));
+		return Math.max(1, count);
+	}
+}
@@ -0,0 +1,206 @@
+package org.tbee.jdbcrollbackdriver;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The RollbackDriver hands the same connection to every thread, but many JDBC drivers do not support concurrent calls on one physical connection.
+ * The multiplexer lets one call at a time through to the actual connection, in the order the threads arrive (the lock is fair).
+ * It also records how long each thread waited for its turn, which shows what the single connection costs in throughput.
+ *
+ * Use -DRollbackMultiplexer.enabled=true if the actual driver does not support concurrent calls on one connection.
+ * It is off by default: the common drivers (H2, HSQLDB, Derby, PostgreSQL, SQL Server) serialize the calls on a connection themselves, so the lock would only add a second queue in front of theirs.
+ * At most MAX_THREAD_HISTOGRAMS threads get a histogram of their own, the threads after that share one.
+ */
+public class RollbackMultiplexer {
+	final static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RollbackMultiplexer.class);
+
+	// ================================================================================================
+	// Constructor
+
+	RollbackMultiplexer(String label) {
+		this.label = label;
+		this.enabled = isEnabledByDefault();
+	}
+	final private String label;
+	final private boolean enabled;
+	final private ReentrantLock lock = new ReentrantLock(true);
+
+	/**
+	 *
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	// ================================================================================================
+	// Calls
+
+	/**
+	 * Wait for the turn of this thread; reentrant, so a call may make other calls
+	 */
+	void enter() {
+		if (!enabled) {
+			return;
+		}
+
+		// the wait is only measured if there actually is one (tryLock with a timeout honors the fairness, a plain tryLock would not)
+		try {
+			if (lock.tryLock(0, TimeUnit.NANOSECONDS)) {
+				histogram.get().record(0);
+				return;
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		long startNanos = System.nanoTime();
+		lock.lock();
+		long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+		histogram.get().record(micros);
+		contendedCount.incrementAndGet();
+		totalWaitMicros.addAndGet(micros);
+		maxWaitMicros.accumulateAndGet(micros, Math::max);
+		if (logger.isTraceEnabled()) logger.trace(label + Thread.currentThread().getName() + " waited " + micros + "us for the connection");
+	}
+
+	/**
+	 *
+	 */
+	void exit() {
+		if (!enabled) {
+			return;
+		}
+		lock.unlock();
+	}
+
+	/**
+	 * Like enter, but give up after the timeout; used by a rollback, which must not wait on a call that hangs
+	 * @return false if the turn was not taken in time, the caller must then not call exit
+	 */
+	boolean tryEnter(long timeoutMillis) {
+		if (!enabled) {
+			return true;
+		}
+		try {
+			if (lock.tryLock(timeoutMillis, TimeUnit.MILLISECONDS)) {
+				return true;
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		logger.warn(label + "the connection is still in use after " + timeoutMillis + "ms, continuing anyway");
+		return false;
+	}
+
+	/**
+	 * Whether the current thread has the connection to itself; always false when disabled
+	 */
+	boolean isHeldByCurrentThread() {
+		return enabled && lock.isHeldByCurrentThread();
+	}
+
+	// ================================================================================================
+	// Metrics
+
+	/**
+	 * Per thread the number of calls per wait time; bucket i counts the waits below 2^i microseconds (and at least 2^(i-1)), so bucket 0 are the calls that did not wait at all
+	 */
+	public Map<String, long[]> getWaitHistograms() {
+		Map<String, long[]> histograms = new TreeMap<>();
+		for (Map.Entry<String, Histogram> entry : threadHistograms.entrySet()) {
+			histograms.put(entry.getKey(), entry.getValue().toArray());
+		}
+		return Collections.unmodifiableMap(histograms);
+	}
+	final private Map<String, Histogram> threadHistograms = new ConcurrentHashMap<>();
+	final private ThreadLocal<Histogram> histogram = ThreadLocal.withInitial( () -> {
+		// thread names that keep changing (threads that are not pooled) would otherwise grow the map without bound
+		String name = Thread.currentThread().getName();
+		if (!threadHistograms.containsKey(name) && threadHistograms.size() >= MAX_THREAD_HISTOGRAMS) {
+			name = OTHER_THREADS;
+		}
+		return threadHistograms.computeIfAbsent(name, key -> new Histogram());
+	});
+	static final int MAX_THREAD_HISTOGRAMS = 256;
+	static final String OTHER_THREADS = "(other threads)";
+
+	/**
+	 * The upper bound (exclusive) of a histogram bucket, in microseconds
+	 */
+	static public long getBucketLimitMicros(int bucket) {
+		return 1L << bucket;
+	}
+
+	/**
+	 * The number of calls that had to wait for another thread
+	 */
+	public long getContendedCount() {
+		return contendedCount.get();
+	}
+	final private AtomicLong contendedCount = new AtomicLong();
+
+	/**
+	 * The total time the threads waited for each other, in microseconds
+	 */
+	public long getTotalWaitMicros() {
+		return totalWaitMicros.get();
+	}
+	final private AtomicLong totalWaitMicros = new AtomicLong();
+
+	/**
+	 *
+	 */
+	public long getMaxWaitMicros() {
+		return maxWaitMicros.get();
+	}
+	final private AtomicLong maxWaitMicros = new AtomicLong();
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[" + label + "enabled=" + enabled + ", contended=" + getContendedCount() + ", totalWait=" + getTotalWaitMicros() + "us, maxWait=" + getMaxWaitMicros() + "us]";
+	}
+
+	/**
+	 * Wait times in power of two buckets
+	 */
+	static private class Histogram {
+		final AtomicLongArray buckets = new AtomicLongArray(Long.SIZE);
+
+		void record(long micros) {
+			buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(micros));
+		}
+
+		/**
+		 * Without the empty buckets at the end
+		 */
+		long[] toArray() {
+			int length = buckets.length();
+			while (length > 1 && buckets.get(length - 1) == 0) {
+				length--;
+			}
+			long[] array = new long[length];
+			for (int i = 0; i < length; i++) {
+				array[i] = buckets.get(i);
+			}
+			return array;
+		}
+	}
+
+	// ================================================================================================
+	// Configuration
+
+	/**
+	 *
+	 */
+	static boolean isEnabledByDefault() {
+		return (System.getProperty(RollbackMultiplexer.class.getSimpleName() + ".enabled") == null ? false : Boolean.parseBoolean(System.getProperty(RollbackMultiplexer.class.getSimpleName() + ".enabled")));
+	}
+}
@@ -0,0 +1,105 @@
+package org.tbee.jdbcrollbackdriver;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The result of a command that waited for all RollbackDrivers to finish (e.g. rollbackAllAndWait).
+ * This is serializable, so it can be returned to a test runner in another JVM.
+ * RollbackControllerMulticast uses the same summary per node instead of per driver.
+ */
+public class RollbackSummary implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	public RollbackSummary(int driverCount, Map<String, Long> durations, Map<String, String> failures, boolean completed, long durationMillis) {
+		this.driverCount = driverCount;
+		this.durations = Collections.unmodifiableMap(new TreeMap<>(durations));
+		this.failures = Collections.unmodifiableMap(new TreeMap<>(failures));
+		this.completed = completed;
+		this.durationMillis = durationMillis;
+	}
+	final private int driverCount;
+	final private Map<String, Long> durations;
+	final private Map<String, String> failures;
+	final private boolean completed;
+	final private long durationMillis;
+
+	/**
+	 * The number of drivers that were expected to respond
+	 */
+	public int getDriverCount() {
+		return driverCount;
+	}
+
+	/**
+	 * The number of drivers that did respond
+	 */
+	public int getAcknowledgedCount() {
+		return durations.size();
+	}
+
+	/**
+	 * Per driver how long it took, in milliseconds
+	 */
+	public Map<String, Long> getDurations() {
+		return durations;
+	}
+
+	/**
+	 * Per driver the failure, if any
+	 */
+	public Map<String, String> getFailures() {
+		return failures;
+	}
+
+	/**
+	 * False if the timeout expired before all drivers had responded
+	 */
+	public boolean isCompleted() {
+		return completed;
+	}
+
+	/**
+	 * True if all drivers responded without a failure
+	 */
+	public boolean isSuccess() {
+		return completed && failures.isEmpty();
+	}
+
+	/**
+	 * The total time waited, in milliseconds
+	 */
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+	/**
+	 * Combine the summaries of the steps of a batch: the durations per driver are added up
+	 * @param stepCount the number of steps in the batch, if fewer summaries are given the batch did not complete
+	 */
+	static RollbackSummary combine(List<RollbackSummary> rollbackSummaries, int stepCount) {
+		int driverCount = 0;
+		Map<String, Long> durations = new TreeMap<>();
+		Map<String, String> failures = new TreeMap<>();
+		boolean completed = (rollbackSummaries.size() == stepCount);
+		long durationMillis = 0;
+		for (RollbackSummary rollbackSummary : rollbackSummaries) {
+			driverCount = Math.max(driverCount, rollbackSummary.driverCount);
+			for (Map.Entry<String, Long> duration : rollbackSummary.durations.entrySet()) {
+				durations.merge(duration.getKey(), duration.getValue(), Long::sum);
+			}
+			failures.putAll(rollbackSummary.failures);
+			completed &= rollbackSummary.completed;
+			durationMillis += rollbackSummary.durationMillis;
+		}
+		return new RollbackSummary(driverCount, durations, failures, completed, durationMillis);
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[drivers=" + getAcknowledgedCount() + "/" + driverCount + ", completed=" + completed + ", " + durationMillis + "ms, durations=" + durations + (failures.isEmpty() ? "" : ", failures=" + failures) + "]";
+	}
+}
@@ -0,0 +1,254 @@
+package org.tbee.jdbcrollbackdriver;
+
+import java.lang.ref.WeakReference;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLXML;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps weak references to the statements, result sets and LOBs the application opens through the wrappers.
+ * The held connection is never closed, so the actual driver never gets the chance to release its children; this tracker closes (or frees) them on a rollback instead, provided that rollback has the connection to itself (see RollbackDatabase.resetSession).
+ *
+ * Use -DRollbackTracker.threshold=1000 to warn when more than that many children are open, which usually means the application does not close them.
+ * They are not closed then, because the oldest children may very well still be in use; the next rollback closes them.
+ */
+public class RollbackTracker {
+	final static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RollbackTracker.class);
+
+	// ================================================================================================
+	// Constructor
+
+	RollbackTracker(String label) {
+		this.label = label;
+		this.threshold = getThreshold();
+		this.minimalExpungeAt = (threshold > 0 ? Math.min(MINIMAL_EXPUNGE_AT, threshold + 1) : MINIMAL_EXPUNGE_AT);
+		this.expungeAt = minimalExpungeAt;
+	}
+	final private String label;
+	final private int threshold;
+	final private int minimalExpungeAt;
+
+	/**
+	 * Oldest first, guarded by this
+	 */
+	final private Deque<WeakReference<Object>> children = new ArrayDeque<>();
+	private int expungeAt;
+	static final private int MINIMAL_EXPUNGE_AT = 1024;
+
+	// ================================================================================================
+	// Tracking
+
+	/**
+	 * Register a child object of the held connection
+	 * @return the child, so the call can be inlined
+	 */
+	<T> T track(T child) {
+		if (child == null) {
+			return null;
+		}
+		int open = 0;
+		synchronized (this) {
+			children.add(new WeakReference<>(child));
+
+			// the references of children that were closed or collected would otherwise pile up until the next rollback;
+			// the next expunge is at twice the size, so the isClosed calls cost a constant per track, also above the threshold
+			if (children.size() >= expungeAt) {
+				expunge();
+				expungeAt = Math.max(minimalExpungeAt, children.size() * 2);
+				open = children.size();
+			}
+		}
+		if (threshold > 0 && open > threshold) {
+			thresholdExceededCount.incrementAndGet();
+			logger.warn(label + open + " JDBC objects are open, more than the threshold of " + threshold + "; they are closed on the next rollback");
+		}
+		return child;
+	}
+
+	/**
+	 * Stop tracking all children
+	 * @return the children that are still open
+	 */
+	synchronized List<Object> untrackAll() {
+		List<Object> open = new ArrayList<>();
+		for (WeakReference<Object> reference : children) {
+			Object child = reference.get();
+			if (child != null && !isClosed(child)) {
+				open.add(child);
+			}
+		}
+		children.clear();
+		expungeAt = minimalExpungeAt;
+		return open;
+	}
+
+	/**
+	 * Close the result sets, then the statements, then free the LOBs
+	 * @return the number of children closed or freed
+	 */
+	int close(List<Object> children) {
+		int count = 0;
+		for (Class<?> kind : CLOSE_ORDER) {
+			for (Object child : children) {
+				if (kind.isInstance(child) && close(child)) {
+					count++;
+				}
+			}
+		}
+		closedCount.addAndGet(count);
+		return count;
+	}
+	static final private Class<?>[] CLOSE_ORDER = {ResultSet.class, Statement.class, Blob.class, Clob.class, SQLXML.class, Array.class};
+
+	/**
+	 *
+	 */
+	private boolean close(Object child) {
+		try {
+			if (isClosed(child)) {
+				return false;
+			}
+			if (child instanceof AutoCloseable) {
+				((AutoCloseable)child).close();
+			}
+			else if (child instanceof Blob) {
+				((Blob)child).free();
+			}
+			else if (child instanceof Clob) {
+				((Clob)child).free();
+			}
+			else if (child instanceof SQLXML) {
+				((SQLXML)child).free();
+			}
+			else if (child instanceof Array) {
+				((Array)child).free();
+			}
+			return true;
+		}
+		catch (Exception e) {
+			if (logger.isDebugEnabled()) logger.debug(label + "could not close " + child, e);
+			return false;
+		}
+	}
+
+	/**
+	 * LOBs cannot tell if they were freed, they are considered open until they are collected
+	 */
+	private boolean isClosed(Object child) {
+		try {
+			if (child instanceof Statement) {
+				return ((Statement)child).isClosed();
+			}
+			if (child instanceof ResultSet) {
+				return ((ResultSet)child).isClosed();
+			}
+			return false;
+		}
+		catch (SQLException e) {
+			return true;
+		}
+	}
+
+	/**
+	 * Remove the references to children that were collected or closed
+	 */
+	synchronized private void expunge() {
+		for (Iterator<WeakReference<Object>> iterator = children.iterator(); iterator.hasNext(); ) {
+			Object child = iterator.next().get();
+			if (child == null || isClosed(child)) {
+				iterator.remove();
+			}
+		}
+	}
+
+	// ================================================================================================
+	// Metrics
+
+	/**
+	 * The number of children that are open (or, for LOBs, not yet collected)
+	 */
+	public int getLiveCount() {
+		return count(Object.class);
+	}
+
+	/**
+	 *
+	 */
+	public int getLiveStatementCount() {
+		return count(Statement.class);
+	}
+
+	/**
+	 *
+	 */
+	public int getLiveResultSetCount() {
+		return count(ResultSet.class);
+	}
+
+	/**
+	 *
+	 */
+	public int getLiveLobCount() {
+		return count(Blob.class, Clob.class, SQLXML.class, Array.class);
+	}
+
+	/**
+	 *
+	 */
+	synchronized private int count(Class<?>... kinds) {
+		expunge();
+		int count = 0;
+		for (WeakReference<Object> reference : children) {
+			Object child = reference.get();
+			for (Class<?> kind : kinds) {
+				if (kind.isInstance(child)) {
+					count++;
+					break;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * The total number of children the tracker closed or freed
+	 */
+	public long getClosedCount() {
+		return closedCount.get();
+	}
+	final private AtomicLong closedCount = new AtomicLong();
+
+	/**
+	 * The number of times more children than the threshold were found open
+	 */
+	public long getThresholdExceededCount() {
+		return thresholdExceededCount.get();
+	}
+	final private AtomicLong thresholdExceededCount = new AtomicLong();
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[" + label + "live=" + getLiveCount() + ", closed=" + getClosedCount() + ", thresholdExceeded=" + getThresholdExceededCount() + "]";
+	}
+
+	// ================================================================================================
+	// Configuration
+
+	/**
+	 * 0 means there is no threshold
+	 */
+	static int getThreshold() {
+		int threshold = (System.getProperty(RollbackTracker.class.getSimpleName() + ".threshold") == null ? 0 : Integer.parseInt(System.getProperty(RollbackTracker.class.getSimpleName() + ".threshold")));
+		return threshold;
+	}
+}
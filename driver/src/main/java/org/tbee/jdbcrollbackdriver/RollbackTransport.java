@@ -0,0 +1,55 @@
+package org.tbee.jdbcrollbackdriver;
+
+/**
+ * A way for the tests to reach the RollbackDrivers: MBean, socket, unix socket, multicast, shared memory, ...
+ * A transport has a client half, used by the tests through the static API of RollbackDriver, and a server half, which runs in the JVM of the drivers and passes the commands to the RollbackController.
+ * 
+ * Transports are found with ServiceLoader (META-INF/services/org.tbee.jdbcrollbackdriver.RollbackTransport), see RollbackTransports.
+ * Only the halves that are configured (usually by a system property) are used, so a transport that is not configured does not start any thread or socket.
+ */
+public interface RollbackTransport {
+
+	/**
+	 * For logging
+	 */
+	String getName();
+
+	/**
+	 * If multiple client halves are configured, the one with the highest priority is used
+	 */
+	int getPriority();
+
+	// ================================================================================================
+	// Client
+
+	/**
+	 * 
+	 */
+	boolean isClientConfigured();
+
+	void rollbackAll();
+
+	void allowTransactions();
+
+	void disableTransactions();
+
+	/**
+	 * Execute the commands (rollbackAll, allowTransactions, disableTransactions) in one round-trip, without commands of other clients in between
+	 */
+	void batch(String... commands);
+
+	// ================================================================================================
+	// Server
+
+	/**
+	 * 
+	 */
+	boolean isServerConfigured();
+
+	/**
+	 * Called once, when the RollbackController is registered, and only if the server is configured
+	 */
+	void startListening();
+
+	void stopListening();
+}
@@ -0,0 +1,66 @@
+package org.tbee.jdbcrollbackdriver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * The RollbackTransports found with ServiceLoader
+ */
+public class RollbackTransports {
+	final static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RollbackTransports.class);
+
+	/**
+	 * All transports, highest priority first
+	 */
+	static public synchronized List<RollbackTransport> getTransports() {
+		if (transports == null) {
+			List<RollbackTransport> list = new ArrayList<>();
+			for (RollbackTransport rollbackTransport : ServiceLoader.load(RollbackTransport.class, RollbackTransport.class.getClassLoader())) {
+				list.add(rollbackTransport);
+			}
+			list.sort(Comparator.comparingInt(RollbackTransport::getPriority).reversed());
+			if (logger.isDebugEnabled()) logger.debug("Transports " + list);
+			transports = Collections.unmodifiableList(list);
+		}
+		return transports;
+	}
+	static private List<RollbackTransport> transports;
+
+	/**
+	 * The configured client with the highest priority
+	 */
+	static public RollbackTransport getClient() {
+		for (RollbackTransport rollbackTransport : getTransports()) {
+			if (rollbackTransport.isClientConfigured()) {
+				return rollbackTransport;
+			}
+		}
+		throw new IllegalStateException("No transport configured");
+	}
+
+	/**
+	 * Start the server halves that are configured
+	 */
+	static void startListening() {
+		for (RollbackTransport rollbackTransport : getTransports()) {
+			if (rollbackTransport.isServerConfigured()) {
+				if (logger.isInfoEnabled()) logger.info("Starting transport " + rollbackTransport.getName());
+				rollbackTransport.startListening();
+			}
+		}
+	}
+
+	/**
+	 * Stop the server halves that are configured
+	 */
+	static public void stopListening() {
+		for (RollbackTransport rollbackTransport : getTransports()) {
+			if (rollbackTransport.isServerConfigured()) {
+				rollbackTransport.stopListening();
+			}
+		}
+	}
+}
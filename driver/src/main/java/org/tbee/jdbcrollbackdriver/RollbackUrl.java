@@ -0,0 +1,101 @@
+package org.tbee.jdbcrollbackdriver;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The parsed form of a rollback URL: jdbc:rollback:label#driverClass:...
+ * Parsing is done once per URL, connection pools call connect with the same URL over and over again.
+ */
+public class RollbackUrl {
+
+	/**
+	 * @return null if the URL does not start with the rollback prefix
+	 */
+	static public RollbackUrl parse(String url) {
+		if (url == null) {
+			return null;
+		}
+		RollbackUrl rollbackUrl = parsedUrls.get(url);
+		if (rollbackUrl != null) {
+			return rollbackUrl;
+		}
+
+		// check URL
+		if (!url.startsWith(RollbackDriver.PREFIX)) {
+			return null;
+		}
+
+		// extract parameters
+		String driverPlusUrl = url.substring(RollbackDriver.PREFIX.length());
+		String actualDriverClass = driverPlusUrl.substring(0, driverPlusUrl.indexOf(":"));
+		String actualUrl = "jdbc" + driverPlusUrl.substring(actualDriverClass.length());
+		String labelName = null;
+		if (actualDriverClass.contains("#")) {
+			labelName = actualDriverClass.substring(0, actualDriverClass.indexOf("#"));
+			actualDriverClass = actualDriverClass.substring(actualDriverClass.indexOf("#") + 1);
+		}
+		rollbackUrl = new RollbackUrl(url, labelName, actualDriverClass, actualUrl);
+
+		// remember
+		RollbackUrl existing = parsedUrls.putIfAbsent(url, rollbackUrl);
+		return existing != null ? existing : rollbackUrl;
+	}
+	static final private ConcurrentMap<String, RollbackUrl> parsedUrls = new ConcurrentHashMap<>();
+
+	// ================================================================================================
+	// Constructor
+
+	private RollbackUrl(String url, String labelName, String actualDriverClass, String actualUrl) {
+		this.url = url;
+		this.labelName = labelName;
+		this.label = (labelName == null ? "" : labelName + ": ");
+		this.actualDriverClass = actualDriverClass;
+		this.actualUrl = actualUrl;
+	}
+	final private String url;
+	final private String labelName;
+	final private String label;
+	final private String actualDriverClass;
+	final private String actualUrl;
+
+	/**
+	 * The URL as it was passed to the RollbackDriver
+	 */
+	public String getUrl() {
+		return url;
+	}
+
+	/**
+	 * The label including a trailing ": ", or an empty string if there is no label, so it can be used as a prefix in log statements
+	 */
+	public String getLabel() {
+		return label;
+	}
+
+	/**
+	 * The label as it is in the URL, or null if there is no label; commands can be targeted at this
+	 */
+	public String getLabelName() {
+		return labelName;
+	}
+
+	/**
+	 * The class name of the actual driver
+	 */
+	public String getActualDriverClass() {
+		return actualDriverClass;
+	}
+
+	/**
+	 * The URL to pass to the actual driver
+	 */
+	public String getActualUrl() {
+		return actualUrl;
+	}
+
+	@Override
+	public String toString() {
+		return url;
+	}
+}
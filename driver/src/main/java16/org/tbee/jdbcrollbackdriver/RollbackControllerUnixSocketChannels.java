@@ -0,0 +1,95 @@
+package org.tbee.jdbcrollbackdriver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The Java 16 part of RollbackControllerUnixSocket, this class is only present in META-INF/versions/16 of the multi-release jar.
+ */
+class RollbackControllerUnixSocketChannels implements RollbackControllerUnixSocket.Channels {
+
+	/**
+	 * A socket file left behind by a previous run is removed
+	 */
+	@Override
+	public ServerSocketChannel openServer(String path) throws IOException {
+		Path socketPath = Path.of(path);
+		Files.deleteIfExists(socketPath);
+		ServerSocketChannel serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+		serverChannel.bind(UnixDomainSocketAddress.of(socketPath));
+		return serverChannel;
+	}
+
+	/**
+	 *
+	 */
+	@Override
+	public RollbackControllerSocketClient connect(String path) throws IOException {
+		SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(path));
+		return new RollbackControllerSocketClient(new ChannelInputStream(channel), new ChannelOutputStream(channel), channel, path);
+	}
+
+	// ================================================================================================
+	// Streams
+
+	/*
+	 * The streams of java.nio.channels.Channels synchronize reading and writing on the same lock, that would block the client's sending while its reader thread waits for a response.
+	 * A channel itself does allow one reading and one writing thread at the same time.
+	 */
+
+	/**
+	 *
+	 */
+	static private class ChannelInputStream extends InputStream {
+		ChannelInputStream(SocketChannel channel) {
+			this.channel = channel;
+		}
+		final private SocketChannel channel;
+
+		@Override
+		public int read() throws IOException {
+			byte[] bytes = new byte[1];
+			int count = read(bytes, 0, 1);
+			return (count < 0 ? -1 : bytes[0] & 0xFF);
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) throws IOException {
+			if (length == 0) {
+				return 0;
+			}
+			return channel.read(ByteBuffer.wrap(bytes, offset, length));
+		}
+	}
+
+	/**
+	 *
+	 */
+	static private class ChannelOutputStream extends OutputStream {
+		ChannelOutputStream(SocketChannel channel) {
+			this.channel = channel;
+		}
+		final private SocketChannel channel;
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte)b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) throws IOException {
+			ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package org.tbee.jdbcrollbackdriver;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.rmi.registry.LocateRegistry;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorServer;
+import javax.management.remote.JMXConnectorServerFactory;
+import javax.management.remote.JMXServiceURL;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ */
+public class RollbackControllerClientTest {
+	
+	@BeforeClass
+	static public void beforeClass() throws IOException {
+		System.setProperty(RollbackControllerMBean.class.getSimpleName() + ".port", "7677");
+		System.setProperty(RollbackControllerClient.class.getSimpleName() + ".connectTimeout", "500");
+		LocateRegistry.createRegistry(7677);
+	}
+	
+	@Test
+	public void reconnectAfterRestart() throws SQLException, IOException {
+		
+		// GIVEN a controlled driver whose MBean is reachable over RMI
+		RollbackDriver rollbackDriver = new RollbackDriver();
+		rollbackDriver.connect("jdbc:rollback:TestId#org.tbee.jdbcrollbackdriver.TestDriver:test:blablabla", null);
+		JMXConnectorServer connectorServer = startConnectorServer();
+		
+		// WHEN calling the MBean twice
+		RollbackControllerMBean rollbackControllerMBean = RollbackController.connect();
+		rollbackControllerMBean.disableTransactionsAndWait(10000);
+		rollbackControllerMBean.allowTransactionsAndWait(10000);
+		
+		// THEN one connection should have been used
+		RollbackControllerClient client = RollbackController.getClient();
+		Assert.assertEquals(1, client.getConnectCount());
+		Assert.assertEquals(2, client.getInvokeCount());
+		
+		// WHEN the server is down
+		connectorServer.stop();
+		
+		// THEN calls fail after the connect timeout
+		try {
+			rollbackControllerMBean.disableTransactionsAndWait(10000);
+			Assert.fail();
+		}
+		catch (RuntimeException e) {
+			Assert.assertTrue(client.getConnectFailureCount() > 0);
+		}
+		
+		// WHEN the server is up again
+		connectorServer = startConnectorServer();
+		
+		// THEN the same MBean should reconnect
+		Assert.assertTrue(rollbackControllerMBean.disableTransactionsAndWait(10000).isSuccess());
+		Assert.assertFalse(rollbackDriver.getTransactionsEnabled());
+		Assert.assertEquals(2, client.getConnectCount());
+		Assert.assertEquals(3, client.getInvokeCount());
+		
+		connectorServer.stop();
+	}
+	
+	@Test
+	public void clientPerEnvironment() {
+		String url = "service:jmx:rmi:///jndi/rmi://localhost:7678/jmxrmi";
+		
+		// GIVEN / WHEN / THEN the same URL with other credentials gets another client
+		Assert.assertSame(RollbackControllerClient.of(url, null), RollbackControllerClient.of(url, null));
+		Assert.assertNotSame(RollbackControllerClient.of(url, null), RollbackControllerClient.of(url, credentials("user", "password")));
+		Assert.assertSame(RollbackControllerClient.of(url, credentials("user", "password")), RollbackControllerClient.of(url, credentials("user", "password")));
+		Assert.assertNotSame(RollbackControllerClient.of(url, credentials("user", "password")), RollbackControllerClient.of(url, credentials("user", "other")));
+	}
+	
+	private Map<String, String[]> credentials(String user, String password) {
+		return Collections.singletonMap(JMXConnector.CREDENTIALS, new String[] {user, password});
+	}
+	
+	private JMXConnectorServer startConnectorServer() throws IOException {
+		JMXConnectorServer connectorServer = JMXConnectorServerFactory.newJMXConnectorServer(new JMXServiceURL(RollbackController.getServiceUrl()), null, ManagementFactory.getPlatformMBeanServer());
+		connectorServer.start();
+		return connectorServer;
+	}
+}
@@ -0,0 +1,80 @@
+package org.tbee.jdbcrollbackdriver;
+
+import java.sql.SQLException;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ */
+public class RollbackControllerMulticastTest {
+
+	@BeforeClass
+	static public void beforeClass() {
+		System.setProperty(RollbackControllerMulticast.class.getSimpleName() + ".ip", "228.0.0.42");
+		System.setProperty(RollbackControllerMulticast.class.getSimpleName() + ".port", "4445");
+		System.setProperty(RollbackControllerMulticast.class.getSimpleName() + ".node", "node1");
+		System.setProperty(RollbackControllerMulticast.class.getSimpleName() + ".nodes", "1");
+	}
+
+	@Test
+	public void acknowledgedCommands() throws SQLException {
+
+		// GIVEN a controlled driver (which starts the multicast listener)
+		RollbackDriver rollbackDriver = new RollbackDriver();
+		rollbackDriver.connect("jdbc:rollback:TestId#org.tbee.jdbcrollbackdriver.TestDriver:test:blablabla", null);
+
+		// WHEN a rollback is broadcasted
+		RollbackSummary rollbackSummary = RollbackControllerMulticast.rollbackAllAndWait(10000);
+
+		// THEN the node should have confirmed it
+		Assert.assertTrue(rollbackSummary.toString(), rollbackSummary.isSuccess());
+		Assert.assertEquals(1, rollbackSummary.getAcknowledgedCount());
+		Assert.assertTrue(rollbackSummary.getDurations().containsKey("node1"));
+
+		// WHEN transactions are disabled over multicast
+		RollbackControllerMulticast.disableTransactions();
+
+		// THEN the driver should have processed it
+		Assert.assertFalse(rollbackDriver.getTransactionsEnabled());
+
+		RollbackControllerMulticast.stop();
+	}
+
+	@Test
+	public void waitForTheSlowNode() throws InterruptedException {
+
+		// GIVEN a command that two nodes received, without knowing the number of nodes
+		RollbackControllerMulticast.PendingCommand pendingCommand = new RollbackControllerMulticast.PendingCommand();
+		pendingCommand.received("fast");
+		pendingCommand.received("slow");
+
+		// WHEN only the fast node has acknowledged, and it stays quiet for a while
+		pendingCommand.acknowledge("fast", null);
+		Thread.sleep(100);
+
+		// THEN the command is not complete
+		Assert.assertFalse(pendingCommand.await(0, 10));
+
+		// WHEN the slow node acknowledges as well
+		pendingCommand.acknowledge("slow", null);
+
+		// THEN it is
+		Assert.assertTrue(pendingCommand.await(0, 10));
+		Assert.assertEquals(2, pendingCommand.toSummary(0, true, 100).getAcknowledgedCount());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void commandTooLong() {
+
+		// GIVEN a command that does not fit in a packet
+		StringBuilder command = new StringBuilder("pushScope:");
+		while (command.length() <= RollbackControllerMulticast.MAX_PACKET_SIZE) {
+			command.append("x");
+		}
+
+		// WHEN broadcasting it, THEN it is rejected before anything is sent
+		RollbackControllerMulticast.broadcastAndWait(command.toString(), 10000);
+	}
+}
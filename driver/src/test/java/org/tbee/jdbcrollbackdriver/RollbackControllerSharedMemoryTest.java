@@ -0,0 +1,48 @@
+package org.tbee.jdbcrollbackdriver;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ */
+public class RollbackControllerSharedMemoryTest {
+
+	@BeforeClass
+	static public void beforeClass() throws IOException {
+		File file = File.createTempFile(RollbackControllerSharedMemory.class.getSimpleName(), ".mmap");
+		file.deleteOnExit();
+		System.setProperty(RollbackControllerSharedMemory.class.getSimpleName() + ".file", file.getAbsolutePath());
+	}
+
+	@Test
+	public void completedCommands() throws SQLException {
+
+		// GIVEN a controlled driver (which starts the shared memory listener)
+		RollbackDriver rollbackDriver = new RollbackDriver();
+		rollbackDriver.connect("jdbc:rollback:TestId#org.tbee.jdbcrollbackdriver.TestDriver:test:blablabla", null);
+
+		// WHEN a rollback is written to the shared memory
+		RollbackSummary rollbackSummary = RollbackControllerSharedMemory.rollbackAllAndWait(10000);
+
+		// THEN the listener should have completed it
+		Assert.assertTrue(rollbackSummary.toString(), rollbackSummary.isSuccess());
+		Assert.assertEquals(1, rollbackSummary.getDriverCount());
+
+		// WHEN transactions are disabled through the shared memory
+		RollbackControllerSharedMemory.disableTransactions();
+
+		// THEN the driver should have processed it
+		Assert.assertFalse(rollbackDriver.getTransactionsEnabled());
+
+		// WHEN the listener is stopped
+		RollbackControllerSharedMemory.stop();
+
+		// THEN nobody is waited for
+		Assert.assertEquals(0, RollbackControllerSharedMemory.rollbackAllAndWait(10000).getDriverCount());
+	}
+}
@@ -0,0 +1,123 @@
+package org.tbee.jdbcrollbackdriver;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ */
+public class RollbackControllerSocketTest {
+	
+	@BeforeClass
+	static public void beforeClass() {
+		System.setProperty(RollbackControllerSocket.class.getSimpleName() + ".port", "3335");
+	}
+	
+	@Test
+	public void pipelinedCommands() throws SQLException, IOException, Exception {
+		
+		// GIVEN a controlled driver (which starts the socket server)
+		RollbackDriver rollbackDriver = new RollbackDriver();
+		rollbackDriver.connect("jdbc:rollback:TestId#org.tbee.jdbcrollbackdriver.TestDriver:test:blablabla", null);
+		
+		// WHEN sending multiple commands over one connection without waiting
+		try (
+			RollbackControllerSocketClient client = connect();
+		){
+			CompletableFuture<String> rollback = client.send("rollbackAll");
+			CompletableFuture<String> disable = client.send("disableTransactions");
+			
+			// THEN each command should be confirmed
+			Assert.assertTrue(rollback.get(10, TimeUnit.SECONDS).contains("completed=true"));
+			Assert.assertTrue(disable.get(10, TimeUnit.SECONDS).contains("completed=true"));
+			Assert.assertFalse(rollbackDriver.getTransactionsEnabled());
+			
+			// AND an unknown command should be reported as failed
+			try {
+				client.sendAndWait("unknown", 10000);
+				Assert.fail();
+			}
+			catch (IOException e) {
+				Assert.assertTrue(e.getMessage().contains("Unknown command"));
+			}
+		}
+	}
+	
+	@Test
+	public void manyClientsAndBadClient() throws SQLException, IOException, Exception {
+		
+		// GIVEN a controlled driver and a server on its own port
+		RollbackDriver rollbackDriver = new RollbackDriver();
+		rollbackDriver.connect("jdbc:rollback:TestId#org.tbee.jdbcrollbackdriver.TestDriver:test:blablabla", null);
+		ServerSocketChannel serverChannel = ServerSocketChannel.open();
+		serverChannel.bind(new InetSocketAddress("localhost", 0));
+		int port = ((InetSocketAddress)serverChannel.getLocalAddress()).getPort();
+		RollbackControllerSocketServer server = new RollbackControllerSocketServer(serverChannel, RollbackController.connectLocally(), "test-server");
+		server.start();
+		
+		// WHEN a client sends garbage
+		try (
+			Socket socket = new Socket("localhost", port);
+		){
+			DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+			out.writeUTF(RollbackControllerSocketClient.FRAMED_PROTOCOL);
+			out.writeInt(-1);
+			out.flush();
+			
+			// THEN only that client should be disconnected
+			Assert.assertEquals(-1, socket.getInputStream().read());
+		}
+		
+		// WHEN many clients send commands at the same time
+		List<RollbackControllerSocketClient> clients = new ArrayList<>();
+		List<CompletableFuture<String>> responses = new ArrayList<>();
+		for (int i = 0; i < 16; i++) {
+			RollbackControllerSocketClient client = RollbackControllerSocketClient.connect("localhost", port);
+			clients.add(client);
+			responses.add(client.send("rollbackAll"));
+		}
+		
+		// THEN all should be confirmed
+		for (CompletableFuture<String> response : responses) {
+			Assert.assertTrue(response.get(10, TimeUnit.SECONDS).contains("completed=true"));
+		}
+		
+		// WHEN the server is stopped
+		server.stop();
+		
+		// THEN the clients should be disconnected
+		Assert.assertFalse(server.isRunning());
+		for (RollbackControllerSocketClient client : clients) {
+			for (int i = 0; i < 50 && !client.isClosed(); i++) {
+				Thread.sleep(100);
+			}
+			Assert.assertTrue(client.isClosed());
+		}
+	}
+	
+	private RollbackControllerSocketClient connect() throws Exception {
+		// the server is started asynchronously 
+		for (int i = 0; ; i++) {
+			try {
+				return RollbackControllerSocketClient.connect("localhost", RollbackControllerSocket.getPort());
+			}
+			catch (IOException e) {
+				if (i > 50) {
+					throw e;
+				}
+				Thread.sleep(100);
+			}
+		}
+	}
+}
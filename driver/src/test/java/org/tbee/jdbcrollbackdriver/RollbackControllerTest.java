@@ -0,0 +1,362 @@
+package org.tbee.jdbcrollbackdriver;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.Notification;
+import javax.management.NotificationListener;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ */
+public class RollbackControllerTest {
+	
+	@Test
+	public void oneListenerPerDriver() throws SQLException {
+		String url = "jdbc:rollback:TestId#org.tbee.jdbcrollbackdriver.TestDriver:test:blablabla";
+		
+		// GIVEN a driver
+		RollbackDriver rollbackDriver = new RollbackDriver();
+		
+		// WHEN connecting multiple times
+		rollbackDriver.connect(url, null);
+		rollbackDriver.connect(url, null);
+		rollbackDriver.connect(url, null);
+		
+		// THEN the driver should be registered only once
+		RollbackControllerMBean rollbackController = RollbackController.connectLocally();
+		Assert.assertEquals(1, rollbackController.getRegisteredDriverCount());
+		
+		// WHEN rolling back
+		rollbackController.rollbackAll();
+		
+		// THEN the driver should have reported its duration
+		Assert.assertTrue(rollbackController.getLastDurations().containsKey(rollbackDriver.getId()));
+		
+		// WHEN someone else acknowledges
+		rollbackController.acknowledge(0, "someone", 1, null);
+		
+		// THEN it is ignored
+		Assert.assertFalse(rollbackController.getLastDurations().containsKey("someone"));
+		
+		// WHEN rolling back and waiting
+		RollbackSummary rollbackSummary = rollbackController.rollbackAllAndWait(10000);
+		
+		// THEN the driver should have acknowledged
+		Assert.assertTrue(rollbackSummary.isSuccess());
+		Assert.assertEquals(1, rollbackSummary.getAcknowledgedCount());
+		Assert.assertTrue(rollbackSummary.getDurations().containsKey(rollbackDriver.getId()));
+		
+		// WHEN releasing the driver
+		RollbackController.stopControllingDriver(rollbackDriver);
+		
+		// THEN it should no longer be registered
+		Assert.assertEquals(0, rollbackController.getRegisteredDriverCount());
+	}
+	
+	@Test
+	public void acknowledgementsPerDriver() throws InterruptedException {
+		
+		// GIVEN a notification that two drivers must acknowledge
+		RollbackController.Acknowledgements acknowledgements = new RollbackController.Acknowledgements(Arrays.asList("driver1", "driver2"));
+		
+		// WHEN another driver goes away, and an unknown driver acknowledges
+		acknowledgements.release("driver3");
+		Assert.assertFalse(acknowledgements.acknowledge("driver4", 1, null));
+		
+		// THEN it is not complete
+		Assert.assertFalse(acknowledgements.await(0));
+		
+		// WHEN one of them acknowledges twice
+		Assert.assertTrue(acknowledgements.acknowledge("driver1", 1, null));
+		Assert.assertFalse(acknowledgements.acknowledge("driver1", 1, null));
+		
+		// THEN it is still not complete
+		Assert.assertFalse(acknowledgements.await(0));
+		
+		// WHEN the other one goes away
+		acknowledgements.release("driver2");
+		
+		// THEN it is complete
+		Assert.assertTrue(acknowledgements.await(0));
+		Assert.assertEquals(1, acknowledgements.toSummary(true, 1).getAcknowledgedCount());
+	}
+	
+	@Test
+	public void batch() throws SQLException {
+		
+		// GIVEN a controlled driver
+		RollbackDriver rollbackDriver = new RollbackDriver();
+		rollbackDriver.connect("jdbc:rollback:TestId#org.tbee.jdbcrollbackdriver.TestDriver:test:blablabla", null);
+		RollbackControllerMBean rollbackController = RollbackController.connectLocally();
+		
+		// WHEN executing a batch
+		RollbackSummary rollbackSummary = rollbackController.batch(new String[] {"rollbackAll", "allowTransactions", "disableTransactions"}, 10000);
+		
+		// THEN all commands should have been processed, with one combined result
+		Assert.assertTrue(rollbackSummary.isSuccess());
+		Assert.assertEquals(1, rollbackSummary.getDriverCount());
+		Assert.assertTrue(rollbackSummary.getDurations().containsKey(rollbackDriver.getId()));
+		Assert.assertFalse(rollbackDriver.getTransactionsEnabled());
+		
+		// WHEN a batch contains an unknown command
+		try {
+			RollbackController.execute(rollbackController, "batch:allowTransactions,unknown", 10000);
+			Assert.fail();
+		}
+		catch (RuntimeException e) {
+			// THEN nothing should have been executed
+			Assert.assertFalse(rollbackDriver.getTransactionsEnabled());
+		}
+		
+		RollbackController.stopControllingDriver(rollbackDriver);
+	}
+	
+	@Test
+	public void coalescing() throws Exception {
+		
+		// GIVEN a controlled driver and a debounce window
+		RollbackDriver rollbackDriver = new RollbackDriver();
+		rollbackDriver.connect("jdbc:rollback:TestId#org.tbee.jdbcrollbackdriver.TestDriver:test:blablabla", null);
+		RollbackControllerMBean rollbackController = RollbackController.connectLocally();
+		System.setProperty(RollbackController.class.getSimpleName() + ".debounce", "200");
+		long coalescedCount = rollbackController.getCoalescedCount();
+		ExecutorService executorService = Executors.newFixedThreadPool(5);
+		try {
+			
+			// WHEN many clients roll back at the same time
+			List<Future<RollbackSummary>> futures = new ArrayList<>();
+			for (int i = 0; i < 5; i++) {
+				futures.add(executorService.submit(() -> rollbackController.rollbackAllAndWait(10000)));
+			}
+			
+			// THEN all should succeed, and some should have been merged
+			for (Future<RollbackSummary> future : futures) {
+				Assert.assertTrue(future.get().isSuccess());
+			}
+			Assert.assertTrue(rollbackController.getCoalescedCount() > coalescedCount);
+		}
+		finally {
+			executorService.shutdown();
+			System.clearProperty(RollbackController.class.getSimpleName() + ".debounce");
+			RollbackController.stopControllingDriver(rollbackDriver);
+		}
+	}
+	
+	@Test
+	public void coalescingWithoutWaiting() throws Exception {
+		
+		// GIVEN a controlled driver with a database that takes a while to roll back
+		RollbackDriver rollbackDriver = new RollbackDriver();
+		rollbackDriver.connect("jdbc:rollback:Slow#org.tbee.jdbcrollbackdriver.RollbackControllerTest$SlowDriver:test:slow", null);
+		RollbackControllerMBean rollbackController = RollbackController.connectLocally();
+		int rollbacks = SlowDriver.rollbacks.get();
+		int count = 10;
+		ExecutorService executorService = Executors.newFixedThreadPool(count);
+		try {
+			
+			// WHEN many clients roll back at the same time, without waiting for the drivers
+			List<Future<?>> futures = new ArrayList<>();
+			for (int i = 0; i < count; i++) {
+				futures.add(executorService.submit(() -> rollbackController.rollbackAll()));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+			
+			// THEN the ones that queued up behind the first were merged
+			int executed = SlowDriver.rollbacks.get() - rollbacks;
+			Assert.assertTrue("executed " + executed, executed >= 1 && executed < count);
+		}
+		finally {
+			executorService.shutdown();
+			RollbackController.stopControllingDriver(rollbackDriver);
+		}
+	}
+	
+	@Test
+	public void targetedByLabel() throws SQLException {
+		
+		// GIVEN a controlled driver with a labeled database
+		RollbackDriver rollbackDriver = new RollbackDriver();
+		rollbackDriver.connect("jdbc:rollback:LabelA#org.tbee.jdbcrollbackdriver.TestDriver:test:labelA", null);
+		RollbackControllerMBean rollbackController = RollbackController.connectLocally();
+		RollbackDatabase rollbackDatabase = RollbackDriver.getDatabases("LabelA").get(0);
+		
+		// WHEN rolling back that label
+		RollbackSummary rollbackSummary = rollbackController.rollbackAndWait("LabelA", 10000);
+		
+		// THEN the driver owning it should have processed it
+		Assert.assertTrue(rollbackSummary.isSuccess());
+		Assert.assertEquals(1, rollbackSummary.getDriverCount());
+		
+		// WHEN rolling back an unknown label
+		rollbackSummary = rollbackController.rollbackAndWait("LabelB", 10000);
+		
+		// THEN no driver should have been woken up
+		Assert.assertTrue(rollbackSummary.isSuccess());
+		Assert.assertEquals(0, rollbackSummary.getDriverCount());
+		
+		// WHEN disabling transactions for the label, as a text command
+		rollbackSummary = RollbackController.execute(rollbackController, "disableTransactions@LabelA", 10000);
+		
+		// THEN only that database should be affected
+		Assert.assertTrue(rollbackSummary.isSuccess());
+		Assert.assertFalse(rollbackDatabase.getTransactionsEnabled());
+		Assert.assertTrue(rollbackDriver.getTransactionsEnabled());
+		
+		RollbackController.stopControllingDriver(rollbackDriver);
+	}
+	
+	@Test
+	public void scopes() throws SQLException {
+		
+		// GIVEN two controlled drivers in one classloader, sharing a database
+		RollbackDriver rollbackDriver1 = new RollbackDriver();
+		RollbackDriver rollbackDriver2 = new RollbackDriver();
+		rollbackDriver1.connect("jdbc:rollback:Fixtures#org.tbee.jdbcrollbackdriver.TestDriver:test:fixtures", null);
+		rollbackDriver2.connect("jdbc:rollback:Fixtures#org.tbee.jdbcrollbackdriver.TestDriver:test:fixtures", null);
+		RollbackControllerMBean rollbackController = RollbackController.connectLocally();
+		RollbackDatabase rollbackDatabase = RollbackDriver.getDatabases("Fixtures").get(0);
+		
+		// WHEN pushing a scope
+		RollbackSummary rollbackSummary = rollbackController.pushScope("baseline", 10000);
+		
+		// THEN both drivers acknowledged, but the savepoint was set only once
+		Assert.assertTrue(rollbackSummary.isSuccess());
+		Assert.assertEquals(2, rollbackSummary.getDriverCount());
+		Assert.assertEquals(Arrays.asList("baseline"), rollbackDatabase.getScopes());
+		
+		// WHEN resetting to the scope, as a text command
+		rollbackSummary = RollbackController.execute(rollbackController, "rollbackToScope:baseline@Fixtures", 10000);
+		
+		// THEN the scope stays
+		Assert.assertTrue(rollbackSummary.isSuccess());
+		Assert.assertEquals(Arrays.asList("baseline"), rollbackDatabase.getScopes());
+		
+		// WHEN popping the scope
+		rollbackSummary = rollbackController.popScope(10000);
+		
+		// THEN it is gone
+		Assert.assertTrue(rollbackSummary.isSuccess());
+		Assert.assertEquals(Collections.emptyList(), rollbackDatabase.getScopes());
+		
+		RollbackController.stopControllingDriver(rollbackDriver1);
+		RollbackController.stopControllingDriver(rollbackDriver2);
+	}
+	
+	@Test
+	public void rollbackOncePerNotification() throws SQLException {
+		
+		// GIVEN two controlled drivers in one classloader, sharing a database
+		RollbackDriver rollbackDriver1 = new RollbackDriver();
+		RollbackDriver rollbackDriver2 = new RollbackDriver();
+		rollbackDriver1.connect("jdbc:rollback:Shared#org.tbee.jdbcrollbackdriver.RollbackControllerTest$CountingDriver:test:shared", null);
+		rollbackDriver2.connect("jdbc:rollback:Shared#org.tbee.jdbcrollbackdriver.RollbackControllerTest$CountingDriver:test:shared", null);
+		RollbackControllerMBean rollbackController = RollbackController.connectLocally();
+		int rollbacks = CountingDriver.rollbacks.get();
+		
+		// WHEN rolling back
+		rollbackController.rollbackAll();
+		
+		// THEN both drivers received the notification, but the database was rolled back only once
+		Assert.assertTrue(rollbackController.getLastDurations().containsKey(rollbackDriver1.getId()));
+		Assert.assertTrue(rollbackController.getLastDurations().containsKey(rollbackDriver2.getId()));
+		Assert.assertEquals(rollbacks + 1, CountingDriver.rollbacks.get());
+		
+		RollbackController.stopControllingDriver(rollbackDriver1);
+		RollbackController.stopControllingDriver(rollbackDriver2);
+	}
+	
+	@Test
+	public void notificationsInOrderPerListener() throws InterruptedException {
+		
+		// GIVEN a controller that notifies in parallel, with two listeners
+		RollbackController rollbackController;
+		System.setProperty(RollbackController.class.getSimpleName() + ".parallelism", "4");
+		try {
+			rollbackController = new RollbackController();
+		}
+		finally {
+			System.clearProperty(RollbackController.class.getSimpleName() + ".parallelism");
+		}
+		int count = 100;
+		CountDownLatch countDownLatch = new CountDownLatch(2 * count);
+		List<Long> sequenceNumbers1 = Collections.synchronizedList(new ArrayList<>());
+		List<Long> sequenceNumbers2 = Collections.synchronizedList(new ArrayList<>());
+		rollbackController.addNotificationListener(recordingListener(sequenceNumbers1, countDownLatch), null, null);
+		rollbackController.addNotificationListener(recordingListener(sequenceNumbers2, countDownLatch), null, null);
+		
+		// WHEN sending many notifications
+		List<Long> sent = new ArrayList<>();
+		for (long i = 1; i <= count; i++) {
+			rollbackController.sendNotification(new Notification(RollbackController.ROLLBACKAll_ACTION, this, i));
+			sent.add(i);
+		}
+		
+		// THEN each listener got all of them, in the order they were sent
+		Assert.assertTrue(countDownLatch.await(10, TimeUnit.SECONDS));
+		Assert.assertEquals(sent, sequenceNumbers1);
+		Assert.assertEquals(sent, sequenceNumbers2);
+	}
+	
+	private static NotificationListener recordingListener(List<Long> sequenceNumbers, CountDownLatch countDownLatch) {
+		return (notification, handback) -> {
+			sequenceNumbers.add(notification.getSequenceNumber());
+			countDownLatch.countDown();
+		};
+	}
+	
+	/**
+	 * Counts the rollbacks on its connections
+	 */
+	public static class CountingDriver extends TestDriver {
+		static final AtomicInteger rollbacks = new AtomicInteger();
+		
+		@Override
+		public Connection connect(String url, Properties info) throws SQLException {
+			return new TestConnection() {
+				@Override
+				public void rollback() throws SQLException {
+					rollbacks.incrementAndGet();
+				}
+			};
+		}
+	}
+	
+	/**
+	 * Counts the rollbacks on its connections, each takes a while
+	 */
+	public static class SlowDriver extends TestDriver {
+		static final AtomicInteger rollbacks = new AtomicInteger();
+		
+		@Override
+		public Connection connect(String url, Properties info) throws SQLException {
+			return new TestConnection() {
+				@Override
+				public void rollback() throws SQLException {
+					rollbacks.incrementAndGet();
+					try {
+						Thread.sleep(100);
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			};
+		}
+	}
+}
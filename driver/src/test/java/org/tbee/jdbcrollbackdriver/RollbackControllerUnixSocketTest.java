@@ -0,0 +1,48 @@
+package org.tbee.jdbcrollbackdriver;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ */
+public class RollbackControllerUnixSocketTest {
+	
+	@BeforeClass
+	static public void beforeClass() throws IOException {
+		File file = File.createTempFile(RollbackControllerUnixSocket.class.getSimpleName(), ".sock");
+		file.delete();
+		System.setProperty(RollbackControllerUnixSocket.class.getSimpleName() + ".path", file.getAbsolutePath());
+	}
+	
+	@Test
+	public void commandsOverUnixSocket() throws SQLException, IOException {
+		
+		// GIVEN a controlled driver (which starts the unix socket server)
+		RollbackDriver rollbackDriver = new RollbackDriver();
+		rollbackDriver.connect("jdbc:rollback:TestId#org.tbee.jdbcrollbackdriver.TestDriver:test:blablabla", null);
+		Assert.assertNotNull(RollbackControllerUnixSocket.getChannels());
+		
+		// WHEN a rollback is send
+		String response = RollbackControllerUnixSocket.getClient().sendAndWait("rollbackAll", 10000);
+		
+		// THEN it should be confirmed
+		Assert.assertTrue(response, response.contains("completed=true"));
+		
+		// WHEN transactions are disabled
+		RollbackControllerUnixSocket.disableTransactions();
+		
+		// THEN the driver should have processed it
+		Assert.assertFalse(rollbackDriver.getTransactionsEnabled());
+		
+		// WHEN the server is stopped
+		RollbackControllerUnixSocket.stop();
+		
+		// THEN the socket file should be removed
+		Assert.assertFalse(new File(RollbackControllerUnixSocket.getPath()).exists());
+	}
+}
@@ -0,0 +1,228 @@
+package org.tbee.jdbcrollbackdriver;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ */
+public class RollbackDatabaseTest {
+	
+	@Test
+	public void connectionPerDatabase() throws SQLException {
+		
+		// GIVEN a driver
+		RollbackDriver rollbackDriver = new RollbackDriver();
+		
+		// WHEN connecting to two databases
+		Connection main = rollbackDriver.connect("jdbc:rollback:Main#org.tbee.jdbcrollbackdriver.TestDriver:test:main", null);
+		Connection reporting = rollbackDriver.connect("jdbc:rollback:Reporting#org.tbee.jdbcrollbackdriver.TestDriver:test:reporting", null);
+		
+		// THEN each should get its own connection
+		Assert.assertNotSame(main, reporting);
+		Assert.assertEquals(2, RollbackDriver.getDatabases().size());
+		
+		// AND connecting again should give the same connection
+		Assert.assertSame(main, rollbackDriver.connect("jdbc:rollback:Main#org.tbee.jdbcrollbackdriver.TestDriver:test:main", null));
+		
+		// AND also when the URL is spelled slightly different
+		Assert.assertSame(main, rollbackDriver.connect("jdbc:rollback:Main#org.tbee.jdbcrollbackdriver.TestDriver:test:main; ", null));
+		Assert.assertEquals(2, RollbackDriver.getDatabases().size());
+		
+		// WHEN connecting with other credentials
+		Properties info = new Properties();
+		info.setProperty("user", "other");
+		info.setProperty("password", "secret");
+		Connection other = rollbackDriver.connect("jdbc:rollback:Main#org.tbee.jdbcrollbackdriver.TestDriver:test:main", info);
+		
+		// THEN that is another database
+		Assert.assertNotSame(main, other);
+		Assert.assertEquals(3, RollbackDriver.getDatabases().size());
+	}
+	
+	@Test
+	public void scopes() throws SQLException {
+		
+		// GIVEN a database with nested scopes
+		RollbackDriver rollbackDriver = new RollbackDriver();
+		rollbackDriver.connect("jdbc:rollback:Scopes#org.tbee.jdbcrollbackdriver.TestDriver:test:scopes", null);
+		RollbackDatabase rollbackDatabase = RollbackDriver.getDatabases("Scopes").get(0);
+		rollbackDatabase.pushScope("fixtures");
+		rollbackDatabase.pushScope("test");
+		Assert.assertEquals(Arrays.asList("test", "fixtures"), rollbackDatabase.getScopes());
+		
+		// WHEN rolling back to the outer scope
+		rollbackDatabase.rollbackToScope("fixtures");
+		
+		// THEN the inner scope is gone, the outer one stays for the next reset
+		Assert.assertEquals(Arrays.asList("fixtures"), rollbackDatabase.getScopes());
+		
+		// WHEN rolling back to an unknown scope, for example a misspelled one
+		rollbackDatabase.pushScope("test");
+		try {
+			rollbackDatabase.rollbackToScope("tset");
+			Assert.fail();
+		}
+		catch (SQLException e) {
+			// THEN nothing changed
+			Assert.assertEquals(Arrays.asList("test", "fixtures"), rollbackDatabase.getScopes());
+		}
+		
+		// WHEN a full rollback is done
+		rollbackDatabase.rollback();
+		
+		// THEN no scopes remain
+		Assert.assertEquals(Collections.emptyList(), rollbackDatabase.getScopes());
+		
+		RollbackController.stopControllingDriver(rollbackDriver);
+	}
+	
+	@Test
+	public void standby() throws Exception {
+		System.setProperty(RollbackDatabase.class.getSimpleName() + ".standby", "true");
+		CountDownLatch rollbackLatch = new CountDownLatch(1);
+		try {
+			
+			// GIVEN a database in standby mode, whose connection's rollback is slow
+			Connection slowConnection = new TestConnection() {
+				@Override
+				public void rollback() throws SQLException {
+					try {
+						rollbackLatch.await(10, TimeUnit.SECONDS);
+					}
+					catch (InterruptedException e) {
+						throw new SQLException(e);
+					}
+				}
+			};
+			Connection standbyConnection = new TestConnection();
+			RollbackDatabase rollbackDatabase = new RollbackDatabase("standby", RollbackUrl.parse("jdbc:rollback:Standby#org.tbee.jdbcrollbackdriver.TestDriver:test:standby"), slowConnection, true, () -> standbyConnection);
+			Assert.assertTrue(rollbackDatabase.isStandbyReady());
+			rollbackDatabase.getWrappedConnection().createStatement();
+			
+			// WHEN rolling back
+			rollbackDatabase.rollback();
+			
+			// THEN the wrapped connection should use the standby connection right away, while the old one is still rolling back
+			Assert.assertSame(standbyConnection, rollbackDatabase.getActualConnection());
+			Assert.assertFalse(rollbackDatabase.isStandbyReady());
+			
+			// AND the statement still using the old connection is closed before it is rolled back
+			for (int i = 0; i < 50 && rollbackDatabase.getTracker().getClosedCount() == 0; i++) {
+				Thread.sleep(100);
+			}
+			Assert.assertEquals(1, rollbackDatabase.getTracker().getClosedCount());
+			
+			// WHEN the background rollback completes
+			rollbackLatch.countDown();
+			for (int i = 0; i < 50 && !rollbackDatabase.isStandbyReady(); i++) {
+				Thread.sleep(100);
+			}
+			
+			// THEN the old connection is the new standby, and the next rollback swaps back to it
+			Assert.assertEquals(1, rollbackDatabase.getBackgroundRollbackCount());
+			rollbackDatabase.rollback();
+			Assert.assertSame(slowConnection, rollbackDatabase.getActualConnection());
+		}
+		finally {
+			rollbackLatch.countDown();
+			System.clearProperty(RollbackDatabase.class.getSimpleName() + ".standby");
+		}
+	}
+	
+	@Test
+	public void resetSession() throws SQLException {
+		
+		// GIVEN a PostgreSQL database with a statement left open by the application, and nothing that holds the connection exclusively
+		List<String> events = new ArrayList<>();
+		RollbackDatabase rollbackDatabase = createResetDatabase(events);
+		rollbackDatabase.getWrappedConnection().createStatement();
+		events.clear();
+		
+		// WHEN rolling back
+		rollbackDatabase.rollback();
+		
+		// THEN the session is left alone, the reset is off by default when it could not be done anyway
+		Assert.assertEquals("autoCommit=false,rollback", String.join(",", events));
+		Assert.assertEquals(0, rollbackDatabase.getSessionResetCount());
+		Assert.assertEquals(0, rollbackDatabase.getSessionResetSkipCount());
+		
+		// GIVEN the same with the reset explicitly enabled
+		System.setProperty(RollbackDatabase.class.getSimpleName() + ".resetSession", "true");
+		try {
+			events.clear();
+			rollbackDatabase = createResetDatabase(events);
+			rollbackDatabase.getWrappedConnection().createStatement();
+			events.clear();
+			
+			// WHEN rolling back
+			rollbackDatabase.rollback();
+			
+			// THEN it is skipped: the statement may be in use by another thread, and that thread's statements could be committed along with the reset
+			Assert.assertEquals("autoCommit=false,rollback", String.join(",", events));
+			Assert.assertEquals(0, rollbackDatabase.getSessionResetCount());
+			Assert.assertEquals(1, rollbackDatabase.getSessionResetSkipCount());
+		}
+		finally {
+			System.clearProperty(RollbackDatabase.class.getSimpleName() + ".resetSession");
+		}
+		
+		// GIVEN the same with the gate enabled
+		System.setProperty(RollbackGate.class.getSimpleName() + ".timeout", "1000");
+		try {
+			events.clear();
+			rollbackDatabase = createResetDatabase(events);
+			rollbackDatabase.getWrappedConnection().createStatement();
+			events.clear();
+			
+			// WHEN rolling back
+			rollbackDatabase.rollback();
+			
+			// THEN the statement is closed, and the session is reset outside the transaction
+			Assert.assertEquals("autoCommit=false,rollback,close,autoCommit=true,DISCARD TEMP,RESET ALL,close,autoCommit=false", String.join(",", events));
+			Assert.assertEquals(1, rollbackDatabase.getTracker().getClosedCount());
+			Assert.assertEquals(1, rollbackDatabase.getSessionResetCount());
+		}
+		finally {
+			System.clearProperty(RollbackGate.class.getSimpleName() + ".timeout");
+		}
+	}
+	
+	static RollbackDatabase createResetDatabase(List<String> events) throws SQLException {
+		Connection actualConnection = new TestConnection() {
+			@Override
+			public Statement createStatement() throws SQLException {
+				return new TestStatement() {
+					@Override
+					public boolean execute(String sql) throws SQLException {
+						events.add(sql);
+						return false;
+					}
+					@Override
+					public void close() throws SQLException {
+						events.add("close");
+					}
+				};
+			}
+			@Override
+			public void setAutoCommit(boolean autoCommit) throws SQLException {
+				events.add("autoCommit=" + autoCommit);
+			}
+			@Override
+			public void rollback() throws SQLException {
+				events.add("rollback");
+			}
+		};
+		return new RollbackDatabase("reset", RollbackUrl.parse("jdbc:rollback:Reset#org.postgresql.Driver:postgresql://localhost/reset"), actualConnection, true);
+	}
+}
@@ -0,0 +1,120 @@
+package org.tbee.jdbcrollbackdriver;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ */
+public class RollbackDelegatingConnectionTest {
+	
+	@Test
+	public void blockCommitAndClose() throws SQLException {
+		
+		// GIVEN a wrapped connection with transactions disabled
+		CountingConnection actualConnection = new CountingConnection();
+		RollbackDatabase rollbackDatabase = TestConnection.createRollbackDatabase(actualConnection);
+		rollbackDatabase.setTransactionsEnabled(false);
+		Connection connection = rollbackDatabase.getWrappedConnection();
+		Assert.assertTrue(connection instanceof RollbackDelegatingConnection);
+		
+		// WHEN committing, rolling back and closing
+		connection.commit();
+		connection.rollback();
+		connection.close();
+		
+		// THEN none of these should reach the actual connection
+		Assert.assertEquals(0, actualConnection.commits);
+		Assert.assertEquals(0, actualConnection.rollbacks);
+		Assert.assertEquals(0, actualConnection.closes);
+		
+		// WHEN transactions are allowed
+		rollbackDatabase.setTransactionsEnabled(true);
+		connection.commit();
+		connection.rollback();
+		connection.close();
+		
+		// THEN commit and rollback should reach the actual connection, but close never does
+		Assert.assertEquals(1, actualConnection.commits);
+		Assert.assertEquals(1, actualConnection.rollbacks);
+		Assert.assertEquals(0, actualConnection.closes);
+	}
+	
+	@Test
+	public void wrapObjectGraph() throws SQLException {
+		
+		// GIVEN a wrapped connection
+		Connection connection = TestConnection.createRollbackDatabase(new CountingConnection()).getWrappedConnection();
+		
+		// WHEN creating statements
+		Statement statement = connection.createStatement();
+		PreparedStatement preparedStatement = connection.prepareStatement("select 1");
+		
+		// THEN they should be wrapped and not expose the actual connection
+		Assert.assertTrue(statement instanceof RollbackStatement);
+		Assert.assertTrue(preparedStatement instanceof RollbackPreparedStatement);
+		Assert.assertSame(connection, statement.getConnection());
+		Assert.assertSame(connection, preparedStatement.getConnection());
+		Assert.assertTrue(((RollbackStatement)statement).getDelegate() instanceof TestStatement);
+	}
+	
+	@Test
+	public void delegateJdbc42Defaults() throws SQLException {
+		
+		// GIVEN a wrapped connection whose actual statements implement executeLargeUpdate
+		Connection connection = TestConnection.createRollbackDatabase(new CountingConnection() {
+			@Override
+			public Statement createStatement() throws SQLException {
+				return new TestStatement() {
+					@Override
+					public long executeLargeUpdate(String sql) throws SQLException {
+						return 42L;
+					}
+				};
+			}
+		}).getWrappedConnection();
+		
+		// WHEN calling it through the wrapper
+		long count = connection.createStatement().executeLargeUpdate("update something");
+		
+		// THEN it should reach the actual statement, instead of the interface's default (which throws UnsupportedOperationException)
+		Assert.assertEquals(42L, count);
+	}
+	
+	@Test
+	public void proxyFallback() throws SQLException {
+		System.setProperty(RollbackConnection.class.getSimpleName() + ".proxy", "true");
+		try {
+			Connection connection = TestConnection.createRollbackDatabase(new CountingConnection()).getWrappedConnection();
+			Assert.assertFalse(connection instanceof RollbackDelegatingConnection);
+		}
+		finally {
+			System.clearProperty(RollbackConnection.class.getSimpleName() + ".proxy");
+		}
+	}
+	
+	static class CountingConnection extends TestConnection {
+		int commits = 0;
+		int rollbacks = 0;
+		int closes = 0;
+		
+		@Override
+		public void commit() throws SQLException {
+			commits++;
+		}
+		
+		@Override
+		public void rollback() throws SQLException {
+			rollbacks++;
+		}
+		
+		@Override
+		public void close() throws SQLException {
+			closes++;
+		}
+	}
+}
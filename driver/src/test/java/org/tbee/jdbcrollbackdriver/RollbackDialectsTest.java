@@ -0,0 +1,78 @@
+package org.tbee.jdbcrollbackdriver;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ */
+public class RollbackDialectsTest {
+
+	@After
+	public void after() {
+		System.clearProperty(RollbackDialect.class.getSimpleName());
+	}
+
+	@Test
+	public void selection() {
+
+		// GIVEN / WHEN / THEN the dialect follows the actual URL or driver class
+		Assert.assertEquals("sqlServer", RollbackDialects.get(RollbackUrl.parse("jdbc:rollback:com.microsoft.sqlserver.jdbc.SQLServerDriver:sqlserver://localhost")).getName());
+		Assert.assertEquals("sqlServer", RollbackDialects.get(RollbackUrl.parse("jdbc:rollback:net.sourceforge.jtds.jdbc.Driver:jtds:sqlserver://localhost")).getName());
+		Assert.assertEquals("postgreSql", RollbackDialects.get(RollbackUrl.parse("jdbc:rollback:Label#org.postgresql.Driver:postgresql://localhost/db")).getName());
+		Assert.assertEquals("h2", RollbackDialects.get(RollbackUrl.parse("jdbc:rollback:org.h2.Driver:h2:mem:test")).getName());
+		Assert.assertEquals("hsqldb", RollbackDialects.get(RollbackUrl.parse("jdbc:rollback:org.hsqldb.jdbc.JDBCDriver:hsqldb:mem:test")).getName());
+		Assert.assertEquals("derby", RollbackDialects.get(RollbackUrl.parse("jdbc:rollback:org.apache.derby.jdbc.EmbeddedDriver:derby:memory:test")).getName());
+		Assert.assertEquals("generic", RollbackDialects.get(RollbackUrl.parse("jdbc:rollback:org.tbee.jdbcrollbackdriver.TestDriver:test:blablabla")).getName());
+
+		// WHEN selecting a dialect by name
+		System.setProperty(RollbackDialect.class.getSimpleName(), "h2");
+
+		// THEN the URL does not matter
+		Assert.assertEquals("h2", RollbackDialects.get(RollbackUrl.parse("jdbc:rollback:org.tbee.jdbcrollbackdriver.TestDriver:test:blablabla")).getName());
+	}
+
+	@Test
+	public void isolationLevelOnlyWhenNeeded() throws SQLException {
+
+		// GIVEN an H2 database with transactions let through
+		List<Integer> levels = new ArrayList<>();
+		TestConnection actualConnection = new TestConnection() {
+			@Override
+			public void setTransactionIsolation(int level) throws SQLException {
+				levels.add(level);
+			}
+		};
+		RollbackDatabase rollbackDatabase = new RollbackDatabase("dialect", RollbackUrl.parse("jdbc:rollback:Dialect#org.h2.Driver:h2:mem:dialect"), actualConnection, true);
+		Connection connection = rollbackDatabase.getWrappedConnection();
+
+		// WHEN committing multiple times
+		connection.commit();
+		connection.commit();
+		connection.rollback();
+
+		// THEN the isolation level was only set once
+		Assert.assertEquals("h2", rollbackDatabase.getDialect().getName());
+		Assert.assertEquals(1, levels.size());
+		Assert.assertEquals(Connection.TRANSACTION_READ_UNCOMMITTED, levels.get(0).intValue());
+
+		// WHEN the application changes the level, and rolls back to a savepoint
+		connection.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+		connection.rollback(connection.setSavepoint());
+
+		// THEN the level is kept, because the transaction has not ended
+		Assert.assertEquals(2, levels.size());
+
+		// WHEN committing
+		connection.commit();
+
+		// THEN it is reset after the transaction
+		Assert.assertEquals(3, levels.size());
+		Assert.assertEquals(Connection.TRANSACTION_READ_UNCOMMITTED, levels.get(2).intValue());
+	}
+}
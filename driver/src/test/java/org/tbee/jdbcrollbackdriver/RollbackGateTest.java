@@ -0,0 +1,154 @@
+package org.tbee.jdbcrollbackdriver;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ */
+public class RollbackGateTest {
+
+	@After
+	public void after() {
+		System.clearProperty(RollbackGate.class.getSimpleName() + ".timeout");
+		System.clearProperty(RollbackGate.class.getSimpleName() + ".cancel");
+	}
+
+	@Test
+	public void drainBeforeRollback() throws Exception {
+		System.setProperty(RollbackGate.class.getSimpleName() + ".timeout", "10000");
+
+		// GIVEN a database with a statement in flight
+		List<String> events = new CopyOnWriteArrayList<>();
+		CountDownLatch inFlightLatch = new CountDownLatch(1);
+		CountDownLatch releaseLatch = new CountDownLatch(1);
+		RollbackDatabase rollbackDatabase = TestConnection.createRollbackDatabase(new BlockingConnection(events, inFlightLatch, releaseLatch));
+		Statement statement = rollbackDatabase.getWrappedConnection().createStatement();
+		Thread thread = new Thread( () -> {
+			try {
+				statement.execute("update something");
+			}
+			catch (SQLException e) {
+				events.add(e.toString());
+			}
+		});
+		thread.start();
+		Assert.assertTrue(inFlightLatch.await(10, TimeUnit.SECONDS));
+
+		// WHEN rolling back, and the statement finishes a bit later
+		new Thread( () -> {
+			sleep(200);
+			releaseLatch.countDown();
+		}).start();
+		rollbackDatabase.rollback();
+
+		// THEN the rollback should have waited for it
+		Assert.assertEquals("execute,done,rollback", String.join(",", events));
+		Assert.assertTrue(rollbackDatabase.getGate().getLastDrainMicros() >= 100000);
+		Assert.assertEquals(0, rollbackDatabase.getGate().getTimeoutCount());
+	}
+
+	@Test
+	public void cancelStragglers() throws Exception {
+		System.setProperty(RollbackGate.class.getSimpleName() + ".timeout", "200");
+		System.setProperty(RollbackGate.class.getSimpleName() + ".cancel", "true");
+
+		// GIVEN a database with a statement in flight that only ends when cancelled
+		List<String> events = new CopyOnWriteArrayList<>();
+		CountDownLatch inFlightLatch = new CountDownLatch(1);
+		CountDownLatch releaseLatch = new CountDownLatch(1);
+		RollbackDatabase rollbackDatabase = TestConnection.createRollbackDatabase(new BlockingConnection(events, inFlightLatch, releaseLatch));
+		Statement statement = rollbackDatabase.getWrappedConnection().createStatement();
+		new Thread( () -> {
+			try {
+				statement.execute("select forever");
+			}
+			catch (SQLException e) {
+				events.add(e.toString());
+			}
+		}).start();
+		Assert.assertTrue(inFlightLatch.await(10, TimeUnit.SECONDS));
+
+		// WHEN rolling back
+		rollbackDatabase.rollback();
+
+		// THEN the statement should have been cancelled before the rollback
+		Assert.assertEquals("execute,cancel,done,rollback", String.join(",", events));
+		Assert.assertEquals(1, rollbackDatabase.getGate().getCancelCount());
+		Assert.assertEquals(0, rollbackDatabase.getGate().getTimeoutCount());
+	}
+
+	@Test
+	public void disabledByDefault() throws Exception {
+
+		// GIVEN a database without a gate timeout
+		RollbackDatabase rollbackDatabase = TestConnection.createRollbackDatabase(new TestConnection());
+
+		// WHEN rolling back
+		rollbackDatabase.rollback();
+
+		// THEN there is nothing to drain
+		Assert.assertFalse(rollbackDatabase.getGate().isEnabled());
+		Assert.assertEquals(0, rollbackDatabase.getGate().getAverageDrainMicros());
+	}
+
+	static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Its statements block in execute until released or cancelled
+	 */
+	static class BlockingConnection extends TestConnection {
+		BlockingConnection(List<String> events, CountDownLatch inFlightLatch, CountDownLatch releaseLatch) {
+			this.events = events;
+			this.inFlightLatch = inFlightLatch;
+			this.releaseLatch = releaseLatch;
+		}
+		final List<String> events;
+		final CountDownLatch inFlightLatch;
+		final CountDownLatch releaseLatch;
+
+		@Override
+		public Statement createStatement() throws SQLException {
+			return new TestStatement() {
+				@Override
+				public boolean execute(String sql) throws SQLException {
+					events.add("execute");
+					inFlightLatch.countDown();
+					try {
+						releaseLatch.await(10, TimeUnit.SECONDS);
+					}
+					catch (InterruptedException e) {
+						throw new SQLException(e);
+					}
+					events.add("done");
+					return false;
+				}
+
+				@Override
+				public void cancel() throws SQLException {
+					events.add("cancel");
+					releaseLatch.countDown();
+				}
+			};
+		}
+
+		@Override
+		public void rollback() throws SQLException {
+			events.add("rollback");
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package org.tbee.jdbcrollbackdriver;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ */
+public class RollbackLanesTest {
+
+	@After
+	public void after() {
+		System.clearProperty(RollbackLanes.class.getSimpleName() + ".count");
+		RollbackDriver.setWorkerKey(null);
+	}
+
+	@Test
+	public void stickyLanes() throws Exception {
+		System.setProperty(RollbackLanes.class.getSimpleName() + ".count", "2");
+
+		// GIVEN a driver with two lanes
+		RollbackDriver rollbackDriver = new RollbackDriver();
+		Connection connection = rollbackDriver.connect("jdbc:rollback:Lanes#org.tbee.jdbcrollbackdriver.TestDriver:test:lanes", null);
+		Assert.assertSame(connection, rollbackDriver.connect("jdbc:rollback:Lanes#org.tbee.jdbcrollbackdriver.TestDriver:test:lanes", null));
+		Assert.assertEquals(2, RollbackDriver.getDatabases("Lanes").size());
+
+		// WHEN two workers use the connection
+		RollbackDriver.setWorkerKey("test1");
+		Connection lane1 = connection.unwrap(RollbackDelegatingConnection.class);
+		RollbackDriver.setWorkerKey("test2");
+		Connection lane2 = connection.unwrap(RollbackDelegatingConnection.class);
+
+		// THEN each has its own lane, and keeps it
+		Assert.assertNotSame(lane1, lane2);
+		RollbackDriver.setWorkerKey("test1");
+		Assert.assertSame(lane1, connection.unwrap(RollbackDelegatingConnection.class));
+
+		// AND the connection does not depend on the worker for the pools
+		Assert.assertEquals(connection, connection);
+		Assert.assertEquals(System.identityHashCode(connection), connection.hashCode());
+
+		RollbackController.stopControllingDriver(rollbackDriver);
+	}
+
+	@Test
+	public void rollbackAllLanesInParallel() throws Exception {
+
+		// GIVEN two lanes, whose rollbacks wait for each other
+		List<String> threads = new CopyOnWriteArrayList<>();
+		CyclicBarrier barrier = new CyclicBarrier(2);
+		RollbackDatabase lane1 = createLane("lane1", threads, barrier);
+		RollbackDatabase lane2 = createLane("lane2", threads, barrier);
+
+		// WHEN both are rolled back through a driver in lanes mode
+		System.setProperty(RollbackLanes.class.getSimpleName() + ".count", "2");
+		RollbackDriver rollbackDriver = new RollbackDriver();
+		rollbackDriver.connect("jdbc:rollback:ParallelLanes#org.tbee.jdbcrollbackdriver.TestDriver:test:parallelLanes", null);
+		rollbackDriver.rollback(Arrays.asList(lane1, lane2));
+
+		// THEN they ran at the same time, on different threads
+		Assert.assertEquals(2, threads.size());
+		Assert.assertNotEquals(threads.get(0), threads.get(1));
+
+		RollbackController.stopControllingDriver(rollbackDriver);
+	}
+
+	static RollbackDatabase createLane(String name, List<String> threads, CyclicBarrier barrier) throws SQLException {
+		Connection actualConnection = new TestConnection() {
+			@Override
+			public void rollback() throws SQLException {
+				threads.add(Thread.currentThread().getName());
+				try {
+					barrier.await(10, TimeUnit.SECONDS);
+				}
+				catch (Exception e) {
+					throw new SQLException(e);
+				}
+			}
+		};
+		return new RollbackDatabase(name, RollbackUrl.parse("jdbc:rollback:" + name + "#org.tbee.jdbcrollbackdriver.TestDriver:test:" + name), actualConnection, true);
+	}
+}
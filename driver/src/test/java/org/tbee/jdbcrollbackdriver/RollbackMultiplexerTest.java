@@ -0,0 +1,168 @@
+package org.tbee.jdbcrollbackdriver;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ */
+public class RollbackMultiplexerTest {
+
+	@After
+	public void after() {
+		System.clearProperty(RollbackMultiplexer.class.getSimpleName() + ".enabled");
+		System.clearProperty(RollbackGate.class.getSimpleName() + ".timeout");
+	}
+
+	@Test
+	public void oneCallAtATime() throws Exception {
+		System.setProperty(RollbackMultiplexer.class.getSimpleName() + ".enabled", "true");
+
+		// GIVEN a database whose connection remembers how many calls ran at the same time
+		OverlapConnection actualConnection = new OverlapConnection();
+		RollbackDatabase rollbackDatabase = TestConnection.createRollbackDatabase(actualConnection);
+
+		// WHEN multiple threads use the connection at the same time
+		run(rollbackDatabase.getWrappedConnection(), 4);
+
+		// THEN the calls did not overlap, and the waits were recorded per thread
+		RollbackMultiplexer multiplexer = rollbackDatabase.getMultiplexer();
+		Assert.assertEquals(1, actualConnection.maxConcurrent.get());
+		Assert.assertTrue(multiplexer.getContendedCount() > 0);
+		Assert.assertTrue(multiplexer.getMaxWaitMicros() >= 10000);
+		Map<String, long[]> histograms = multiplexer.getWaitHistograms();
+		Assert.assertEquals(4, histograms.size());
+		long calls = 0;
+		for (long[] histogram : histograms.values()) {
+			for (long count : histogram) {
+				calls += count;
+			}
+		}
+		Assert.assertEquals(4 * 2 * 3, calls); // per thread 3 executes, each preceded by a createStatement
+	}
+
+	@Test
+	public void disabledByDefault() throws Exception {
+
+		// GIVEN a database without multiplexer
+		OverlapConnection actualConnection = new OverlapConnection();
+		RollbackDatabase rollbackDatabase = TestConnection.createRollbackDatabase(actualConnection);
+
+		// WHEN multiple threads use the connection at the same time
+		run(rollbackDatabase.getWrappedConnection(), 4);
+
+		// THEN nothing was recorded
+		Assert.assertFalse(rollbackDatabase.getMultiplexer().isEnabled());
+		Assert.assertTrue(rollbackDatabase.getMultiplexer().getWaitHistograms().isEmpty());
+	}
+
+	@Test
+	public void rollbackDoesNotWaitForAHangingCall() throws Exception {
+		System.setProperty(RollbackMultiplexer.class.getSimpleName() + ".enabled", "true");
+		System.setProperty(RollbackGate.class.getSimpleName() + ".timeout", "100");
+
+		// GIVEN a database with a call that hangs
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		RollbackDatabase rollbackDatabase = TestConnection.createRollbackDatabase(new TestConnection() {
+			@Override
+			public Statement createStatement() throws SQLException {
+				return new TestStatement() {
+					@Override
+					public boolean execute(String sql) throws SQLException {
+						started.countDown();
+						try {
+							release.await();
+						}
+						catch (InterruptedException e) {
+							throw new SQLException(e);
+						}
+						return false;
+					}
+				};
+			}
+		});
+		Statement statement = rollbackDatabase.getWrappedConnection().createStatement();
+		ExecutorService executorService = Executors.newSingleThreadExecutor();
+		try {
+			Future<?> future = executorService.submit( () -> statement.execute("update something") );
+			started.await();
+
+			// WHEN rolling back
+			long startNanos = System.nanoTime();
+			rollbackDatabase.rollback();
+
+			// THEN the rollback waited for the gate's timeout, not for the call
+			Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) < 5000);
+			Assert.assertFalse(future.isDone());
+			release.countDown();
+			future.get();
+		}
+		finally {
+			release.countDown();
+			executorService.shutdown();
+		}
+	}
+
+	static void run(Connection connection, int threads) throws Exception {
+		ExecutorService executorService = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int i = 0; i < threads; i++) {
+				futures.add(executorService.submit( () -> {
+					for (int j = 0; j < 3; j++) {
+						connection.createStatement().execute("update something");
+					}
+					return null;
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		}
+		finally {
+			executorService.shutdown();
+		}
+	}
+
+	/**
+	 * Its statements take a while to execute, and count how many execute at the same time
+	 */
+	static class OverlapConnection extends TestConnection {
+		final AtomicInteger concurrent = new AtomicInteger();
+		final AtomicInteger maxConcurrent = new AtomicInteger();
+
+		@Override
+		public Statement createStatement() throws SQLException {
+			return new TestStatement() {
+				@Override
+				public boolean execute(String sql) throws SQLException {
+					maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+					try {
+						Thread.sleep(20);
+					}
+					catch (InterruptedException e) {
+						throw new SQLException(e);
+					}
+					finally {
+						concurrent.decrementAndGet();
+					}
+					return false;
+				}
+			};
+		}
+	}
+}
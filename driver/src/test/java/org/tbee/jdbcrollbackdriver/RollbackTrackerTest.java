@@ -0,0 +1,145 @@
+package org.tbee.jdbcrollbackdriver;
+
+import java.lang.reflect.Proxy;
+import java.sql.Blob;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ */
+public class RollbackTrackerTest {
+
+	@After
+	public void after() {
+		System.clearProperty(RollbackTracker.class.getSimpleName() + ".threshold");
+		System.clearProperty(RollbackMultiplexer.class.getSimpleName() + ".enabled");
+	}
+
+	@Test
+	public void closeOnRollback() throws SQLException {
+		System.setProperty(RollbackMultiplexer.class.getSimpleName() + ".enabled", "true");
+
+		// GIVEN a database whose rollback has the connection to itself, with a statement, a result set and a blob left open by the application
+		List<String> events = new CopyOnWriteArrayList<>();
+		RollbackDatabase rollbackDatabase = TestConnection.createRollbackDatabase(new ChildrenConnection(events));
+		Connection connection = rollbackDatabase.getWrappedConnection();
+		Statement statement = connection.createStatement();
+		ResultSet resultSet = statement.executeQuery("select 1");
+		Blob blob = connection.createBlob();
+		RollbackTracker tracker = rollbackDatabase.getTracker();
+		Assert.assertEquals(1, tracker.getLiveStatementCount());
+		Assert.assertEquals(1, tracker.getLiveResultSetCount());
+		Assert.assertEquals(1, tracker.getLiveLobCount());
+
+		// WHEN rolling back
+		rollbackDatabase.rollback();
+
+		// THEN all are closed, the result set before its statement
+		Assert.assertEquals("resultSet.close,statement.close,blob.free", String.join(",", events));
+		Assert.assertEquals(3, tracker.getClosedCount());
+		Assert.assertEquals(0, tracker.getLiveCount());
+		Assert.assertTrue(resultSet.isClosed());
+		Assert.assertNotNull(blob);
+	}
+
+	@Test
+	public void threshold() throws SQLException {
+		System.setProperty(RollbackTracker.class.getSimpleName() + ".threshold", "2");
+		System.setProperty(RollbackMultiplexer.class.getSimpleName() + ".enabled", "true");
+
+		// GIVEN a database that allows two open statements, and whose rollback has the connection to itself
+		List<String> events = new CopyOnWriteArrayList<>();
+		RollbackDatabase rollbackDatabase = TestConnection.createRollbackDatabase(new ChildrenConnection(events));
+		Connection connection = rollbackDatabase.getWrappedConnection();
+		RollbackTracker tracker = rollbackDatabase.getTracker();
+		Statement statement1 = connection.createStatement();
+		Statement statement2 = connection.createStatement();
+
+		// WHEN closing one, and opening one more
+		statement1.close();
+		Statement statement3 = connection.createStatement();
+
+		// THEN the threshold is not exceeded
+		Assert.assertEquals(0, tracker.getThresholdExceededCount());
+
+		// WHEN opening two more
+		Statement statement4 = connection.createStatement();
+		Statement statement5 = connection.createStatement();
+
+		// THEN it is reported, but the tracker does not close any of them, they may still be in use
+		Assert.assertEquals(1, tracker.getThresholdExceededCount());
+		Assert.assertEquals("statement.close", String.join(",", events));
+		Assert.assertEquals(4, tracker.getLiveStatementCount());
+		Assert.assertFalse(statement2.isClosed() || statement3.isClosed() || statement4.isClosed() || statement5.isClosed());
+
+		// WHEN rolling back
+		rollbackDatabase.rollback();
+
+		// THEN they are closed
+		Assert.assertEquals(4, tracker.getClosedCount());
+	}
+
+	/**
+	 * Its children record when they are closed
+	 */
+	static class ChildrenConnection extends TestConnection {
+		ChildrenConnection(List<String> events) {
+			this.events = events;
+		}
+		final List<String> events;
+
+		@Override
+		public Statement createStatement() throws SQLException {
+			return new TestStatement() {
+				boolean closed = false;
+
+				@Override
+				public ResultSet executeQuery(String sql) throws SQLException {
+					return new TestResultSet() {
+						boolean closed = false;
+
+						@Override
+						public void close() throws SQLException {
+							events.add("resultSet.close");
+							closed = true;
+						}
+
+						@Override
+						public boolean isClosed() throws SQLException {
+							return closed;
+						}
+					};
+				}
+
+				@Override
+				public void close() throws SQLException {
+					events.add("statement.close");
+					closed = true;
+				}
+
+				@Override
+				public boolean isClosed() throws SQLException {
+					return closed;
+				}
+			};
+		}
+
+		@Override
+		public Blob createBlob() throws SQLException {
+			return (Blob)Proxy.newProxyInstance(Blob.class.getClassLoader(), new Class[] { Blob.class }, (proxy, method, args) -> {
+				if ("free".equals(method.getName())) {
+					events.add("blob.free");
+				}
+				return null;
+			});
+		}
+	}
+}
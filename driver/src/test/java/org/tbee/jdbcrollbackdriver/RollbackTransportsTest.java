@@ -0,0 +1,35 @@
+package org.tbee.jdbcrollbackdriver;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ */
+public class RollbackTransportsTest {
+	
+	@Test
+	public void selectTransport() {
+		
+		// GIVEN all transports are found, highest priority first
+		List<RollbackTransport> transports = RollbackTransports.getTransports();
+		Assert.assertEquals(5, transports.size());
+		Assert.assertTrue(transports.get(0) instanceof RollbackControllerSocket.Transport);
+		Assert.assertTrue(transports.get(4) instanceof RollbackController.Transport);
+		
+		// WHEN nothing is configured
+		// THEN the MBean is used, and no server is configured
+		Assert.assertTrue(RollbackTransports.getClient() instanceof RollbackController.Transport);
+		for (RollbackTransport rollbackTransport : transports) {
+			Assert.assertFalse(rollbackTransport.getName(), rollbackTransport.isServerConfigured());
+		}
+		
+		// WHEN multicast and socket are configured
+		System.setProperty(RollbackControllerMulticast.class.getSimpleName(), "");
+		System.setProperty(RollbackControllerSocket.class.getSimpleName(), "");
+		
+		// THEN the socket client wins
+		Assert.assertTrue(RollbackTransports.getClient() instanceof RollbackControllerSocket.Transport);
+	}
+}
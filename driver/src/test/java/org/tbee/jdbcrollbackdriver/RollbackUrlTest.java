@@ -0,0 +1,36 @@
+package org.tbee.jdbcrollbackdriver;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ */
+public class RollbackUrlTest {
+	
+	@Test
+	public void parse() {
+		RollbackUrl rollbackUrl = RollbackUrl.parse("jdbc:rollback:TestId#org.tbee.jdbcrollbackdriver.TestDriver:test:blablabla");
+		Assert.assertEquals("TestId: ", rollbackUrl.getLabel());
+		Assert.assertEquals("org.tbee.jdbcrollbackdriver.TestDriver", rollbackUrl.getActualDriverClass());
+		Assert.assertEquals("jdbc:test:blablabla", rollbackUrl.getActualUrl());
+	}
+	
+	@Test
+	public void parseWithoutLabel() {
+		RollbackUrl rollbackUrl = RollbackUrl.parse("jdbc:rollback:org.tbee.jdbcrollbackdriver.TestDriver:test:blablabla");
+		Assert.assertEquals("", rollbackUrl.getLabel());
+		Assert.assertEquals("org.tbee.jdbcrollbackdriver.TestDriver", rollbackUrl.getActualDriverClass());
+		Assert.assertEquals("jdbc:test:blablabla", rollbackUrl.getActualUrl());
+	}
+	
+	@Test
+	public void parseIsCached() {
+		String url = "jdbc:rollback:TestId#org.tbee.jdbcrollbackdriver.TestDriver:test:cached";
+		Assert.assertSame(RollbackUrl.parse(url), RollbackUrl.parse(url));
+	}
+	
+	@Test
+	public void otherPrefix() {
+		Assert.assertNull(RollbackUrl.parse("jdbc:test:blablabla"));
+	}
+}
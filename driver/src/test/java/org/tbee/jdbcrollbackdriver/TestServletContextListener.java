@@ -1,32 +1,32 @@
-package org.tbee.jdbcrollbackdriver;
-
-import java.sql.Connection;
-import java.sql.SQLException;
-
-import javax.naming.Context;
-import javax.naming.InitialContext;
-import javax.naming.NamingException;
-import javax.servlet.ServletContextEvent;
-import javax.servlet.ServletContextListener;
-import javax.sql.DataSource;
-
-public class TestServletContextListener implements ServletContextListener {
-
-	@Override
-	public void contextInitialized(ServletContextEvent arg0) {
-		// just open a connection
-		try {
-			Context initContext = new InitialContext();
-			Context envContext = (Context) initContext.lookup("java:/comp/env");
-			DataSource ds = (DataSource) envContext.lookup("TestDS");
-			Connection conn = ds.getConnection();
-		} 
-		catch (NamingException | SQLException e) {
-			throw new RuntimeException(e);
-		}
-	}
-
-	@Override
-	public void contextDestroyed(ServletContextEvent arg0) {
-	}
-}
+package org.tbee.jdbcrollbackdriver;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.naming.Context;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.sql.DataSource;
+
+public class TestServletContextListener implements ServletContextListener {
+
+	@Override
+	public void contextInitialized(ServletContextEvent arg0) {
+		// just open a connection
+		try {
+			Context initContext = new InitialContext();
+			Context envContext = (Context) initContext.lookup("java:/comp/env");
+			DataSource ds = (DataSource) envContext.lookup("TestDS");
+			Connection conn = ds.getConnection();
+		} 
+		catch (NamingException | SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public void contextDestroyed(ServletContextEvent arg0) {
+	}
+}